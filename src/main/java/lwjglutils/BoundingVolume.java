@@ -0,0 +1,147 @@
+package lwjglutils;
+
+import transforms.Vec3D;
+
+import java.nio.FloatBuffer;
+import java.util.Locale;
+
+/**
+ * Class {@code BoundingVolume} is an axis-aligned bounding box together with a bounding sphere,
+ * immutable.
+ * <p>
+ * The box is exact, the sphere is centered in the box with the radius of the farthest vertex,
+ * so it is never larger than the box's circumscribed sphere. An empty volume (no vertices)
+ * has an inverted box and a negative radius, it is ignored by {@link #union(BoundingVolume)}.
+ *
+ * @author Stanislav Čapek
+ * @version 1.0
+ * @see OBJLoader.Model#getBounds()
+ */
+public class BoundingVolume {
+
+    /**
+     * Volume without any vertex
+     */
+    public static final BoundingVolume EMPTY = new BoundingVolume(
+            new Vec3D(Double.POSITIVE_INFINITY), new Vec3D(Double.NEGATIVE_INFINITY), new Vec3D(), -1);
+
+    private final Vec3D min;
+    private final Vec3D max;
+    private final Vec3D center;
+    private final double radius;
+
+    /**
+     * Constructor
+     *
+     * @param min    minimal corner of the box
+     * @param max    maximal corner of the box
+     * @param center center of the sphere
+     * @param radius radius of the sphere
+     */
+    public BoundingVolume(Vec3D min, Vec3D max, Vec3D center, double radius) {
+        this.min = min;
+        this.max = max;
+        this.center = center;
+        this.radius = radius;
+    }
+
+    /**
+     * Bounding volume of all vertices of the mesh
+     *
+     * @param mesh mesh
+     * @return new volume or {@link #EMPTY}
+     */
+    public static BoundingVolume fromMesh(IndexedMesh mesh) {
+        final FloatBuffer vertices = mesh.getVertexBuffer();
+        final int vertexCount = mesh.getVertexCount();
+        if (vertexCount == 0) {
+            return EMPTY;
+        }
+        double minX = Double.POSITIVE_INFINITY, minY = minX, minZ = minX;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = maxX, maxZ = maxX;
+        for (int v = 0; v < vertexCount * IndexedMesh.FLOATS_PER_VERTEX; v += IndexedMesh.FLOATS_PER_VERTEX) {
+            minX = Math.min(minX, vertices.get(v));
+            minY = Math.min(minY, vertices.get(v + 1));
+            minZ = Math.min(minZ, vertices.get(v + 2));
+            maxX = Math.max(maxX, vertices.get(v));
+            maxY = Math.max(maxY, vertices.get(v + 1));
+            maxZ = Math.max(maxZ, vertices.get(v + 2));
+        }
+        final double cx = (minX + maxX) / 2, cy = (minY + maxY) / 2, cz = (minZ + maxZ) / 2;
+        double radiusSquared = 0;
+        for (int v = 0; v < vertexCount * IndexedMesh.FLOATS_PER_VERTEX; v += IndexedMesh.FLOATS_PER_VERTEX) {
+            final double dx = vertices.get(v) - cx;
+            final double dy = vertices.get(v + 1) - cy;
+            final double dz = vertices.get(v + 2) - cz;
+            radiusSquared = Math.max(radiusSquared, dx * dx + dy * dy + dz * dz);
+        }
+        return new BoundingVolume(new Vec3D(minX, minY, minZ), new Vec3D(maxX, maxY, maxZ),
+                new Vec3D(cx, cy, cz), Math.sqrt(radiusSquared));
+    }
+
+    /**
+     * Volume enclosing this and the other volume, the sphere is the smallest one
+     * enclosing both spheres
+     *
+     * @param other other volume
+     * @return new volume, or one of the volumes if the other is empty
+     */
+    public BoundingVolume union(BoundingVolume other) {
+        if (other.isEmpty()) {
+            return this;
+        }
+        if (isEmpty()) {
+            return other;
+        }
+        final Vec3D unionMin = new Vec3D(Math.min(min.getX(), other.min.getX()),
+                Math.min(min.getY(), other.min.getY()), Math.min(min.getZ(), other.min.getZ()));
+        final Vec3D unionMax = new Vec3D(Math.max(max.getX(), other.max.getX()),
+                Math.max(max.getY(), other.max.getY()), Math.max(max.getZ(), other.max.getZ()));
+
+        final Vec3D offset = other.center.sub(center);
+        final double distance = offset.length();
+        if (distance + other.radius <= radius) {
+            return new BoundingVolume(unionMin, unionMax, center, radius);
+        }
+        if (distance + radius <= other.radius) {
+            return new BoundingVolume(unionMin, unionMax, other.center, other.radius);
+        }
+        final double unionRadius = (distance + radius + other.radius) / 2;
+        final Vec3D unionCenter = center.add(offset.mul((unionRadius - radius) / distance));
+        return new BoundingVolume(unionMin, unionMax, unionCenter, unionRadius);
+    }
+
+    /**
+     * Check if the volume has no vertex
+     *
+     * @return is empty
+     */
+    public boolean isEmpty() {
+        return radius < 0;
+    }
+
+    public Vec3D getMin() {
+        return min;
+    }
+
+    public Vec3D getMax() {
+        return max;
+    }
+
+    public Vec3D getCenter() {
+        return center;
+    }
+
+    public double getRadius() {
+        return radius;
+    }
+
+    @Override
+    public String toString() {
+        if (isEmpty()) {
+            return "BoundingVolume{empty}";
+        }
+        return String.format(Locale.US, "BoundingVolume{min=%s, max=%s, center=%s, radius=%.3f}",
+                min, max, center, radius);
+    }
+}
@@ -0,0 +1,241 @@
+package lwjglutils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Class {@code FastNumberParser} parses decimal numbers of .obj and .mtl files directly from
+ * byte arrays or character sequences, without creating substrings.
+ * <p>
+ * A float in a plain decimal or exponent form ({@code -0.123456}, {@code 1.5e-3}) with at most
+ * 18 significant digits is converted by one correctly rounded floating-point operation:
+ * <ul>
+ *     <li>in float, if the mantissa is below 2<sup>24</sup> and the power of ten is at most 10,</li>
+ *     <li>in double, if the mantissa is below 2<sup>53</sup> and the power of ten is at most 22,
+ *     the double is then rounded to float unless it lies exactly on a midpoint between two
+ *     floats (double rounding).</li>
+ * </ul>
+ * All other inputs (more digits, large exponents, subnormals, NaN, Infinity, hexadecimal forms
+ * and invalid text) are passed to {@link Float#parseFloat(String)}, so the result is always equal
+ * to the JDK's correctly rounded one, including the {@link NumberFormatException} for invalid text.
+ *
+ * @author Stanislav Čapek
+ * @version 1.0
+ * @see OBJTokenizer
+ */
+final class FastNumberParser {
+
+    private static final float[] FLOAT_POW10 = {
+            1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+    };
+    private static final double[] DOUBLE_POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final int MAX_DIGITS = 18;
+    /**
+     * Bits of a double dropped by the conversion to a normal float
+     */
+    private static final long DROPPED_BITS = (1L << 29) - 1;
+    private static final long MIDPOINT_BITS = 1L << 28;
+
+    /**
+     * Private constructor- utility class
+     */
+    private FastNumberParser() {
+    }
+
+    /**
+     * Parse a float
+     *
+     * @param s    bytes of ASCII text
+     * @param from first byte (inclusive)
+     * @param to   last byte (exclusive)
+     * @return float
+     * @throws NumberFormatException if the text is not a number
+     */
+    static float parseFloat(byte[] s, int from, int to) {
+        return parseFloat(s, null, from, to);
+    }
+
+    /**
+     * Parse a float
+     *
+     * @param s    text
+     * @param from first character (inclusive)
+     * @param to   last character (exclusive)
+     * @return float
+     * @throws NumberFormatException if the text is not a number
+     */
+    static float parseFloat(CharSequence s, int from, int to) {
+        return parseFloat(null, s, from, to);
+    }
+
+    /**
+     * Parse a float
+     *
+     * @param s text
+     * @return float
+     * @throws NumberFormatException if the text is not a number
+     */
+    static float parseFloat(CharSequence s) {
+        return parseFloat(null, s, 0, s.length());
+    }
+
+    /**
+     * Parse a decimal int with an optional sign
+     *
+     * @param s    bytes of ASCII text
+     * @param from first byte (inclusive)
+     * @param to   last byte (exclusive)
+     * @return int
+     * @throws NumberFormatException if the text is not an int
+     */
+    static int parseInt(byte[] s, int from, int to) {
+        return parseInt(s, null, from, to);
+    }
+
+    /**
+     * Parse a decimal int with an optional sign
+     *
+     * @param s text
+     * @return int
+     * @throws NumberFormatException if the text is not an int
+     */
+    static int parseInt(CharSequence s) {
+        return parseInt(null, s, 0, s.length());
+    }
+
+    /**
+     * Parse a float from either bytes or characters, the other source is {@code null}
+     */
+    private static float parseFloat(byte[] bytes, CharSequence chars, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (charAt(bytes, chars, i) == '-' || charAt(bytes, chars, i) == '+')) {
+            negative = charAt(bytes, chars, i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean valid = false;
+        int c;
+        while (i < to && isDigit(c = charAt(bytes, chars, i))) {
+            if (digits < MAX_DIGITS) {
+                mantissa = mantissa * 10 + (c - '0');
+                digits += mantissa != 0 ? 1 : 0;
+            } else {
+                exponent++;
+                digits++;
+            }
+            valid = true;
+            i++;
+        }
+        if (i < to && charAt(bytes, chars, i) == '.') {
+            i++;
+            while (i < to && isDigit(c = charAt(bytes, chars, i))) {
+                if (digits < MAX_DIGITS) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    digits += mantissa != 0 ? 1 : 0;
+                    exponent--;
+                } else {
+                    digits++;
+                }
+                valid = true;
+                i++;
+            }
+        }
+        if (valid && i < to && ((c = charAt(bytes, chars, i)) == 'e' || c == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < to && ((c = charAt(bytes, chars, i)) == '-' || c == '+')) {
+                negativeExponent = c == '-';
+                i++;
+            }
+            valid = i < to;
+            int value = 0;
+            while (i < to && isDigit(c = charAt(bytes, chars, i))) {
+                value = Math.min(value * 10 + (c - '0'), 100_000);
+                i++;
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+        if (valid && i == to && digits <= MAX_DIGITS) {
+            final float value = toFloat(negative, mantissa, exponent);
+            if (!Float.isNaN(value)) {
+                return value;
+            }
+        }
+        return Float.parseFloat(toString(bytes, chars, from, to));
+    }
+
+    /**
+     * Parse an int from either bytes or characters, the other source is {@code null}
+     */
+    private static int parseInt(byte[] bytes, CharSequence chars, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        int c;
+        if (i < to && ((c = charAt(bytes, chars, i)) == '-' || c == '+')) {
+            negative = c == '-';
+            i++;
+        }
+        long value = 0;
+        final int start = i;
+        while (i < to && isDigit(c = charAt(bytes, chars, i)) && value <= Integer.MAX_VALUE + 1L) {
+            value = value * 10 + (c - '0');
+            i++;
+        }
+        if (i == start || i != to || value > (negative ? Integer.MAX_VALUE + 1L : Integer.MAX_VALUE)) {
+            throw new NumberFormatException("For input string: \"" + toString(bytes, chars, from, to) + "\"");
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    /**
+     * Convert mantissa * 10^exponent by a single correctly rounded operation
+     *
+     * @param negative sign
+     * @param mantissa decimal digits
+     * @param exponent power of ten
+     * @return float or NaN if the fast path cannot be used
+     */
+    private static float toFloat(boolean negative, long mantissa, int exponent) {
+        if (mantissa == 0) {
+            return negative ? -0f : 0f;
+        }
+        if (mantissa < (1L << 24) && Math.abs(exponent) < FLOAT_POW10.length) {
+            // both operands are exact floats
+            final float value = exponent < 0
+                    ? mantissa / FLOAT_POW10[-exponent]
+                    : mantissa * FLOAT_POW10[exponent];
+            return negative ? -value : value;
+        }
+        if (mantissa < (1L << 53) && Math.abs(exponent) < DOUBLE_POW10.length) {
+            // both operands are exact doubles
+            final double value = exponent < 0
+                    ? mantissa / DOUBLE_POW10[-exponent]
+                    : mantissa * DOUBLE_POW10[exponent];
+            if (value < Float.MIN_NORMAL
+                    || (Double.doubleToRawLongBits(value) & DROPPED_BITS) == MIDPOINT_BITS) {
+                return Float.NaN;
+            }
+            return (float) (negative ? -value : value);
+        }
+        return Float.NaN;
+    }
+
+    private static int charAt(byte[] bytes, CharSequence chars, int i) {
+        return bytes != null ? bytes[i] : chars.charAt(i);
+    }
+
+    private static String toString(byte[] bytes, CharSequence chars, int from, int to) {
+        return bytes != null
+                ? new String(bytes, from, to - from, StandardCharsets.US_ASCII)
+                : chars.subSequence(from, to).toString();
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+}
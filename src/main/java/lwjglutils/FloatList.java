@@ -0,0 +1,64 @@
+package lwjglutils;
+
+import java.util.Arrays;
+
+/**
+ * Growable array of primitive floats. Used by the loaders instead of lists
+ * of boxed values.
+ *
+ * @author Stanislav Čapek
+ * @version 1.0
+ */
+class FloatList {
+    private float[] data;
+    private int size;
+
+    FloatList() {
+        this(64);
+    }
+
+    FloatList(int capacity) {
+        data = new float[Math.max(capacity, 1)];
+    }
+
+    /**
+     * List over an existing array, the array is not copied
+     *
+     * @param data elements
+     * @return new list
+     */
+    static FloatList wrap(float[] data) {
+        final FloatList list = new FloatList(0);
+        list.data = data.length > 0 ? data : list.data;
+        list.size = data.length;
+        return list;
+    }
+
+    void add(float value) {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, size * 2);
+        }
+        data[size++] = value;
+    }
+
+    float get(int index) {
+        return data[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Backing array, valid elements are in range [0, size)
+     *
+     * @return array
+     */
+    float[] array() {
+        return data;
+    }
+
+    float[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+}
@@ -0,0 +1,268 @@
+package lwjglutils;
+
+import org.lwjgl.BufferUtils;
+import transforms.Mat4;
+import transforms.Vec3D;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import static org.lwjgl.opengl.GL33.*;
+
+/**
+ * Class {@code Frustum} is the view frustum given by six planes in the coordinate system of
+ * the drawn models, it tests {@link BoundingVolume}s for view-frustum culling.
+ * <p>
+ * The planes are extracted from the rows of the combined matrix projection * modelview
+ * (Gribb, Hartmann: Fast Extraction of Viewing Frustum Planes from the World-View-Projection Matrix),
+ * so a volume in the model's space is tested without transforming it. A frustum is meant to be
+ * created once per frame, it also counts nodes and triangles drawn and culled in the frame.
+ * <p>
+ * A frustum transformed into the space of a scene node by {@link #transform(Mat4)} shares
+ * the counters with the original frustum.
+ * <p>
+ * The rows of y and w of the matrix also give the projected size of a length in the model's space,
+ * which is used to select levels of detail.
+ *
+ * @author Stanislav Čapek
+ * @version 1.0
+ * @see OBJLoader.Model#draw(Frustum)
+ */
+public class Frustum {
+
+    /**
+     * The volume is completely outside of the frustum
+     */
+    public static final int OUTSIDE = 0;
+    /**
+     * The volume intersects a plane of the frustum
+     */
+    public static final int INTERSECTS = 1;
+    /**
+     * The volume is completely inside of the frustum
+     */
+    public static final int INSIDE = 2;
+
+    /**
+     * Planes (a, b, c, d) with the unit normal pointing inside: left, right, bottom, top, near, far
+     */
+    private final float[] matrix;
+    private final boolean depthZeroToOne;
+    private final Frustum root;
+    private final double[][] planes = new double[6][4];
+    private final double[] rowY = new double[4];
+    private final double[] rowW = new double[4];
+    private int viewportHeight = 2;
+    private int drawnNodes;
+    private int culledNodes;
+    private long drawnTriangles;
+    private long culledTriangles;
+
+    /**
+     * Constructor
+     *
+     * @param matrix     projection * modelview in OpenGL's column-major order
+     * @param depthZeroToOne the projection maps depth to [0, 1] (otherwise to [-1, 1] as OpenGL)
+     */
+    public Frustum(float[] matrix, boolean depthZeroToOne) {
+        this(matrix, depthZeroToOne, null);
+    }
+
+    private Frustum(float[] matrix, boolean depthZeroToOne, Frustum root) {
+        this.matrix = matrix.clone();
+        this.depthZeroToOne = depthZeroToOne;
+        this.root = root == null ? this : root;
+        for (int i = 0; i < 4; i++) {
+            final double x = matrix[i * 4], y = matrix[i * 4 + 1], z = matrix[i * 4 + 2], w = matrix[i * 4 + 3];
+            planes[0][i] = w + x;
+            planes[1][i] = w - x;
+            planes[2][i] = w + y;
+            planes[3][i] = w - y;
+            planes[4][i] = depthZeroToOne ? z : w + z;
+            planes[5][i] = w - z;
+            rowY[i] = y;
+            rowW[i] = w;
+        }
+        for (double[] plane : planes) {
+            final double length = Math.sqrt(plane[0] * plane[0] + plane[1] * plane[1] + plane[2] * plane[2]);
+            if (length > 0) {
+                for (int i = 0; i < 4; i++) {
+                    plane[i] /= length;
+                }
+            }
+        }
+    }
+
+    /**
+     * Frustum of matrices of the transforms package (row vectors, depth mapped to [0, 1]
+     * as by {@link transforms.Mat4PerspRH})
+     *
+     * @param modelViewProjection model * view * projection
+     */
+    public Frustum(Mat4 modelViewProjection) {
+        // row-wise storage of a matrix for row vectors is the column-major storage for column vectors
+        this(modelViewProjection.floatArray(), true);
+    }
+
+    /**
+     * Frustum of the current fixed-function GL_PROJECTION and GL_MODELVIEW matrices.
+     * Has to be called on the thread with OpenGL context.
+     *
+     * @return new frustum
+     */
+    public static Frustum fromOpenGL() {
+        final FloatBuffer buffer = BufferUtils.createFloatBuffer(16);
+        final float[] projection = new float[16];
+        final float[] modelView = new float[16];
+        glGetFloatv(GL_PROJECTION_MATRIX, buffer);
+        buffer.get(projection).rewind();
+        glGetFloatv(GL_MODELVIEW_MATRIX, buffer);
+        buffer.get(modelView);
+        final IntBuffer viewport = BufferUtils.createIntBuffer(4);
+        glGetIntegerv(GL_VIEWPORT, viewport);
+
+        final Frustum frustum = new Frustum(multiply(projection, modelView), false);
+        frustum.setViewportHeight(viewport.get(3));
+        return frustum;
+    }
+
+    /**
+     * Frustum in the space of a scene node, it counts into this frustum's counters
+     *
+     * @param model matrix of the node (row vectors as in the transforms package), the node's
+     *              coordinates are transformed into the coordinates of this frustum
+     * @return new frustum
+     */
+    public Frustum transform(Mat4 model) {
+        // row-wise storage of a matrix for row vectors is the column-major storage for column vectors
+        final Frustum frustum = new Frustum(multiply(matrix, model.floatArray()), depthZeroToOne, root);
+        frustum.setViewportHeight(viewportHeight);
+        return frustum;
+    }
+
+    /**
+     * Product of matrices in OpenGL's column-major order
+     */
+    private static float[] multiply(float[] a, float[] b) {
+        final float[] result = new float[16];
+        for (int column = 0; column < 4; column++) {
+            for (int row = 0; row < 4; row++) {
+                float sum = 0;
+                for (int k = 0; k < 4; k++) {
+                    sum += a[k * 4 + row] * b[column * 4 + k];
+                }
+                result[column * 4 + row] = sum;
+            }
+        }
+        return result;
+    }
+
+    public int getViewportHeight() {
+        return viewportHeight;
+    }
+
+    /**
+     * Set the height of the viewport, which projected sizes are measured in
+     *
+     * @param viewportHeight height in pixels, 2 by default (sizes in normalized device coordinates)
+     */
+    public void setViewportHeight(int viewportHeight) {
+        this.viewportHeight = viewportHeight;
+    }
+
+    /**
+     * Projected size of a unit length at the point of the bounding sphere nearest to the viewer
+     * (vertically, at the center of the screen)
+     *
+     * @param volume bounding volume
+     * @return size in pixels, infinite if the sphere reaches behind the viewer
+     */
+    public double getPixelsPerUnit(BoundingVolume volume) {
+        final Vec3D center = volume.getCenter();
+        final double w = rowW[0] * center.getX() + rowW[1] * center.getY() + rowW[2] * center.getZ() + rowW[3]
+                - Math.max(volume.getRadius(), 0) * Math.sqrt(rowW[0] * rowW[0] + rowW[1] * rowW[1] + rowW[2] * rowW[2]);
+        if (w <= 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        final double scale = Math.sqrt(rowY[0] * rowY[0] + rowY[1] * rowY[1] + rowY[2] * rowY[2]);
+        return scale / w * viewportHeight / 2;
+    }
+
+    /**
+     * Classify the volume, the sphere is tested first, then the box (by its corners
+     * farthest along and against every plane's normal)
+     *
+     * @param volume bounding volume
+     * @return {@link #OUTSIDE}, {@link #INTERSECTS} or {@link #INSIDE}
+     */
+    public int classify(BoundingVolume volume) {
+        if (volume.isEmpty()) {
+            return OUTSIDE;
+        }
+        final double cx = volume.getCenter().getX(), cy = volume.getCenter().getY(), cz = volume.getCenter().getZ();
+        final double radius = volume.getRadius();
+        final double minX = volume.getMin().getX(), minY = volume.getMin().getY(), minZ = volume.getMin().getZ();
+        final double maxX = volume.getMax().getX(), maxY = volume.getMax().getY(), maxZ = volume.getMax().getZ();
+        int result = INSIDE;
+        for (double[] plane : planes) {
+            final double distance = plane[0] * cx + plane[1] * cy + plane[2] * cz + plane[3];
+            if (distance < -radius) {
+                return OUTSIDE;
+            }
+            if (distance >= radius) {
+                continue;
+            }
+            final double farthest = plane[3]
+                    + plane[0] * (plane[0] > 0 ? maxX : minX)
+                    + plane[1] * (plane[1] > 0 ? maxY : minY)
+                    + plane[2] * (plane[2] > 0 ? maxZ : minZ);
+            if (farthest < 0) {
+                return OUTSIDE;
+            }
+            final double nearest = plane[3]
+                    + plane[0] * (plane[0] > 0 ? minX : maxX)
+                    + plane[1] * (plane[1] > 0 ? minY : maxY)
+                    + plane[2] * (plane[2] > 0 ? minZ : maxZ);
+            if (nearest < 0) {
+                result = INTERSECTS;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Count a drawn node
+     *
+     * @param triangles count of the node's triangles
+     */
+    void addDrawn(int triangles) {
+        root.drawnNodes++;
+        root.drawnTriangles += triangles;
+    }
+
+    /**
+     * Count a culled node
+     *
+     * @param triangles count of the node's triangles
+     */
+    void addCulled(int triangles) {
+        root.culledNodes++;
+        root.culledTriangles += triangles;
+    }
+
+    public int getDrawnNodes() {
+        return root.drawnNodes;
+    }
+
+    public int getCulledNodes() {
+        return root.culledNodes;
+    }
+
+    public long getDrawnTriangles() {
+        return root.drawnTriangles;
+    }
+
+    public long getCulledTriangles() {
+        return root.culledTriangles;
+    }
+}
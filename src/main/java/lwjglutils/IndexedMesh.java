@@ -0,0 +1,331 @@
+package lwjglutils;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Class {@code IndexedMesh} is a list of unique vertices with an index buffer of triangles.
+ * It is built from {@link OBJGeometry} by the indexing stage, which hashes every face corner's
+ * (position, texture coordinate, normal) triplet, so a corner repeated by adjacent faces becomes
+ * one vertex.
+ * <p>
+ * Vertices are interleaved {@link #FLOATS_PER_VERTEX} floats: position (x, y, z), texture
+ * coordinate (u, v) and normal (x, y, z). The texture coordinate v is already flipped for OpenGL.
+ * Missing texture coordinates and normals are zero. Polygons are split into triangles by
+ * {@link PolygonTriangulator}, faces with less than 3 corners are skipped.
+ * <p>
+ * Triangles are sorted by the material of their faces ("usemtl"), so every material owns one
+ * contiguous {@link Range} of the index buffer and can be drawn by a single call.
+ * <p>
+ * The arrays match {@link OGLBuffers}, see {@link #toOGLBuffers()}, and the indices are meant
+ * to be drawn by {@code glDrawElements} as {@code GL_TRIANGLES}. The data are held in buffers,
+ * which are either heap arrays or slices of a memory-mapped file, see {@link OBJModelCache}.
+ *
+ * @author Stanislav Čapek
+ * @version 1.0
+ * @see VertexIndexMap
+ */
+public class IndexedMesh {
+
+    /**
+     * Count of floats of one interleaved vertex
+     */
+    public static final int FLOATS_PER_VERTEX = 8;
+
+    private final FloatBuffer vertices;
+    private final IntBuffer indices;
+    private final int sourceCornerCount;
+    private final List<Range> ranges;
+
+    /**
+     * Contiguous part of the index buffer drawn with one material
+     */
+    public static class Range {
+        private final String material;
+        private final int first;
+        private final int count;
+
+        /**
+         * Constructor
+         *
+         * @param material material's name or null
+         * @param first    first index
+         * @param count    count of indices
+         */
+        public Range(String material, int first, int count) {
+            this.material = material;
+            this.first = first;
+            this.count = count;
+        }
+
+        public String getMaterial() {
+            return material;
+        }
+
+        public int getFirst() {
+            return first;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return "Range{" +
+                    "material='" + material + '\'' +
+                    ", first=" + first +
+                    ", count=" + count +
+                    '}';
+        }
+    }
+
+    /**
+     * Constructor of a mesh without materials
+     *
+     * @param vertices          interleaved vertices
+     * @param indices           triangle indices
+     * @param sourceCornerCount count of face corners the mesh was built from
+     */
+    public IndexedMesh(float[] vertices, int[] indices, int sourceCornerCount) {
+        this(FloatBuffer.wrap(vertices), IntBuffer.wrap(indices), sourceCornerCount);
+    }
+
+    /**
+     * Constructor over buffers of a mesh without materials, the whole buffers
+     * (from 0 to limit) are used and not copied
+     *
+     * @param vertices          interleaved vertices
+     * @param indices           triangle indices
+     * @param sourceCornerCount count of face corners the mesh was built from
+     */
+    public IndexedMesh(FloatBuffer vertices, IntBuffer indices, int sourceCornerCount) {
+        this(vertices, indices, sourceCornerCount,
+                Collections.singletonList(new Range(null, 0, indices.limit())));
+    }
+
+    /**
+     * Constructor over buffers, the whole buffers (from 0 to limit) are used and not copied
+     *
+     * @param vertices          interleaved vertices
+     * @param indices           triangle indices
+     * @param sourceCornerCount count of face corners the mesh was built from
+     * @param ranges            draw ranges per material
+     */
+    public IndexedMesh(FloatBuffer vertices, IntBuffer indices, int sourceCornerCount, List<Range> ranges) {
+        this.vertices = vertices;
+        this.indices = indices;
+        this.sourceCornerCount = sourceCornerCount;
+        this.ranges = Collections.unmodifiableList(new ArrayList<>(ranges));
+    }
+
+    /**
+     * The indexing stage, deduplicate face corners of the geometry
+     *
+     * @param geometry parsed geometry
+     * @return new mesh
+     */
+    public static IndexedMesh fromGeometry(OBJGeometry geometry) {
+        final int[] corners = geometry.getCorners();
+        final int cornerCount = geometry.getCornerCount();
+        final int faceCount = geometry.getFaceCount();
+        final VertexIndexMap map = new VertexIndexMap(Math.max(geometry.getPositionCount(), cornerCount / 4));
+
+        // corner -> unique vertex
+        final int[] cornerVertices = new int[cornerCount];
+        for (int corner = 0; corner < cornerCount; corner++) {
+            cornerVertices[corner] = map.getOrAdd(
+                    corners[corner * 3], corners[corner * 3 + 1], corners[corner * 3 + 2]);
+        }
+
+        // counting sort of faces by material, slot 0 is for faces without material
+        final int materialCount = geometry.getMaterialCount();
+        final int[] slotStarts = new int[materialCount + 2];
+        for (int face = 0; face < faceCount; face++) {
+            slotStarts[geometry.getFaceMaterial(face) + 2] += Math.max(geometry.getFaceSize(face) - 2, 0) * 3;
+        }
+        for (int slot = 1; slot < slotStarts.length; slot++) {
+            slotStarts[slot] += slotStarts[slot - 1];
+        }
+        final int[] cursors = Arrays.copyOf(slotStarts, materialCount + 1);
+
+        // triangulation, the geometry from the loader has only triangles
+        final int[] indices = new int[slotStarts[materialCount + 1]];
+        final PolygonTriangulator triangulator = new PolygonTriangulator();
+        final float[] positions = geometry.getPositions();
+        int[] triangle = new int[3];
+        for (int face = 0; face < faceCount; face++) {
+            final int first = geometry.getFirstCorner(face);
+            final int size = geometry.getFaceSize(face);
+            final int slot = geometry.getFaceMaterial(face) + 1;
+            int index = cursors[slot];
+            if (size == 3) {
+                indices[index++] = cornerVertices[first];
+                indices[index++] = cornerVertices[first + 1];
+                indices[index++] = cornerVertices[first + 2];
+            } else if (size > 3) {
+                if (triangle.length < (size - 2) * 3) {
+                    triangle = new int[(size - 2) * 3];
+                }
+                final int count = triangulator.triangulate(positions, corners, first, size, triangle);
+                for (int i = 0; i < count * 3; i++) {
+                    indices[index++] = cornerVertices[first + triangle[i]];
+                }
+            }
+            cursors[slot] = index;
+        }
+
+        final List<Range> ranges = new ArrayList<>();
+        for (int slot = 0; slot <= materialCount; slot++) {
+            final int count = slotStarts[slot + 1] - slotStarts[slot];
+            if (count > 0) {
+                ranges.add(new Range(slot == 0 ? null : geometry.getMaterialName(slot - 1), slotStarts[slot], count));
+            }
+        }
+
+        final int vertexCount = map.size();
+        final int[] keys = map.keys();
+        final float[] texCoords = geometry.getTexCoords();
+        final float[] normals = geometry.getNormals();
+        final float[] vertices = new float[vertexCount * FLOATS_PER_VERTEX];
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            final int offset = vertex * FLOATS_PER_VERTEX;
+            final int p = keys[vertex * 3] * 3;
+            final int t = keys[vertex * 3 + 1] * 2;
+            final int n = keys[vertex * 3 + 2] * 3;
+            if (p >= 0) {
+                vertices[offset] = positions[p];
+                vertices[offset + 1] = positions[p + 1];
+                vertices[offset + 2] = positions[p + 2];
+            }
+            if (t >= 0) {
+                vertices[offset + 3] = texCoords[t];
+                vertices[offset + 4] = 1 - texCoords[t + 1];
+            }
+            if (n >= 0) {
+                vertices[offset + 5] = normals[n];
+                vertices[offset + 6] = normals[n + 1];
+                vertices[offset + 7] = normals[n + 2];
+            }
+        }
+        return new IndexedMesh(FloatBuffer.wrap(vertices), IntBuffer.wrap(indices), cornerCount, ranges);
+    }
+
+    /**
+     * Vertex attributes of the interleaved layout
+     *
+     * @return attributes inPosition, inTexCoord and inNormal
+     */
+    public static OGLBuffers.Attrib[] getAttributes() {
+        return new OGLBuffers.Attrib[]{
+                new OGLBuffers.Attrib("inPosition", 3),
+                new OGLBuffers.Attrib("inTexCoord", 2),
+                new OGLBuffers.Attrib("inNormal", 3)
+        };
+    }
+
+    /**
+     * Upload the mesh into new OpenGL buffers, the index buffer is set by
+     * {@link OGLBuffers#setIndexBuffer(IntBuffer)}. The buffers are uploaded without copying,
+     * both heap arrays and memory-mapped slices.
+     *
+     * @return new buffers
+     */
+    public OGLBuffers toOGLBuffers() {
+        return new OGLBuffers(getVertexBuffer(), FLOATS_PER_VERTEX, getAttributes(), getIndexBuffer());
+    }
+
+    /**
+     * Interleaved vertices as an array. The backing array is returned if there is one,
+     * otherwise the data are copied.
+     *
+     * @return vertices
+     */
+    public float[] getVertices() {
+        if (vertices.hasArray() && vertices.arrayOffset() == 0 && vertices.array().length == vertices.limit()) {
+            return vertices.array();
+        }
+        final float[] array = new float[vertices.limit()];
+        getVertexBuffer().get(array);
+        return array;
+    }
+
+    /**
+     * Indices as an array. The backing array is returned if there is one,
+     * otherwise the data are copied.
+     *
+     * @return indices
+     */
+    public int[] getIndices() {
+        if (indices.hasArray() && indices.arrayOffset() == 0 && indices.array().length == indices.limit()) {
+            return indices.array();
+        }
+        final int[] array = new int[indices.limit()];
+        getIndexBuffer().get(array);
+        return array;
+    }
+
+    /**
+     * Interleaved vertices, a new view of the data (position 0, limit at the end)
+     *
+     * @return buffer
+     */
+    public FloatBuffer getVertexBuffer() {
+        return vertices.duplicate().clear();
+    }
+
+    /**
+     * Indices, a new view of the data (position 0, limit at the end)
+     *
+     * @return buffer
+     */
+    public IntBuffer getIndexBuffer() {
+        return indices.duplicate().clear();
+    }
+
+    public int getVertexCount() {
+        return vertices.limit() / FLOATS_PER_VERTEX;
+    }
+
+    public int getIndexCount() {
+        return indices.limit();
+    }
+
+    public int getTriangleCount() {
+        return indices.limit() / 3;
+    }
+
+    /**
+     * Draw ranges in the order of the index buffer
+     *
+     * @return unmodifiable list of ranges
+     */
+    public List<Range> getRanges() {
+        return ranges;
+    }
+
+    public int getSourceCornerCount() {
+        return sourceCornerCount;
+    }
+
+    /**
+     * Ratio of face corners to unique vertices
+     *
+     * @return dedup ratio, 1 means no vertex was shared
+     */
+    public double getDedupRatio() {
+        return getVertexCount() == 0 ? 1 : sourceCornerCount / (double) getVertexCount();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "IndexedMesh{corners=%d, vertices=%d, triangles=%d, materials=%d, dedup ratio=%.2f}",
+                sourceCornerCount, getVertexCount(), getTriangleCount(), ranges.size(), getDedupRatio());
+    }
+}
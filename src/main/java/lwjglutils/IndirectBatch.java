@@ -0,0 +1,330 @@
+package lwjglutils;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL;
+import transforms.Mat4;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL43.*;
+
+/**
+ * Class {@code IndirectBatch} flattens trees of {@link OBJLoader.Model}s into a buffer of draw
+ * commands submitted by glMultiDrawElementsIndirect, so a model is drawn by one call per diffuse
+ * texture regardless of the count of its parts.
+ * <p>
+ * All parts are sub-allocated in the arena shared by models ({@link OBJLoader.Model#getArena()}),
+ * so every command only selects indices and a base vertex of one buffer. Transformation and material
+ * of every command are kept in a shader storage buffer indexed by the draw ID, which the vertex shader
+ * gets as a per-instance attribute: the attribute reads a buffer of 0, 1, 2, ... with divisor 1 and
+ * every command sets its base instance to its own index.
+ * <p>
+ * Parts are collected with the same culling and level of detail selection as by
+ * {@link OBJLoader.Model#draw(Frustum)}, commands are rebuilt on every {@link #draw()}, because
+ * compaction of the arena moves the parts. Requires OpenGL 4.3, see {@link #isSupported()}.
+ *
+ * @author Stanislav Čapek
+ * @version 1.0
+ * @see OBJLoader.RenderMode#INDIRECT
+ */
+public class IndirectBatch {
+
+    /**
+     * Floats of one draw in the shader storage buffer: transformation (16), ambient, diffuse
+     * and specular colors (4 each) and shininess (padded to 4)
+     */
+    public static final int FLOATS_PER_DRAW = 32;
+
+    private static final int INTS_PER_COMMAND = 5;
+    private static final float[] IDENTITY = {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1};
+    // defaults of glMaterial for parts without a material
+    private static final float[] DEFAULT_AMBIENT = {0.2f, 0.2f, 0.2f, 1};
+    private static final float[] DEFAULT_DIFFUSE = {0.8f, 0.8f, 0.8f, 1};
+    private static final float[] DEFAULT_SPECULAR = {0, 0, 0, 1};
+
+    private static final String[] SHADER_VERT_SRC = QuantizedMesh.concat(new String[]{
+            "#version 430 compatibility\n",
+            "in vec3 inPosition;",
+            "in vec2 inTexCoord;",
+            "in vec3 inNormal;",
+            "in int inDrawId;",
+            "struct Draw {",
+            "   mat4 transform;",
+            "   vec4 ambient;",
+            "   vec4 diffuse;",
+            "   vec4 specular;",
+            "   vec4 shininess;",
+            "};",
+            "layout(std430, binding = 0) readonly buffer Draws {",
+            "   Draw draws[];",
+            "};"
+    }, QuantizedMesh.LIGHTING_SRC, new String[]{
+            "void main() {",
+            "   Draw draw = draws[inDrawId];",
+            "   vec4 eyePosition = gl_ModelViewMatrix * (draw.transform * vec4(inPosition, 1.0));",
+            "   vec3 normal = normalize(gl_NormalMatrix * (mat3(draw.transform) * inNormal));",
+            "   gl_FrontColor = lighting(eyePosition, normal, gl_LightModel.ambient * draw.ambient,",
+            "           draw.ambient, draw.diffuse, draw.specular, draw.shininess.x);",
+            "   gl_TexCoord[0] = vec4(inTexCoord, 0.0, 1.0);",
+            "   gl_Position = gl_ProjectionMatrix * eyePosition;",
+            "}"
+    });
+
+    private static final String[] SHADER_FRAG_SRC = QuantizedMesh.concat(new String[]{
+            "#version 430 compatibility\n"
+    }, Arrays.copyOfRange(QuantizedMesh.SHADER_FRAG_SRC, 1, QuantizedMesh.SHADER_FRAG_SRC.length));
+
+    private static int program;
+    private static int locDrawId;
+    private static int locLightEnabled, locTextureEnabled, locDiffuseTexture;
+
+    /**
+     * Collected draw, offsets are read from the allocation when the commands are built
+     */
+    private static class Draw {
+        final float[] transform;
+        final OGLBufferArena.Allocation allocation;
+        final int first;
+        final int count;
+        final OBJLoader.Material material;
+
+        Draw(float[] transform, OGLBufferArena.Allocation allocation, int first, int count,
+             OBJLoader.Material material) {
+            this.transform = transform;
+            this.allocation = allocation;
+            this.first = first;
+            this.count = count;
+            this.material = material;
+        }
+    }
+
+    private final Map<OGLTexture2D, List<Draw>> groups = new LinkedHashMap<>();
+    private IntBuffer commands = BufferUtils.createIntBuffer(INTS_PER_COMMAND * 64);
+    private FloatBuffer drawData = BufferUtils.createFloatBuffer(FLOATS_PER_DRAW * 64);
+    private int commandBuffer;
+    private int drawBuffer;
+    private int drawIdBuffer;
+    private int drawIdCapacity;
+    private int drawCount;
+    private int multiDrawCount;
+
+    /**
+     * Check if the current OpenGL context supports multi-draw indirect and shader storage buffers
+     *
+     * @return is supported
+     */
+    public static boolean isSupported() {
+        return GL.getCapabilities().OpenGL43;
+    }
+
+    /**
+     * Shader program drawing batches, it is created on the first call.
+     * Has to be called on the thread with OpenGL context.
+     *
+     * @return shader program
+     */
+    public static int getProgram() {
+        if (program == 0) {
+            program = ShaderUtils.loadProgram(SHADER_VERT_SRC, SHADER_FRAG_SRC, null, null, null, null);
+            locDrawId = glGetAttribLocation(program, "inDrawId");
+            locLightEnabled = glGetUniformLocation(program, "lightEnabled");
+            locTextureEnabled = glGetUniformLocation(program, "textureEnabled");
+            locDiffuseTexture = glGetUniformLocation(program, "diffuseTexture");
+        }
+        return program;
+    }
+
+    /**
+     * Remove all collected draws
+     */
+    public void clear() {
+        groups.clear();
+        drawCount = 0;
+    }
+
+    /**
+     * Collect draws of the model and all their parts, parts are sub-allocated in the shared arena
+     * if they are not yet. Has to be called on the thread with OpenGL context.
+     *
+     * @param model     model
+     * @param transform model matrix (row vectors as in the transforms package), it is applied before
+     *                  the current modelview matrix
+     * @param frustum   view frustum in world coordinates to cull parts and select levels of detail,
+     *                  null to draw all parts in their current levels
+     */
+    public void add(OBJLoader.Model model, Mat4 transform, Frustum frustum) {
+        // row-wise storage of a matrix for row vectors is the column-major storage for column vectors
+        model.collectDraws(this, transform.floatArray(), frustum == null ? null : frustum.transform(transform));
+    }
+
+    /**
+     * Collect draws of the model without transformation
+     *
+     * @param model   model
+     * @param frustum view frustum in the model's space or null
+     */
+    void add(OBJLoader.Model model, Frustum frustum) {
+        model.collectDraws(this, IDENTITY, frustum);
+    }
+
+    /**
+     * Collect a draw of a range of an allocation
+     *
+     * @param transform  model matrix in OpenGL's column-major order
+     * @param allocation allocation in the shared arena
+     * @param first      first index relative to the allocation
+     * @param count      count of indices
+     * @param material   material or null for defaults of glMaterial
+     * @param texture    diffuse texture or null
+     */
+    void addDraw(float[] transform, OGLBufferArena.Allocation allocation, int first, int count,
+                 OBJLoader.Material material, OGLTexture2D texture) {
+        groups.computeIfAbsent(texture, key -> new ArrayList<>())
+                .add(new Draw(transform, allocation, first, count, material));
+        drawCount++;
+    }
+
+    /**
+     * Build commands of the collected draws and submit them, one glMultiDrawElementsIndirect per
+     * diffuse texture. Has to be called on the thread with OpenGL context.
+     */
+    public void draw() {
+        multiDrawCount = 0;
+        if (drawCount == 0) {
+            return;
+        }
+        buildCommands();
+        glUseProgram(getProgram());
+        QuantizedMesh.setFixedFunctionUniforms(locLightEnabled, locTextureEnabled, locDiffuseTexture);
+        OBJLoader.Model.getArena().bind(program);
+        if (locDrawId >= 0) {
+            glBindBuffer(GL_ARRAY_BUFFER, drawIdBuffer);
+            glEnableVertexAttribArray(locDrawId);
+            glVertexAttribIPointer(locDrawId, 1, GL_INT, 0, 0);
+            glVertexAttribDivisor(locDrawId, 1);
+            glBindBuffer(GL_ARRAY_BUFFER, 0);
+        }
+        glBindBuffer(GL_DRAW_INDIRECT_BUFFER, commandBuffer);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 0, drawBuffer);
+
+        long offset = 0;
+        for (Map.Entry<OGLTexture2D, List<Draw>> group : groups.entrySet()) {
+            if (group.getKey() != null) {
+                group.getKey().bind();
+            }
+            glUniform1i(locTextureEnabled, group.getKey() != null ? 1 : 0);
+            glMultiDrawElementsIndirect(GL_TRIANGLES, GL_UNSIGNED_INT, offset, group.getValue().size(), 0);
+            offset += (long) group.getValue().size() * INTS_PER_COMMAND * Integer.BYTES;
+            multiDrawCount++;
+        }
+
+        if (locDrawId >= 0) {
+            // the vertex array object of the arena is shared by all batches, detach the draw ID buffer
+            glVertexAttribDivisor(locDrawId, 0);
+            glDisableVertexAttribArray(locDrawId);
+            glVertexAttribIPointer(locDrawId, 1, GL_INT, 0, 0);
+        }
+        glBindVertexArray(0);
+        glBindBuffer(GL_DRAW_INDIRECT_BUFFER, 0);
+        glBindBufferBase(GL_SHADER_STORAGE_BUFFER, 0, 0);
+        glUseProgram(0);
+    }
+
+    /**
+     * Write commands and draw data grouped by textures and upload them
+     */
+    private void buildCommands() {
+        if (commands.capacity() < drawCount * INTS_PER_COMMAND) {
+            commands = BufferUtils.createIntBuffer(Math.max(drawCount, commands.capacity() / INTS_PER_COMMAND * 2)
+                    * INTS_PER_COMMAND);
+            drawData = BufferUtils.createFloatBuffer(commands.capacity() / INTS_PER_COMMAND * FLOATS_PER_DRAW);
+        }
+        commands.clear();
+        drawData.clear();
+        int index = 0;
+        for (List<Draw> group : groups.values()) {
+            for (Draw draw : group) {
+                commands.put(draw.count).put(1)
+                        .put(draw.allocation.getFirstIndex() + draw.first)
+                        .put(draw.allocation.getBaseVertex())
+                        .put(index++);
+                drawData.put(draw.transform);
+                final OBJLoader.Material material = draw.material;
+                if (material != null) {
+                    drawData.put(material.toFloatArray(material.getAmbientColor()))
+                            .put(material.toFloatArray(material.getDiffuseColor()))
+                            .put(material.toFloatArray(material.getSpecularColor()))
+                            .put(material.getSpecularExponent()).put(0).put(0).put(0);
+                } else {
+                    drawData.put(DEFAULT_AMBIENT).put(DEFAULT_DIFFUSE).put(DEFAULT_SPECULAR).put(0).put(0).put(0).put(0);
+                }
+            }
+        }
+        commands.flip();
+        drawData.flip();
+
+        if (commandBuffer == 0) {
+            commandBuffer = glGenBuffers();
+            drawBuffer = glGenBuffers();
+            drawIdBuffer = glGenBuffers();
+        }
+        // the whole storage is replaced, so the driver need not wait for the previous frame
+        glBindBuffer(GL_DRAW_INDIRECT_BUFFER, commandBuffer);
+        glBufferData(GL_DRAW_INDIRECT_BUFFER, commands, GL_STREAM_DRAW);
+        glBindBuffer(GL_DRAW_INDIRECT_BUFFER, 0);
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, drawBuffer);
+        glBufferData(GL_SHADER_STORAGE_BUFFER, drawData, GL_STREAM_DRAW);
+        glBindBuffer(GL_SHADER_STORAGE_BUFFER, 0);
+        if (drawIdCapacity < drawCount) {
+            drawIdCapacity = Math.max(drawCount, drawIdCapacity * 2);
+            final IntBuffer ids = BufferUtils.createIntBuffer(drawIdCapacity);
+            for (int i = 0; i < drawIdCapacity; i++) {
+                ids.put(i);
+            }
+            ids.flip();
+            glBindBuffer(GL_ARRAY_BUFFER, drawIdBuffer);
+            glBufferData(GL_ARRAY_BUFFER, ids, GL_STATIC_DRAW);
+            glBindBuffer(GL_ARRAY_BUFFER, 0);
+        }
+    }
+
+    /**
+     * Return the count of collected draws
+     *
+     * @return count of draw commands
+     */
+    public int getDrawCount() {
+        return drawCount;
+    }
+
+    /**
+     * Return the count of glMultiDrawElementsIndirect calls of the last {@link #draw()}
+     *
+     * @return count of calls
+     */
+    public int getMultiDrawCount() {
+        return multiDrawCount;
+    }
+
+    /**
+     * Delete buffers of the batch, they are created again on the next draw.
+     * Has to be called on the thread with OpenGL context.
+     */
+    public void delete() {
+        if (commandBuffer != 0) {
+            glDeleteBuffers(commandBuffer);
+            glDeleteBuffers(drawBuffer);
+            glDeleteBuffers(drawIdBuffer);
+            commandBuffer = 0;
+            drawBuffer = 0;
+            drawIdBuffer = 0;
+            drawIdCapacity = 0;
+        }
+    }
+}
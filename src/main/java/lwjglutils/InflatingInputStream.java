@@ -0,0 +1,230 @@
+package lwjglutils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Class {@code InflatingInputStream} decompresses gzip or zlib (deflate) data on its own thread.
+ * <p>
+ * The thread inflates the compressed stream into chunks of {@link #CHUNK_SIZE} bytes and hands them
+ * over through a queue bounded to {@link #QUEUE_CAPACITY} chunks, so inflating and consuming
+ * (e.g. tokenizing by {@link OBJTokenizer}) overlap, while at most a few chunks of the decompressed
+ * data are held in memory. The thread is stopped when the stream is closed.
+ * <p>
+ * Static methods resolve compressed resources transparently: a resource "name" is opened
+ * as it is, or as "name.gz" (gzip) or "name.deflate" (zlib) if only the compressed one exists.
+ *
+ * @author Stanislav Čapek
+ * @version 1.0
+ * @see OBJLoader#loadModel(String)
+ */
+public class InflatingInputStream extends InputStream {
+
+    /**
+     * Size of a decompressed chunk
+     */
+    public static final int CHUNK_SIZE = 1 << 16;
+    /**
+     * Maximal count of chunks waiting for the consumer
+     */
+    public static final int QUEUE_CAPACITY = 4;
+    /**
+     * Extension of gzip files
+     */
+    public static final String GZIP_SUFFIX = ".gz";
+    /**
+     * Extension of zlib files
+     */
+    public static final String DEFLATE_SUFFIX = ".deflate";
+
+    private static final byte[] END = new byte[0];
+
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final InputStream source;
+    private final Thread thread;
+    private volatile IOException failure;
+    private byte[] chunk;
+    private int position;
+    private boolean closed;
+
+    /**
+     * Constructor, starts the decompression thread
+     *
+     * @param compressed compressed data, it is closed with this stream
+     * @param gzip       gzip format, otherwise zlib
+     */
+    public InflatingInputStream(InputStream compressed, boolean gzip) {
+        this.source = compressed;
+        thread = new Thread(() -> inflate(gzip), "inflater");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Check if the path has an extension of a compressed file
+     *
+     * @param path path
+     * @return is compressed
+     */
+    public static boolean isCompressed(String path) {
+        return path.endsWith(GZIP_SUFFIX) || path.endsWith(DEFLATE_SUFFIX);
+    }
+
+    /**
+     * Path of an existing classpath resource: the path itself, or the path with
+     * an extension of a compressed file
+     *
+     * @param path resource path
+     * @return existing path or null
+     */
+    public static String resolve(String path) {
+        if (getResource(path) != null) {
+            return path;
+        }
+        if (isCompressed(path)) {
+            return null;
+        }
+        for (String suffix : new String[]{GZIP_SUFFIX, DEFLATE_SUFFIX}) {
+            if (getResource(path + suffix) != null) {
+                return path + suffix;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Open a resolved classpath resource, compressed data are inflated by a new stream
+     *
+     * @param path resource path, see {@link #resolve(String)}
+     * @return decompressed data or null if there is no such resource
+     */
+    public static InputStream open(String path) {
+        final String resolved = resolve(path);
+        if (resolved == null) {
+            return null;
+        }
+        return wrap(InflatingInputStream.class.getClassLoader().getResourceAsStream(resolved), resolved);
+    }
+
+    /**
+     * Inflate the data if the path has an extension of a compressed file
+     *
+     * @param data data read from the path
+     * @param path path of the data
+     * @return decompressed data
+     */
+    public static InputStream wrap(InputStream data, String path) {
+        if (path.endsWith(GZIP_SUFFIX)) {
+            return new InflatingInputStream(data, true);
+        }
+        if (path.endsWith(DEFLATE_SUFFIX)) {
+            return new InflatingInputStream(data, false);
+        }
+        return data;
+    }
+
+    private static URL getResource(String path) {
+        return InflatingInputStream.class.getClassLoader().getResource(path);
+    }
+
+    /**
+     * Body of the decompression thread
+     */
+    private void inflate(boolean gzip) {
+        try (InputStream in = gzip ? new GZIPInputStream(source, CHUNK_SIZE) : new InflaterInputStream(source)) {
+            while (true) {
+                final byte[] buffer = new byte[CHUNK_SIZE];
+                int length = 0;
+                int read;
+                while (length < CHUNK_SIZE && (read = in.read(buffer, length, CHUNK_SIZE - length)) > 0) {
+                    length += read;
+                }
+                if (length == 0) {
+                    break;
+                }
+                queue.put(length == CHUNK_SIZE ? buffer : Arrays.copyOf(buffer, length));
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            // closed by the consumer
+            return;
+        }
+        try {
+            queue.put(END);
+        } catch (InterruptedException e) {
+            // closed by the consumer
+        }
+    }
+
+    /**
+     * Current chunk with remaining data, waits for the decompression thread
+     *
+     * @return false at the end of data
+     */
+    private boolean nextChunk() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (chunk != null && position < chunk.length) {
+            return true;
+        }
+        if (chunk == END) {
+            return false;
+        }
+        try {
+            chunk = queue.take();
+            position = 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        if (chunk == END) {
+            if (failure != null) {
+                throw failure;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return nextChunk() ? chunk[position++] & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextChunk()) {
+            return -1;
+        }
+        final int count = Math.min(len, chunk.length - position);
+        System.arraycopy(chunk, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return closed || chunk == null ? 0 : chunk.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            thread.interrupt();
+            source.close();
+        }
+    }
+}
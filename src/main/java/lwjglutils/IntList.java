@@ -0,0 +1,64 @@
+package lwjglutils;
+
+import java.util.Arrays;
+
+/**
+ * Growable array of primitive ints. Used by the loaders instead of lists
+ * of boxed values.
+ *
+ * @author Stanislav Čapek
+ * @version 1.0
+ */
+class IntList {
+    private int[] data;
+    private int size;
+
+    IntList() {
+        this(64);
+    }
+
+    IntList(int capacity) {
+        data = new int[Math.max(capacity, 1)];
+    }
+
+    /**
+     * List over an existing array, the array is not copied
+     *
+     * @param data elements
+     * @return new list
+     */
+    static IntList wrap(int[] data) {
+        final IntList list = new IntList(0);
+        list.data = data.length > 0 ? data : list.data;
+        list.size = data.length;
+        return list;
+    }
+
+    void add(int value) {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, size * 2);
+        }
+        data[size++] = value;
+    }
+
+    int get(int index) {
+        return data[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Backing array, valid elements are in range [0, size)
+     *
+     * @return array
+     */
+    int[] array() {
+        return data;
+    }
+
+    int[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+}
@@ -0,0 +1,597 @@
+package lwjglutils;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Class {@code MeshOptimizer} reorders an {@link IndexedMesh} for the GPU after loading.
+ * <p>
+ * The optimization has three passes, the first two are done separately for every draw range,
+ * so triangles never move between materials:
+ * <ol>
+ *     <li>Vertex cache: triangles are reordered by Tom Forsyth's linear-speed algorithm, which greedily
+ *     emits the triangle with the best score of its vertices, given by their position in a simulated
+ *     LRU cache of {@link #CACHE_SIZE} entries and by the count of their remaining triangles.</li>
+ *     <li>Overdraw: the ordered triangles are split into clusters at points where the post-transform cache
+ *     is flushed anyway (and further, while the cluster's ACMR stays within {@link #OVERDRAW_THRESHOLD}),
+ *     clusters are then sorted so the ones facing outwards far from the mesh's centroid are drawn first
+ *     and occlude the rest (Sander, Nehab, Barczak: Fast Triangle Reordering for Vertex Locality
+ *     and Reduced Overdraw).</li>
+ *     <li>Vertex fetch: vertices are renumbered in the order of their first use by the index buffer,
+ *     unused vertices are dropped.</li>
+ * </ol>
+ * The result can be measured by {@link #getACMR(IndexedMesh)} (average cache miss ratio, vertex shader
+ * invocations per triangle for a FIFO cache of {@link #FIFO_CACHE_SIZE} entries, from 0.5 to 3) and
+ * {@link #getOverdraw(IndexedMesh)} (shaded fragments per covered pixel, at least 1).
+ *
+ * @author Stanislav Čapek
+ * @version 1.0
+ * @see OBJLoader#loadModel(String)
+ */
+public class MeshOptimizer {
+
+    /**
+     * Size of the LRU cache simulated by the vertex cache pass
+     */
+    public static final int CACHE_SIZE = 32;
+    /**
+     * Size of the FIFO cache used by the overdraw pass and by the statistics
+     */
+    public static final int FIFO_CACHE_SIZE = 16;
+    /**
+     * Maximal ratio of a cluster's ACMR to the ACMR of the cache optimized triangles
+     */
+    public static final float OVERDRAW_THRESHOLD = 1.05f;
+
+    private static final float LAST_TRIANGLE_SCORE = 0.75f;
+    private static final float[] CACHE_SCORES = new float[CACHE_SIZE];
+    private static final float[] VALENCE_SCORES = new float[64];
+    private static final int OVERDRAW_GRID = 256;
+
+    private static boolean enabled = true;
+
+    static {
+        for (int position = 0; position < CACHE_SIZE; position++) {
+            CACHE_SCORES[position] = position < 3
+                    ? LAST_TRIANGLE_SCORE
+                    : (float) Math.pow(1 - (position - 3) / (double) (CACHE_SIZE - 3), 1.5);
+        }
+        for (int valence = 1; valence < VALENCE_SCORES.length; valence++) {
+            VALENCE_SCORES[valence] = (float) (2 / Math.sqrt(valence));
+        }
+    }
+
+    /**
+     * Private constructor- utility class
+     */
+    private MeshOptimizer() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enable or disable the optimization of loaded models
+     *
+     * @param enabled optimize models
+     */
+    public static void setEnabled(boolean enabled) {
+        MeshOptimizer.enabled = enabled;
+    }
+
+    /**
+     * Optimize the mesh by all three passes
+     *
+     * @param mesh source mesh, it is not modified
+     * @return new mesh with the same draw ranges
+     */
+    public static IndexedMesh optimize(IndexedMesh mesh) {
+        final int[] indices = mesh.getIndices().clone();
+        final float[] vertices = mesh.getVertices();
+        final int vertexCount = mesh.getVertexCount();
+
+        final int[] localVertices = new int[vertexCount];
+        Arrays.fill(localVertices, -1);
+        final int[] timestamps = new int[vertexCount];
+        for (IndexedMesh.Range range : mesh.getRanges()) {
+            optimizeVertexCache(indices, range.getFirst(), range.getCount(), localVertices);
+            optimizeOverdraw(indices, range.getFirst(), range.getCount(), vertices, timestamps);
+        }
+        return optimizeVertexFetch(vertices, indices, mesh);
+    }
+
+    /**
+     * Forsyth's vertex cache optimization of one range, in place
+     *
+     * @param indices       triangle indices
+     * @param first         first index of the range
+     * @param count         count of indices of the range
+     * @param localVertices vertex -> local vertex of the range, all -1 (and left so)
+     */
+    private static void optimizeVertexCache(int[] indices, int first, int count, int[] localVertices) {
+        final int triangleCount = count / 3;
+        if (triangleCount < 2) {
+            return;
+        }
+
+        // vertices of the range are numbered from 0
+        final int[] triangles = new int[triangleCount * 3];
+        final int[] globalVertices = new int[triangleCount * 3];
+        int vertexCount = 0;
+        for (int i = 0; i < triangleCount * 3; i++) {
+            final int vertex = indices[first + i];
+            if (localVertices[vertex] < 0) {
+                localVertices[vertex] = vertexCount;
+                globalVertices[vertexCount++] = vertex;
+            }
+            triangles[i] = localVertices[vertex];
+        }
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            localVertices[globalVertices[vertex]] = -1;
+        }
+
+        // triangles of every vertex, the live ones are at the start of the vertex's list
+        final int[] liveTriangles = new int[vertexCount];
+        for (int vertex : triangles) {
+            liveTriangles[vertex]++;
+        }
+        final int[] adjacencyStarts = new int[vertexCount + 1];
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            adjacencyStarts[vertex + 1] = adjacencyStarts[vertex] + liveTriangles[vertex];
+        }
+        final int[] adjacency = new int[triangleCount * 3];
+        final int[] cursors = Arrays.copyOf(adjacencyStarts, vertexCount);
+        for (int i = 0; i < triangleCount * 3; i++) {
+            adjacency[cursors[triangles[i]]++] = i / 3;
+        }
+
+        final int[] cachePositions = new int[vertexCount];
+        Arrays.fill(cachePositions, -1);
+        final float[] vertexScores = new float[vertexCount];
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            vertexScores[vertex] = score(-1, liveTriangles[vertex]);
+        }
+        final float[] triangleScores = new float[triangleCount];
+        int best = 0;
+        for (int triangle = 0; triangle < triangleCount; triangle++) {
+            triangleScores[triangle] = vertexScores[triangles[triangle * 3]]
+                    + vertexScores[triangles[triangle * 3 + 1]]
+                    + vertexScores[triangles[triangle * 3 + 2]];
+            if (triangleScores[triangle] > triangleScores[best]) {
+                best = triangle;
+            }
+        }
+
+        final boolean[] emitted = new boolean[triangleCount];
+        int[] cache = new int[CACHE_SIZE + 3];
+        int[] newCache = new int[CACHE_SIZE + 3];
+        int cacheSize = 0;
+        int nextUnemitted = 0;
+        for (int output = 0; output < triangleCount; output++) {
+            if (best < 0) {
+                // nothing adjacent to the cache, continue with the next triangle of the input
+                while (emitted[nextUnemitted]) {
+                    nextUnemitted++;
+                }
+                best = nextUnemitted;
+            }
+            emitted[best] = true;
+            for (int corner = 0; corner < 3; corner++) {
+                final int vertex = triangles[best * 3 + corner];
+                indices[first + output * 3 + corner] = globalVertices[vertex];
+
+                // remove the triangle from the live ones
+                final int start = adjacencyStarts[vertex];
+                final int last = start + liveTriangles[vertex] - 1;
+                for (int i = start; i <= last; i++) {
+                    if (adjacency[i] == best) {
+                        adjacency[i] = adjacency[last];
+                        adjacency[last] = best;
+                        liveTriangles[vertex]--;
+                        break;
+                    }
+                }
+            }
+
+            // vertices of the triangle move to the front of the cache
+            int newCacheSize = 0;
+            for (int corner = 0; corner < 3; corner++) {
+                final int vertex = triangles[best * 3 + corner];
+                if (indexOf(newCache, newCacheSize, vertex) < 0) {
+                    newCache[newCacheSize++] = vertex;
+                }
+            }
+            final int triangleVertexCount = newCacheSize;
+            for (int i = 0; i < cacheSize; i++) {
+                if (indexOf(newCache, triangleVertexCount, cache[i]) < 0) {
+                    newCache[newCacheSize++] = cache[i];
+                }
+            }
+
+            // update scores of cached and evicted vertices and their triangles
+            for (int i = 0; i < newCacheSize; i++) {
+                final int vertex = newCache[i];
+                cachePositions[vertex] = i < CACHE_SIZE ? i : -1;
+                final float vertexScore = score(cachePositions[vertex], liveTriangles[vertex]);
+                final float delta = vertexScore - vertexScores[vertex];
+                vertexScores[vertex] = vertexScore;
+                final int end = adjacencyStarts[vertex] + liveTriangles[vertex];
+                for (int j = adjacencyStarts[vertex]; j < end; j++) {
+                    triangleScores[adjacency[j]] += delta;
+                }
+            }
+            final int[] swap = cache;
+            cache = newCache;
+            newCache = swap;
+            cacheSize = Math.min(newCacheSize, CACHE_SIZE);
+
+            // the next triangle is the best one using a cached vertex
+            best = -1;
+            float bestScore = Float.NEGATIVE_INFINITY;
+            for (int i = 0; i < cacheSize; i++) {
+                final int vertex = cache[i];
+                final int end = adjacencyStarts[vertex] + liveTriangles[vertex];
+                for (int j = adjacencyStarts[vertex]; j < end; j++) {
+                    final int triangle = adjacency[j];
+                    if (triangleScores[triangle] > bestScore) {
+                        bestScore = triangleScores[triangle];
+                        best = triangle;
+                    }
+                }
+            }
+        }
+    }
+
+    private static int indexOf(int[] array, int length, int value) {
+        for (int i = 0; i < length; i++) {
+            if (array[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Score of a vertex
+     *
+     * @param cachePosition  position in the LRU cache, -1 if the vertex is not cached
+     * @param liveTriangles count of triangles, which are not emitted yet
+     * @return score
+     */
+    private static float score(int cachePosition, int liveTriangles) {
+        if (liveTriangles == 0) {
+            return -1;
+        }
+        final float cacheScore = cachePosition < 0 ? 0 : CACHE_SCORES[cachePosition];
+        final float valenceScore = liveTriangles < VALENCE_SCORES.length
+                ? VALENCE_SCORES[liveTriangles]
+                : (float) (2 / Math.sqrt(liveTriangles));
+        return cacheScore + valenceScore;
+    }
+
+    /**
+     * Cluster sorting of one range, in place. The triangles have to be cache optimized.
+     *
+     * @param indices    triangle indices
+     * @param first      first index of the range
+     * @param count      count of indices of the range
+     * @param vertices   interleaved vertices
+     * @param timestamps cache timestamps of all vertices
+     */
+    private static void optimizeOverdraw(int[] indices, int first, int count, float[] vertices, int[] timestamps) {
+        final int triangleCount = count / 3;
+        if (triangleCount < 2) {
+            return;
+        }
+        final FifoCache cache = new FifoCache(timestamps);
+        final int[] clusters = new int[triangleCount + 1];
+        int clusterCount = 0;
+
+        // hard boundaries, all vertices of a triangle missed the cache, so it starts a new patch
+        final int[] patches = new int[triangleCount + 1];
+        int patchCount = 0;
+        cache.flush();
+        for (int triangle = 0; triangle < triangleCount; triangle++) {
+            if (cache.misses(indices, first + triangle * 3) == 3 || triangle == 0) {
+                patches[patchCount++] = triangle;
+            }
+        }
+        patches[patchCount] = triangleCount;
+
+        // soft boundaries, a patch is split whenever its ACMR is reached
+        for (int patch = 0; patch < patchCount; patch++) {
+            final int start = patches[patch];
+            final int end = patches[patch + 1];
+            cache.flush();
+            int patchMisses = 0;
+            for (int triangle = start; triangle < end; triangle++) {
+                patchMisses += cache.misses(indices, first + triangle * 3);
+            }
+            final float threshold = OVERDRAW_THRESHOLD * patchMisses / (end - start);
+
+            clusters[clusterCount++] = start;
+            cache.flush();
+            int misses = 0;
+            int triangles = 0;
+            for (int triangle = start; triangle < end; triangle++) {
+                misses += cache.misses(indices, first + triangle * 3);
+                triangles++;
+                if (misses <= threshold * triangles) {
+                    clusters[clusterCount++] = triangle + 1;
+                    cache.flush();
+                    misses = 0;
+                    triangles = 0;
+                }
+            }
+            // the rest did not reach the ACMR, so it is merged into the previous cluster
+            if (clusters[clusterCount - 1] != start) {
+                clusterCount--;
+            }
+        }
+        clusters[clusterCount] = triangleCount;
+        if (clusterCount < 2) {
+            return;
+        }
+
+        // centroid of the range
+        double mx = 0, my = 0, mz = 0;
+        for (int i = 0; i < triangleCount * 3; i++) {
+            final int v = indices[first + i] * IndexedMesh.FLOATS_PER_VERTEX;
+            mx += vertices[v];
+            my += vertices[v + 1];
+            mz += vertices[v + 2];
+        }
+        mx /= triangleCount * 3;
+        my /= triangleCount * 3;
+        mz /= triangleCount * 3;
+
+        // clusters facing outwards far from the centroid go first
+        final double[] keys = new double[clusterCount];
+        final Integer[] order = new Integer[clusterCount];
+        for (int cluster = 0; cluster < clusterCount; cluster++) {
+            double cx = 0, cy = 0, cz = 0, nx = 0, ny = 0, nz = 0, area = 0;
+            for (int triangle = clusters[cluster]; triangle < clusters[cluster + 1]; triangle++) {
+                final int a = indices[first + triangle * 3] * IndexedMesh.FLOATS_PER_VERTEX;
+                final int b = indices[first + triangle * 3 + 1] * IndexedMesh.FLOATS_PER_VERTEX;
+                final int c = indices[first + triangle * 3 + 2] * IndexedMesh.FLOATS_PER_VERTEX;
+                final double ux = vertices[b] - vertices[a];
+                final double uy = vertices[b + 1] - vertices[a + 1];
+                final double uz = vertices[b + 2] - vertices[a + 2];
+                final double vx = vertices[c] - vertices[a];
+                final double vy = vertices[c + 1] - vertices[a + 1];
+                final double vz = vertices[c + 2] - vertices[a + 2];
+                final double x = uy * vz - uz * vy;
+                final double y = uz * vx - ux * vz;
+                final double z = ux * vy - uy * vx;
+                final double triangleArea = Math.sqrt(x * x + y * y + z * z);
+                cx += (vertices[a] + vertices[b] + vertices[c]) / 3 * triangleArea;
+                cy += (vertices[a + 1] + vertices[b + 1] + vertices[c + 1]) / 3 * triangleArea;
+                cz += (vertices[a + 2] + vertices[b + 2] + vertices[c + 2]) / 3 * triangleArea;
+                nx += x;
+                ny += y;
+                nz += z;
+                area += triangleArea;
+            }
+            final double normalLength = Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (area > 0 && normalLength > 0) {
+                keys[cluster] = ((cx / area - mx) * nx + (cy / area - my) * ny + (cz / area - mz) * nz) / normalLength;
+            }
+            order[cluster] = cluster;
+        }
+        Arrays.sort(order, (c1, c2) -> Double.compare(keys[c2], keys[c1]));
+
+        final int[] sorted = new int[triangleCount * 3];
+        int index = 0;
+        for (int cluster : order) {
+            final int length = (clusters[cluster + 1] - clusters[cluster]) * 3;
+            System.arraycopy(indices, first + clusters[cluster] * 3, sorted, index, length);
+            index += length;
+        }
+        System.arraycopy(sorted, 0, indices, first, triangleCount * 3);
+    }
+
+    /**
+     * Renumber vertices in the order of their first use
+     *
+     * @param vertices interleaved vertices
+     * @param indices  optimized indices, they are renumbered in place
+     * @param source   source mesh
+     * @return new mesh
+     */
+    private static IndexedMesh optimizeVertexFetch(float[] vertices, int[] indices, IndexedMesh source) {
+        final int[] remap = new int[source.getVertexCount()];
+        Arrays.fill(remap, -1);
+        int vertexCount = 0;
+        for (int i = 0; i < indices.length; i++) {
+            if (remap[indices[i]] < 0) {
+                remap[indices[i]] = vertexCount++;
+            }
+            indices[i] = remap[indices[i]];
+        }
+        final float[] fetched = new float[vertexCount * IndexedMesh.FLOATS_PER_VERTEX];
+        for (int vertex = 0; vertex < remap.length; vertex++) {
+            if (remap[vertex] >= 0) {
+                System.arraycopy(vertices, vertex * IndexedMesh.FLOATS_PER_VERTEX,
+                        fetched, remap[vertex] * IndexedMesh.FLOATS_PER_VERTEX, IndexedMesh.FLOATS_PER_VERTEX);
+            }
+        }
+        return new IndexedMesh(FloatBuffer.wrap(fetched), IntBuffer.wrap(indices),
+                source.getSourceCornerCount(), source.getRanges());
+    }
+
+    /**
+     * Average cache miss ratio of the mesh for a FIFO cache of {@link #FIFO_CACHE_SIZE} vertices
+     *
+     * @param mesh mesh
+     * @return transformed vertices per triangle
+     */
+    public static double getACMR(IndexedMesh mesh) {
+        if (mesh.getTriangleCount() == 0) {
+            return 0;
+        }
+        final int[] indices = mesh.getIndices();
+        final FifoCache cache = new FifoCache(new int[mesh.getVertexCount()]);
+        cache.flush();
+        long misses = 0;
+        for (int i = 0; i + 2 < indices.length; i += 3) {
+            misses += cache.misses(indices, i);
+        }
+        return misses / (double) mesh.getTriangleCount();
+    }
+
+    /**
+     * Overdraw of the mesh. Triangles are rasterized in their order with back-face culling and
+     * the depth test to a {@value #OVERDRAW_GRID}<sup>2</sup> grid by six orthographic views along
+     * the axes.
+     *
+     * @param mesh mesh
+     * @return shaded fragments per covered pixel
+     */
+    public static double getOverdraw(IndexedMesh mesh) {
+        final float[] vertices = mesh.getVertices();
+        final int[] indices = mesh.getIndices();
+        final int vertexCount = mesh.getVertexCount();
+        if (indices.length < 3) {
+            return 1;
+        }
+
+        // positions normalized to the grid
+        float minX = Float.POSITIVE_INFINITY, minY = minX, minZ = minX;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = maxX, maxZ = maxX;
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            final int v = vertex * IndexedMesh.FLOATS_PER_VERTEX;
+            minX = Math.min(minX, vertices[v]);
+            minY = Math.min(minY, vertices[v + 1]);
+            minZ = Math.min(minZ, vertices[v + 2]);
+            maxX = Math.max(maxX, vertices[v]);
+            maxY = Math.max(maxY, vertices[v + 1]);
+            maxZ = Math.max(maxZ, vertices[v + 2]);
+        }
+        final float extent = Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ));
+        final float scale = extent > 0 ? (OVERDRAW_GRID - 1) / extent : 0;
+        final float[] positions = new float[vertexCount * 3];
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            final int v = vertex * IndexedMesh.FLOATS_PER_VERTEX;
+            positions[vertex * 3] = (vertices[v] - minX) * scale;
+            positions[vertex * 3 + 1] = (vertices[v + 1] - minY) * scale;
+            positions[vertex * 3 + 2] = (vertices[v + 2] - minZ) * scale;
+        }
+
+        final float[] depth = new float[OVERDRAW_GRID * OVERDRAW_GRID];
+        long shaded = 0;
+        long covered = 0;
+        for (int axis = 0; axis < 3; axis++) {
+            for (int side = 1; side >= -1; side -= 2) {
+                // screen axes are ordered so front faces are counter-clockwise, closer fragments have less depth
+                final int u = side > 0 ? (axis + 1) % 3 : (axis + 2) % 3;
+                final int v = side > 0 ? (axis + 2) % 3 : (axis + 1) % 3;
+                Arrays.fill(depth, Float.POSITIVE_INFINITY);
+                for (int i = 0; i + 2 < indices.length; i += 3) {
+                    final int a = indices[i] * 3, b = indices[i + 1] * 3, c = indices[i + 2] * 3;
+                    shaded += rasterize(depth,
+                            positions[a + u], positions[a + v], -side * positions[a + axis],
+                            positions[b + u], positions[b + v], -side * positions[b + axis],
+                            positions[c + u], positions[c + v], -side * positions[c + axis]);
+                }
+                for (float d : depth) {
+                    if (d != Float.POSITIVE_INFINITY) {
+                        covered++;
+                    }
+                }
+            }
+        }
+        return covered == 0 ? 1 : shaded / (double) covered;
+    }
+
+    /**
+     * Rasterize a counter-clockwise triangle with the depth test, pixel centers are sampled
+     *
+     * @return count of fragments passing the depth test
+     */
+    private static int rasterize(float[] depth, float x1, float y1, float z1,
+                                 float x2, float y2, float z2, float x3, float y3, float z3) {
+        final float area = (x2 - x1) * (y3 - y1) - (y2 - y1) * (x3 - x1);
+        if (area <= 0) {
+            return 0;
+        }
+        final int minX = Math.max((int) Math.floor(Math.min(x1, Math.min(x2, x3))), 0);
+        final int minY = Math.max((int) Math.floor(Math.min(y1, Math.min(y2, y3))), 0);
+        final int maxX = Math.min((int) Math.ceil(Math.max(x1, Math.max(x2, x3))), OVERDRAW_GRID - 1);
+        final int maxY = Math.min((int) Math.ceil(Math.max(y1, Math.max(y2, y3))), OVERDRAW_GRID - 1);
+        int fragments = 0;
+        for (int y = minY; y <= maxY; y++) {
+            final float py = y + 0.5f;
+            for (int x = minX; x <= maxX; x++) {
+                final float px = x + 0.5f;
+                final float w1 = (x3 - x2) * (py - y2) - (y3 - y2) * (px - x2);
+                final float w2 = (x1 - x3) * (py - y3) - (y1 - y3) * (px - x3);
+                final float w3 = (x2 - x1) * (py - y1) - (y2 - y1) * (px - x1);
+                if (w1 < 0 || w2 < 0 || w3 < 0) {
+                    continue;
+                }
+                final float z = (w1 * z1 + w2 * z2 + w3 * z3) / area;
+                final int pixel = y * OVERDRAW_GRID + x;
+                if (z < depth[pixel]) {
+                    depth[pixel] = z;
+                    fragments++;
+                }
+            }
+        }
+        return fragments;
+    }
+
+    /**
+     * Log statistics of the optimization
+     *
+     * @param name   model's name
+     * @param before source mesh
+     * @param after  optimized mesh
+     * @param start  start of the optimization by {@link System#nanoTime()}
+     */
+    static void report(String name, IndexedMesh before, IndexedMesh after, long start) {
+        final long millis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println(String.format(Locale.US,
+                "%s optimized in %d ms: ACMR %.3f -> %.3f, overdraw %.3f -> %.3f, vertices %d -> %d",
+                name, millis, getACMR(before), getACMR(after), getOverdraw(before), getOverdraw(after),
+                before.getVertexCount(), after.getVertexCount()));
+    }
+
+    /**
+     * FIFO post-transform cache simulated by timestamps, a vertex is cached while less than
+     * {@link #FIFO_CACHE_SIZE} other vertices were transformed after it
+     */
+    private static class FifoCache {
+        private final int[] timestamps;
+        private int time;
+
+        FifoCache(int[] timestamps) {
+            this.timestamps = timestamps;
+            Arrays.fill(timestamps, 0);
+        }
+
+        void flush() {
+            time += FIFO_CACHE_SIZE + 1;
+        }
+
+        /**
+         * Transform vertices of a triangle
+         *
+         * @param indices indices
+         * @param offset  first index of the triangle
+         * @return count of cache misses
+         */
+        int misses(int[] indices, int offset) {
+            int misses = 0;
+            for (int i = offset; i < offset + 3; i++) {
+                if (time - timestamps[indices[i]] > FIFO_CACHE_SIZE) {
+                    timestamps[indices[i]] = time++;
+                    misses++;
+                }
+            }
+            return misses;
+        }
+    }
+}
@@ -0,0 +1,690 @@
+package lwjglutils;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class {@code MeshSimplifier} creates coarser levels of detail of an {@link IndexedMesh} by edge collapses
+ * ordered by the quadric error metric (Garland, Heckbert: Surface Simplification Using Quadric Error Metrics).
+ * <p>
+ * Vertices with the same position are welded, so the topology is not broken by texture or normal seams.
+ * Triangles with the same corners (both sides of a thin shell) count as one side of their edges.
+ * An edge is collapsed to one of its end points (half-edge collapse), so no new vertices are created
+ * and all levels share the vertex buffer of the source mesh. A collapse is rejected if it would
+ * <ul>
+ *     <li>move a vertex of an open border away from the border or change the topology (link condition),</li>
+ *     <li>flip a triangle,</li>
+ *     <li>merge two sides of a seam or leave a corner without a matching vertex on the target.</li>
+ * </ul>
+ * A collapse rejected only by the last condition is tried again by position only, with its cost multiplied
+ * by {@link #SEAM_WEIGHT}: a corner without a matching vertex takes the target's vertex of the most similar
+ * texture coordinate and normal, and seams may be merged. Such collapses are taken when no cheaper one
+ * keeping attributes is left, so vertices on seams and hard edges do not stop the simplification, while
+ * attributes of coarser levels get approximate along seams.
+ * Every plane of an adjacent triangle counts once in a vertex's quadric, edges of open borders
+ * add a perpendicular plane weighted by {@link #BORDER_WEIGHT}. The square root of a collapse's cost
+ * is used as an estimate of the geometric error (in units of the model).
+ * <p>
+ * Simplification is progressive: every call of {@link #simplify(int, double)} continues from the state
+ * of the previous one. Draw ranges of the source mesh are kept in all levels, even if they get empty.
+ *
+ * @author Stanislav Čapek
+ * @version 1.0
+ * @see OBJLoader.Model#generateLevels()
+ */
+public class MeshSimplifier {
+
+    /**
+     * Maximal count of levels of detail of a model including the source mesh
+     */
+    public static final int MAX_LEVELS = 5;
+    /**
+     * Maximal error of a level of detail relative to the radius of the model's bounding sphere
+     */
+    public static final double MAX_RELATIVE_ERROR = 0.25;
+    /**
+     * Maximal ratio of triangles of a level of detail to the previous level
+     */
+    public static final double MIN_REDUCTION = 0.75;
+    /**
+     * Meshes with fewer triangles are not simplified any more
+     */
+    public static final int MIN_TRIANGLES = 64;
+    /**
+     * Weight of planes keeping open borders in place
+     */
+    public static final double BORDER_WEIGHT = 10;
+    /**
+     * Weight of the cost of collapses, which approximate attributes of a seam (the error counts twice)
+     */
+    public static final double SEAM_WEIGHT = 4;
+    /**
+     * Minimal cosine of the angle between the normals of a triangle before and after a collapse
+     */
+    private static final double FLIP_LIMIT = 0.2;
+
+    private final IndexedMesh source;
+    private final FloatBuffer vertices;
+    private final int[] wedgePositions;
+    private final double[] positions;
+    private final double[] quadrics;
+    private final int[] triangles;
+    private final boolean[] alive;
+    private final int[][] adjacency;
+    private final int[] adjacencySizes;
+    private final int[] versions;
+    private final EdgeHeap heap = new EdgeHeap();
+    private int triangleCount;
+    private double maxCost;
+
+    // scratch arrays of collapse checks
+    private int[] neighbors = new int[32];
+    private int[] opposite = new int[8];
+    private int[] mappedFrom = new int[8];
+    private int[] mappedTo = new int[8];
+    private int mappedCount;
+
+    /**
+     * Constructor, prepares quadrics and candidate edges
+     *
+     * @param mesh source mesh
+     */
+    public MeshSimplifier(IndexedMesh mesh) {
+        this.source = mesh;
+        this.vertices = mesh.getVertexBuffer();
+        final int vertexCount = mesh.getVertexCount();
+
+        // welding of positions
+        final VertexIndexMap map = new VertexIndexMap(vertexCount);
+        wedgePositions = new int[vertexCount];
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            final int v = vertex * IndexedMesh.FLOATS_PER_VERTEX;
+            // + 0f merges -0 and 0
+            wedgePositions[vertex] = map.getOrAdd(Float.floatToIntBits(vertices.get(v) + 0f),
+                    Float.floatToIntBits(vertices.get(v + 1) + 0f), Float.floatToIntBits(vertices.get(v + 2) + 0f));
+        }
+        final int positionCount = map.size();
+        positions = new double[positionCount * 3];
+        final int[] keys = map.keys();
+        for (int position = 0; position < positionCount; position++) {
+            for (int i = 0; i < 3; i++) {
+                positions[position * 3 + i] = Float.intBitsToFloat(keys[position * 3 + i]);
+            }
+        }
+
+        // triangles, degenerate ones are dropped
+        final IntBuffer indices = mesh.getIndexBuffer();
+        triangles = new int[indices.limit()];
+        alive = new boolean[indices.limit() / 3];
+        adjacencySizes = new int[positionCount];
+        for (IndexedMesh.Range range : mesh.getRanges()) {
+            final int end = range.getFirst() + range.getCount();
+            for (int i = range.getFirst(); i + 2 < end; i += 3) {
+                final int triangle = i / 3;
+                triangles[i] = indices.get(i);
+                triangles[i + 1] = indices.get(i + 1);
+                triangles[i + 2] = indices.get(i + 2);
+                final int a = wedgePositions[triangles[i]];
+                final int b = wedgePositions[triangles[i + 1]];
+                final int c = wedgePositions[triangles[i + 2]];
+                if (a != b && b != c && c != a) {
+                    alive[triangle] = true;
+                    triangleCount++;
+                    adjacencySizes[a]++;
+                    adjacencySizes[b]++;
+                    adjacencySizes[c]++;
+                }
+            }
+        }
+        adjacency = new int[positionCount][];
+        for (int position = 0; position < positionCount; position++) {
+            adjacency[position] = new int[Math.max(adjacencySizes[position], 4)];
+            adjacencySizes[position] = 0;
+        }
+        for (int triangle = 0; triangle < alive.length; triangle++) {
+            if (alive[triangle]) {
+                for (int corner = 0; corner < 3; corner++) {
+                    final int position = wedgePositions[triangles[triangle * 3 + corner]];
+                    adjacency[position][adjacencySizes[position]++] = triangle;
+                }
+            }
+        }
+
+        quadrics = new double[positionCount * 10];
+        for (int triangle = 0; triangle < alive.length; triangle++) {
+            if (alive[triangle]) {
+                addTriangleQuadrics(triangle);
+            }
+        }
+
+        versions = new int[positionCount];
+        for (int triangle = 0; triangle < alive.length; triangle++) {
+            if (alive[triangle]) {
+                for (int corner = 0; corner < 3; corner++) {
+                    final int from = wedgePositions[triangles[triangle * 3 + corner]];
+                    final int to = wedgePositions[triangles[triangle * 3 + (corner + 1) % 3]];
+                    pushEdge(from, to);
+                    pushEdge(to, from);
+                }
+            }
+        }
+    }
+
+    /**
+     * Collapse edges until the mesh has at most the target count of triangles, the cheapest
+     * edges first, or until the next collapse exceeds the error
+     *
+     * @param targetTriangleCount target count of triangles
+     * @param maxError            maximal error in units of the model
+     * @return new mesh sharing the vertex buffer of the source mesh
+     */
+    public IndexedMesh simplify(int targetTriangleCount, double maxError) {
+        final double maxCollapseCost = maxError * maxError;
+        while (triangleCount > targetTriangleCount && heap.size() > 0) {
+            final double cost = heap.topCost();
+            if (cost > maxCollapseCost) {
+                break;
+            }
+            final int from = heap.topFrom();
+            final int to = heap.topTo();
+            final boolean fresh = heap.topFromVersion() == versions[from] && heap.topToVersion() == versions[to];
+            final boolean positionOnly = heap.topPositionOnly();
+            heap.pop();
+            if (!fresh) {
+                continue;
+            }
+            if (canCollapse(from, to, positionOnly)) {
+                collapse(from, to);
+                maxCost = Math.max(maxCost, cost);
+            } else if (!positionOnly && canCollapse(from, to, true)) {
+                heap.push(cost * SEAM_WEIGHT, from, to, versions[from], versions[to], true);
+            }
+        }
+        return toMesh();
+    }
+
+    /**
+     * Estimated geometric error of the current state
+     *
+     * @return error in units of the model
+     */
+    public double getError() {
+        return Math.sqrt(maxCost);
+    }
+
+    public int getTriangleCount() {
+        return triangleCount;
+    }
+
+    private IndexedMesh toMesh() {
+        final List<IndexedMesh.Range> sourceRanges = source.getRanges();
+        final int[] indices = new int[triangleCount * 3];
+        final List<IndexedMesh.Range> ranges = new ArrayList<>(sourceRanges.size());
+        int index = 0;
+        for (IndexedMesh.Range sourceRange : sourceRanges) {
+            final int first = index;
+            final int end = (sourceRange.getFirst() + sourceRange.getCount()) / 3;
+            for (int triangle = sourceRange.getFirst() / 3; triangle < end; triangle++) {
+                if (alive[triangle]) {
+                    indices[index++] = triangles[triangle * 3];
+                    indices[index++] = triangles[triangle * 3 + 1];
+                    indices[index++] = triangles[triangle * 3 + 2];
+                }
+            }
+            ranges.add(new IndexedMesh.Range(sourceRange.getMaterial(), first, index - first));
+        }
+        return new IndexedMesh(source.getVertexBuffer(), IntBuffer.wrap(indices), source.getSourceCornerCount(), ranges);
+    }
+
+    private void addTriangleQuadrics(int triangle) {
+        final int a = wedgePositions[triangles[triangle * 3]];
+        final int b = wedgePositions[triangles[triangle * 3 + 1]];
+        final int c = wedgePositions[triangles[triangle * 3 + 2]];
+        final double[] normal = normal(a, b, c);
+        final double length = Math.sqrt(dot(normal, normal));
+        if (length == 0) {
+            return;
+        }
+        final double nx = normal[0] / length, ny = normal[1] / length, nz = normal[2] / length;
+        final double d = -(nx * positions[a * 3] + ny * positions[a * 3 + 1] + nz * positions[a * 3 + 2]);
+        addPlane(a, nx, ny, nz, d, 1);
+        addPlane(b, nx, ny, nz, d, 1);
+        addPlane(c, nx, ny, nz, d, 1);
+
+        // planes perpendicular to open borders
+        final int[] corners = {a, b, c};
+        for (int corner = 0; corner < 3; corner++) {
+            final int p = corners[corner];
+            final int q = corners[(corner + 1) % 3];
+            if (countSides(p, q) != 1) {
+                continue;
+            }
+            final double ex = positions[q * 3] - positions[p * 3];
+            final double ey = positions[q * 3 + 1] - positions[p * 3 + 1];
+            final double ez = positions[q * 3 + 2] - positions[p * 3 + 2];
+            double bx = ey * nz - ez * ny, by = ez * nx - ex * nz, bz = ex * ny - ey * nx;
+            final double borderLength = Math.sqrt(bx * bx + by * by + bz * bz);
+            if (borderLength == 0) {
+                continue;
+            }
+            bx /= borderLength;
+            by /= borderLength;
+            bz /= borderLength;
+            final double bd = -(bx * positions[p * 3] + by * positions[p * 3 + 1] + bz * positions[p * 3 + 2]);
+            addPlane(p, bx, by, bz, bd, BORDER_WEIGHT);
+            addPlane(q, bx, by, bz, bd, BORDER_WEIGHT);
+        }
+    }
+
+    private void addPlane(int position, double a, double b, double c, double d, double weight) {
+        final int q = position * 10;
+        quadrics[q] += weight * a * a;
+        quadrics[q + 1] += weight * a * b;
+        quadrics[q + 2] += weight * a * c;
+        quadrics[q + 3] += weight * a * d;
+        quadrics[q + 4] += weight * b * b;
+        quadrics[q + 5] += weight * b * c;
+        quadrics[q + 6] += weight * b * d;
+        quadrics[q + 7] += weight * c * c;
+        quadrics[q + 8] += weight * c * d;
+        quadrics[q + 9] += weight * d * d;
+    }
+
+    /**
+     * Cost of the collapse, the error of both quadrics at the target position
+     */
+    private double cost(int from, int to) {
+        final double x = positions[to * 3], y = positions[to * 3 + 1], z = positions[to * 3 + 2];
+        double cost = 0;
+        for (int q = from * 10, i = 0; i < 2; q = to * 10, i++) {
+            cost += quadrics[q] * x * x + 2 * quadrics[q + 1] * x * y + 2 * quadrics[q + 2] * x * z
+                    + 2 * quadrics[q + 3] * x + quadrics[q + 4] * y * y + 2 * quadrics[q + 5] * y * z
+                    + 2 * quadrics[q + 6] * y + quadrics[q + 7] * z * z + 2 * quadrics[q + 8] * z
+                    + quadrics[q + 9];
+        }
+        // rounding can make the error slightly negative
+        return Math.max(cost, 0);
+    }
+
+    private void pushEdge(int from, int to) {
+        heap.push(cost(from, to), from, to, versions[from], versions[to], false);
+    }
+
+    /**
+     * Count of living triangles with the edge
+     */
+    private int countTriangles(int p, int q) {
+        int count = 0;
+        for (int i = 0; i < adjacencySizes[p]; i++) {
+            if (cornerOf(adjacency[p][i], q) >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Count of distinct opposite corners of living triangles with the edge, triangles with
+     * the same corners are on one side
+     */
+    private int countSides(int p, int q) {
+        int count = 0;
+        for (int i = 0; i < adjacencySizes[p]; i++) {
+            final int triangle = adjacency[p][i];
+            if (cornerOf(triangle, q) < 0) {
+                continue;
+            }
+            int third = -1;
+            for (int corner = 0; corner < 3 && third < 0; corner++) {
+                final int position = wedgePositions[triangles[triangle * 3 + corner]];
+                if (position != p && position != q) {
+                    third = position;
+                }
+            }
+            if (occurrences(opposite, count, third) == 0) {
+                if (count == opposite.length) {
+                    opposite = Arrays.copyOf(opposite, count * 2);
+                }
+                opposite[count++] = third;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Corner of the triangle at the position
+     *
+     * @return corner 0 - 2 or -1
+     */
+    private int cornerOf(int triangle, int position) {
+        for (int corner = 0; corner < 3; corner++) {
+            if (wedgePositions[triangles[triangle * 3 + corner]] == position) {
+                return corner;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Neighbor positions of the position with repetitions (once per triangle), stored in {@link #neighbors}
+     *
+     * @return count of neighbors
+     */
+    private int collectNeighbors(int position) {
+        if (neighbors.length < adjacencySizes[position] * 2) {
+            neighbors = new int[adjacencySizes[position] * 4];
+        }
+        int count = 0;
+        for (int i = 0; i < adjacencySizes[position]; i++) {
+            final int triangle = adjacency[position][i];
+            for (int corner = 0; corner < 3; corner++) {
+                final int other = wedgePositions[triangles[triangle * 3 + corner]];
+                if (other != position) {
+                    neighbors[count++] = other;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static int occurrences(int[] array, int length, int value) {
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            if (array[i] == value) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Check the conditions of a collapse and map vertices of the moved corners
+     *
+     * @param positionOnly corners may take a vertex of other attributes
+     */
+    private boolean canCollapse(int from, int to, boolean positionOnly) {
+        final int shared = countSides(from, to);
+        if (shared == 0 || shared > 2) {
+            return false;
+        }
+
+        // a border vertex can move only along its border
+        final int neighborCount = collectNeighbors(from);
+        boolean border = false;
+        for (int i = 0; i < neighborCount && !border; i++) {
+            border = occurrences(neighbors, i, neighbors[i]) == 0 && countSides(from, neighbors[i]) == 1;
+        }
+        if (border && shared != 1) {
+            return false;
+        }
+
+        // link condition, common neighbors are only the opposite corners of shared triangles
+        int common = 0;
+        for (int i = 0; i < neighborCount; i++) {
+            final int neighbor = neighbors[i];
+            if (neighbor == to || occurrences(neighbors, i, neighbor) > 0) {
+                continue;
+            }
+            if (countTriangles(to, neighbor) > 0) {
+                common++;
+            }
+        }
+        if (common != shared) {
+            return false;
+        }
+
+        // corners moved to the target take its vertex of the same side of a seam
+        mappedCount = 0;
+        for (int i = 0; i < adjacencySizes[from]; i++) {
+            final int triangle = adjacency[from][i];
+            final int toCorner = cornerOf(triangle, to);
+            if (toCorner >= 0) {
+                final int fromWedge = triangles[triangle * 3 + cornerOf(triangle, from)];
+                final int toWedge = triangles[triangle * 3 + toCorner];
+                final int mapped = mapped(fromWedge);
+                if (mapped < 0) {
+                    if (mappedCount == mappedFrom.length) {
+                        mappedFrom = Arrays.copyOf(mappedFrom, mappedCount * 2);
+                        mappedTo = Arrays.copyOf(mappedTo, mappedCount * 2);
+                    }
+                    for (int j = 0; j < mappedCount && !positionOnly; j++) {
+                        if (mappedTo[j] == toWedge) {
+                            // two sides of a seam would be merged
+                            return false;
+                        }
+                    }
+                    mappedFrom[mappedCount] = fromWedge;
+                    mappedTo[mappedCount++] = toWedge;
+                } else if (mapped != toWedge && !positionOnly) {
+                    return false;
+                }
+            }
+        }
+
+        // remaining triangles must have a target vertex and must not flip
+        for (int i = 0; i < adjacencySizes[from]; i++) {
+            final int triangle = adjacency[from][i];
+            if (cornerOf(triangle, to) >= 0) {
+                continue;
+            }
+            final int fromWedge = triangles[triangle * 3 + cornerOf(triangle, from)];
+            if (mapped(fromWedge) < 0) {
+                if (!positionOnly) {
+                    return false;
+                }
+                if (mappedCount == mappedFrom.length) {
+                    mappedFrom = Arrays.copyOf(mappedFrom, mappedCount * 2);
+                    mappedTo = Arrays.copyOf(mappedTo, mappedCount * 2);
+                }
+                mappedFrom[mappedCount] = fromWedge;
+                mappedTo[mappedCount++] = nearestWedge(fromWedge, to);
+            }
+            final int a = wedgePositions[triangles[triangle * 3]];
+            final int b = wedgePositions[triangles[triangle * 3 + 1]];
+            final int c = wedgePositions[triangles[triangle * 3 + 2]];
+            final double[] before = normal(a, b, c);
+            final double[] after = normal(a == from ? to : a, b == from ? to : b, c == from ? to : c);
+            final double lengths = Math.sqrt(dot(before, before) * dot(after, after));
+            if (lengths == 0 || dot(before, after) < FLIP_LIMIT * lengths) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Vertex of the position with the most similar texture coordinate and normal to the wedge
+     */
+    private int nearestWedge(int wedge, int position) {
+        int nearest = -1;
+        double nearestDistance = Double.MAX_VALUE;
+        for (int i = 0; i < adjacencySizes[position]; i++) {
+            final int triangle = adjacency[position][i];
+            final int candidate = triangles[triangle * 3 + cornerOf(triangle, position)];
+            double distance = 0;
+            for (int attribute = 3; attribute < IndexedMesh.FLOATS_PER_VERTEX; attribute++) {
+                final double difference = vertices.get(candidate * IndexedMesh.FLOATS_PER_VERTEX + attribute)
+                        - vertices.get(wedge * IndexedMesh.FLOATS_PER_VERTEX + attribute);
+                distance += difference * difference;
+            }
+            if (distance < nearestDistance) {
+                nearest = candidate;
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    private int mapped(int wedge) {
+        for (int i = 0; i < mappedCount; i++) {
+            if (mappedFrom[i] == wedge) {
+                return mappedTo[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Collapse the edge, {@link #canCollapse(int, int, boolean)} has to be called right before
+     */
+    private void collapse(int from, int to) {
+        for (int i = 0; i < adjacencySizes[from]; i++) {
+            final int triangle = adjacency[from][i];
+            if (cornerOf(triangle, to) >= 0) {
+                alive[triangle] = false;
+                triangleCount--;
+                for (int corner = 0; corner < 3; corner++) {
+                    final int position = wedgePositions[triangles[triangle * 3 + corner]];
+                    if (position != from) {
+                        removeAdjacency(position, triangle);
+                    }
+                }
+            } else {
+                final int corner = cornerOf(triangle, from);
+                triangles[triangle * 3 + corner] = mapped(triangles[triangle * 3 + corner]);
+                addAdjacency(to, triangle);
+            }
+        }
+        adjacencySizes[from] = 0;
+        adjacency[from] = new int[0];
+
+        for (int i = 0; i < 10; i++) {
+            quadrics[to * 10 + i] += quadrics[from * 10 + i];
+        }
+        versions[from]++;
+        versions[to]++;
+
+        final int neighborCount = collectNeighbors(to);
+        for (int i = 0; i < neighborCount; i++) {
+            if (occurrences(neighbors, i, neighbors[i]) == 0) {
+                pushEdge(neighbors[i], to);
+                pushEdge(to, neighbors[i]);
+            }
+        }
+    }
+
+    private void addAdjacency(int position, int triangle) {
+        if (adjacencySizes[position] == adjacency[position].length) {
+            adjacency[position] = Arrays.copyOf(adjacency[position], Math.max(4, adjacencySizes[position] * 2));
+        }
+        adjacency[position][adjacencySizes[position]++] = triangle;
+    }
+
+    private void removeAdjacency(int position, int triangle) {
+        final int[] list = adjacency[position];
+        for (int i = 0; i < adjacencySizes[position]; i++) {
+            if (list[i] == triangle) {
+                list[i] = list[--adjacencySizes[position]];
+                return;
+            }
+        }
+    }
+
+    private double[] normal(int a, int b, int c) {
+        final double ux = positions[b * 3] - positions[a * 3];
+        final double uy = positions[b * 3 + 1] - positions[a * 3 + 1];
+        final double uz = positions[b * 3 + 2] - positions[a * 3 + 2];
+        final double vx = positions[c * 3] - positions[a * 3];
+        final double vy = positions[c * 3 + 1] - positions[a * 3 + 1];
+        final double vz = positions[c * 3 + 2] - positions[a * 3 + 2];
+        return new double[]{uy * vz - uz * vy, uz * vx - ux * vz, ux * vy - uy * vx};
+    }
+
+    private static double dot(double[] u, double[] v) {
+        return u[0] * v[0] + u[1] * v[1] + u[2] * v[2];
+    }
+
+    /**
+     * Binary min-heap of candidate collapses in parallel arrays, entries are invalidated
+     * by versions of their positions
+     */
+    private static class EdgeHeap {
+        private static final int INTS_PER_ENTRY = 5;
+        private double[] costs = new double[64];
+        private int[] entries = new int[64 * INTS_PER_ENTRY];
+        private int size;
+
+        void push(double cost, int from, int to, int fromVersion, int toVersion, boolean positionOnly) {
+            if (size == costs.length) {
+                costs = Arrays.copyOf(costs, size * 2);
+                entries = Arrays.copyOf(entries, size * 2 * INTS_PER_ENTRY);
+            }
+            int i = size++;
+            while (i > 0) {
+                final int parent = (i - 1) / 2;
+                if (costs[parent] <= cost) {
+                    break;
+                }
+                move(parent, i);
+                i = parent;
+            }
+            costs[i] = cost;
+            entries[i * INTS_PER_ENTRY] = from;
+            entries[i * INTS_PER_ENTRY + 1] = to;
+            entries[i * INTS_PER_ENTRY + 2] = fromVersion;
+            entries[i * INTS_PER_ENTRY + 3] = toVersion;
+            entries[i * INTS_PER_ENTRY + 4] = positionOnly ? 1 : 0;
+        }
+
+        void pop() {
+            size--;
+            if (size == 0) {
+                return;
+            }
+            final double cost = costs[size];
+            final int last = size;
+            int i = 0;
+            while (true) {
+                int child = i * 2 + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && costs[child + 1] < costs[child]) {
+                    child++;
+                }
+                if (cost <= costs[child]) {
+                    break;
+                }
+                move(child, i);
+                i = child;
+            }
+            move(last, i);
+        }
+
+        private void move(int from, int to) {
+            costs[to] = costs[from];
+            System.arraycopy(entries, from * INTS_PER_ENTRY, entries, to * INTS_PER_ENTRY, INTS_PER_ENTRY);
+        }
+
+        int size() {
+            return size;
+        }
+
+        double topCost() {
+            return costs[0];
+        }
+
+        int topFrom() {
+            return entries[0];
+        }
+
+        int topTo() {
+            return entries[1];
+        }
+
+        int topFromVersion() {
+            return entries[2];
+        }
+
+        int topToVersion() {
+            return entries[3];
+        }
+
+        boolean topPositionOnly() {
+            return entries[4] != 0;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package lwjglutils;
+
+import org.lwjgl.BufferUtils;
+import transforms.Col;
+import transforms.Mat4;
+
+import java.nio.FloatBuffer;
+
+import static org.lwjgl.opengl.GL33.*;
+
+/**
+ * Class {@code ModelInstances} holds per-instance data of copies of a model drawn by
+ * {@link OBJLoader.Model#drawInstanced(ModelInstances)}: a model matrix and a tint color of every copy.
+ * <p>
+ * The data are interleaved in a direct buffer ({@link #FLOATS_PER_INSTANCE} floats per instance)
+ * and uploaded into a vertex buffer read once per instance (glVertexAttribDivisor), the upload
+ * happens on the next draw after a change only. The shader of {@link #getProgram()} transforms
+ * vertices by the instance's matrix before the current modelview matrix and multiplies the color
+ * lit as by the fixed-function pipeline (lights 0 - 2) by the tint.
+ *
+ * @author Stanislav Čapek
+ * @version 1.0
+ */
+public class ModelInstances {
+
+    /**
+     * Floats of one instance: model matrix (16) and tint (4)
+     */
+    public static final int FLOATS_PER_INSTANCE = 20;
+
+    private static final String[] SHADER_VERT_SRC = QuantizedMesh.concat(new String[]{
+            "#version 120\n",
+            "attribute vec3 inPosition;",
+            "attribute vec2 inTexCoord;",
+            "attribute vec3 inNormal;",
+            "attribute mat4 inTransform;",
+            "attribute vec4 inTint;"
+    }, QuantizedMesh.LIGHTING_SRC, new String[]{
+            "void main() {",
+            "   vec4 eyePosition = gl_ModelViewMatrix * (inTransform * vec4(inPosition, 1.0));",
+            // the normal matrix of the instance's matrix is left out, it is valid for uniform scales
+            "   vec3 normal = normalize(gl_NormalMatrix * (mat3(inTransform) * inNormal));",
+            "   gl_FrontColor = lighting(eyePosition, normal) * inTint;",
+            "   gl_TexCoord[0] = vec4(inTexCoord, 0.0, 1.0);",
+            "   gl_Position = gl_ProjectionMatrix * eyePosition;",
+            "}"
+    });
+
+    private static int program;
+    private static int locTransform, locTint;
+    private static int locLightEnabled, locTextureEnabled, locDiffuseTexture;
+
+    private FloatBuffer data = BufferUtils.createFloatBuffer(FLOATS_PER_INSTANCE * 16);
+    private int count;
+    private int buffer;
+    private int uploadedCapacity;
+    private boolean modified;
+
+    /**
+     * Shader program drawing instances, it is created on the first call.
+     * Has to be called on the thread with OpenGL context.
+     *
+     * @return shader program
+     */
+    public static int getProgram() {
+        if (program == 0) {
+            program = ShaderUtils.loadProgram(SHADER_VERT_SRC, QuantizedMesh.SHADER_FRAG_SRC, null, null, null, null);
+            locTransform = glGetAttribLocation(program, "inTransform");
+            locTint = glGetAttribLocation(program, "inTint");
+            locLightEnabled = glGetUniformLocation(program, "lightEnabled");
+            locTextureEnabled = glGetUniformLocation(program, "textureEnabled");
+            locDiffuseTexture = glGetUniformLocation(program, "diffuseTexture");
+        }
+        return program;
+    }
+
+    /**
+     * Set uniforms of {@link #getProgram()}, which has to be in use, by the fixed-function state
+     */
+    static void setUniforms() {
+        QuantizedMesh.setFixedFunctionUniforms(locLightEnabled, locTextureEnabled, locDiffuseTexture);
+    }
+
+    /**
+     * Add an instance
+     *
+     * @param transform model matrix of the instance (row vectors as in the transforms package),
+     *                  it is applied before the current modelview matrix
+     * @param tint      color multiplying the lit color
+     * @return index of the instance
+     */
+    public int add(Mat4 transform, Col tint) {
+        if ((count + 1) * FLOATS_PER_INSTANCE > data.capacity()) {
+            final FloatBuffer grown = BufferUtils.createFloatBuffer(data.capacity() * 2);
+            data.clear().limit(count * FLOATS_PER_INSTANCE);
+            grown.put(data);
+            data = grown;
+        }
+        count++;
+        set(count - 1, transform, tint);
+        return count - 1;
+    }
+
+    /**
+     * Change an instance
+     *
+     * @param index     index of the instance
+     * @param transform model matrix of the instance
+     * @param tint      color multiplying the lit color
+     */
+    public void set(int index, Mat4 transform, Col tint) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Instance " + index + " of " + count);
+        }
+        final int offset = index * FLOATS_PER_INSTANCE;
+        // row-wise storage of a matrix for row vectors is the column-major storage for column vectors
+        final float[] matrix = transform.floatArray();
+        for (int i = 0; i < 16; i++) {
+            data.put(offset + i, matrix[i]);
+        }
+        data.put(offset + 16, (float) tint.getR());
+        data.put(offset + 17, (float) tint.getG());
+        data.put(offset + 18, (float) tint.getB());
+        data.put(offset + 19, (float) tint.getA());
+        modified = true;
+    }
+
+    /**
+     * Remove all instances, the allocated memory is kept
+     */
+    public void clear() {
+        count = 0;
+        modified = true;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Upload modified data and bind them to the per-instance attributes of {@link #getProgram()}
+     * in the currently bound vertex array object
+     */
+    void bind() {
+        getProgram();
+        if (buffer == 0) {
+            buffer = glGenBuffers();
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, buffer);
+        if (modified) {
+            data.clear().limit(count * FLOATS_PER_INSTANCE);
+            if (data.capacity() > uploadedCapacity) {
+                // orphan the storage when it grows, otherwise only the used part is updated
+                glBufferData(GL_ARRAY_BUFFER, (long) data.capacity() * Float.BYTES, GL_DYNAMIC_DRAW);
+                uploadedCapacity = data.capacity();
+            }
+            glBufferSubData(GL_ARRAY_BUFFER, 0, data);
+            data.clear();
+            modified = false;
+        }
+        final int stride = FLOATS_PER_INSTANCE * Float.BYTES;
+        if (locTransform >= 0) {
+            // a mat4 attribute takes four consecutive locations, one per column
+            for (int column = 0; column < 4; column++) {
+                glEnableVertexAttribArray(locTransform + column);
+                glVertexAttribPointer(locTransform + column, 4, GL_FLOAT, false, stride, (long) column * 4 * Float.BYTES);
+                glVertexAttribDivisor(locTransform + column, 1);
+            }
+        }
+        if (locTint >= 0) {
+            glEnableVertexAttribArray(locTint);
+            glVertexAttribPointer(locTint, 4, GL_FLOAT, false, stride, 16L * Float.BYTES);
+            glVertexAttribDivisor(locTint, 1);
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Delete the uploaded vertex buffer, the data are kept and uploaded again on the next draw.
+     * Has to be called on the thread with OpenGL context.
+     */
+    public void delete() {
+        if (buffer != 0) {
+            glDeleteBuffers(buffer);
+            buffer = 0;
+            uploadedCapacity = 0;
+            modified = true;
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package lwjglutils;
+
+import transforms.Vec2D;
+import transforms.Vec3D;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class {@code OBJGeometry} is a compact structure-of-arrays store of a parsed .obj file.
+ * <p>
+ * Positions, texture coordinates and normals are kept in growable primitive arrays exactly as
+ * they are defined in the file. Every face corner is a triplet of 0-based indices (position,
+ * texture coordinate, normal) in one int array, where a missing index is -1. Faces are
+ * described by the offset of their first corner.
+ * <p>
+ * Every face also holds the material selected by the last "usemtl" record before it, as an index
+ * to the list of material names in order of the first use.
+ * <p>
+ * The object view ({@link OBJLoader.Face}, {@link OBJLoader.Vertex}) can be materialized
+ * by {@link #toFaces()} for a compatibility.
+ *
+ * @author Stanislav Čapek
+ * @version 1.0
+ * @see OBJLoader
+ */
+public class OBJGeometry {
+    private final FloatList positions;
+    private final FloatList texCoords;
+    private final FloatList normals;
+    private final IntList corners;
+    /**
+     * First corner of every face, the last element is the count of corners
+     */
+    private final IntList faceOffsets;
+    /**
+     * Material of every face as an index to {@link #materialNames}, -1 for no material
+     */
+    private final IntList faceMaterials;
+    private final List<String> materialNames;
+    private int currentMaterial = -1;
+
+    /**
+     * Constructor of an empty geometry
+     */
+    public OBJGeometry() {
+        positions = new FloatList(1024);
+        texCoords = new FloatList(1024);
+        normals = new FloatList(1024);
+        corners = new IntList(4096);
+        faceOffsets = new IntList(1024);
+        faceOffsets.add(0);
+        faceMaterials = new IntList(1024);
+        materialNames = new ArrayList<>();
+    }
+
+    /**
+     * Constructor over already merged arrays
+     *
+     * @param positions x, y, z triplets
+     * @param texCoords u, v pairs
+     * @param normals   x, y, z triplets
+     * @param corners   0-based index triplets
+     * @param faceSizes     count of corners of every face
+     * @param faceMaterials material index of every face or -1
+     * @param materialNames names of materials
+     */
+    OBJGeometry(float[] positions, float[] texCoords, float[] normals, int[] corners, int[] faceSizes,
+                int[] faceMaterials, List<String> materialNames) {
+        this.positions = FloatList.wrap(positions);
+        this.texCoords = FloatList.wrap(texCoords);
+        this.normals = FloatList.wrap(normals);
+        this.corners = IntList.wrap(corners);
+        this.faceOffsets = new IntList(faceSizes.length + 1);
+        int offset = 0;
+        faceOffsets.add(offset);
+        for (int size : faceSizes) {
+            offset += size;
+            faceOffsets.add(offset);
+        }
+        this.faceMaterials = IntList.wrap(faceMaterials);
+        this.materialNames = new ArrayList<>(materialNames);
+    }
+
+    /**
+     * Constructor of an empty geometry sharing vertex data with another geometry
+     *
+     * @param source geometry with vertex data
+     */
+    private OBJGeometry(OBJGeometry source) {
+        positions = source.positions;
+        texCoords = source.texCoords;
+        normals = source.normals;
+        corners = new IntList(source.getCornerCount() * 3);
+        faceOffsets = new IntList(source.getFaceCount() + 1);
+        faceOffsets.add(0);
+        faceMaterials = new IntList(source.getFaceCount());
+        materialNames = new ArrayList<>(source.materialNames);
+    }
+
+    /**
+     * Build a geometry from the object view
+     *
+     * @param faces list of faces
+     * @return new geometry
+     */
+    public static OBJGeometry fromFaces(List<OBJLoader.Face> faces) {
+        final OBJGeometry geometry = new OBJGeometry();
+        for (OBJLoader.Face face : faces) {
+            for (OBJLoader.Vertex vertex : face.vertices) {
+                int position = -1, texCoord = -1, normal = -1;
+                if (vertex.position != null) {
+                    position = geometry.getPositionCount();
+                    geometry.addPosition(
+                            (float) vertex.position.getX(),
+                            (float) vertex.position.getY(),
+                            (float) vertex.position.getZ());
+                }
+                if (vertex.texCoord != null) {
+                    texCoord = geometry.getTexCoordCount();
+                    geometry.addTexCoord((float) vertex.texCoord.getX(), (float) vertex.texCoord.getY());
+                }
+                if (vertex.normal != null) {
+                    normal = geometry.getNormalCount();
+                    geometry.addNormal(
+                            (float) vertex.normal.getX(),
+                            (float) vertex.normal.getY(),
+                            (float) vertex.normal.getZ());
+                }
+                geometry.addCorner(position, texCoord, normal);
+            }
+            geometry.endFace();
+        }
+        return geometry;
+    }
+
+    /**
+     * Build a geometry of triangles from a mesh, every mesh vertex becomes one position,
+     * texture coordinate and normal. Faces get materials of the mesh's draw ranges.
+     *
+     * @param mesh indexed mesh
+     * @return new geometry
+     */
+    public static OBJGeometry fromMesh(IndexedMesh mesh) {
+        final OBJGeometry geometry = new OBJGeometry();
+        final FloatBuffer vertices = mesh.getVertexBuffer();
+        final IntBuffer indices = mesh.getIndexBuffer();
+        for (int vertex = 0; vertex < mesh.getVertexCount(); vertex++) {
+            final int offset = vertex * IndexedMesh.FLOATS_PER_VERTEX;
+            geometry.addPosition(vertices.get(offset), vertices.get(offset + 1), vertices.get(offset + 2));
+            geometry.addTexCoord(vertices.get(offset + 3), 1 - vertices.get(offset + 4));
+            geometry.addNormal(vertices.get(offset + 5), vertices.get(offset + 6), vertices.get(offset + 7));
+        }
+        for (IndexedMesh.Range range : mesh.getRanges()) {
+            if (range.getMaterial() != null) {
+                geometry.useMaterial(range.getMaterial());
+            } else {
+                geometry.currentMaterial = -1;
+            }
+            for (int i = range.getFirst(); i < range.getFirst() + range.getCount(); i++) {
+                final int vertex = indices.get(i);
+                geometry.addCorner(vertex, vertex, vertex);
+                if ((i - range.getFirst()) % 3 == 2) {
+                    geometry.endFace();
+                }
+            }
+        }
+        return geometry;
+    }
+
+    void addPosition(float x, float y, float z) {
+        positions.add(x);
+        positions.add(y);
+        positions.add(z);
+    }
+
+    void addTexCoord(float u, float v) {
+        texCoords.add(u);
+        texCoords.add(v);
+    }
+
+    void addNormal(float x, float y, float z) {
+        normals.add(x);
+        normals.add(y);
+        normals.add(z);
+    }
+
+    /**
+     * Add a corner to the current face
+     *
+     * @param position 0-based position index
+     * @param texCoord 0-based texture coordinate index or -1
+     * @param normal   0-based normal index or -1
+     */
+    void addCorner(int position, int texCoord, int normal) {
+        corners.add(position);
+        corners.add(texCoord);
+        corners.add(normal);
+    }
+
+    /**
+     * Close the current face, all corners added since the previous face belong to it
+     */
+    void endFace() {
+        faceOffsets.add(corners.size() / 3);
+        faceMaterials.add(currentMaterial);
+    }
+
+    /**
+     * Select the material of following faces
+     *
+     * @param name material's name
+     */
+    void useMaterial(String name) {
+        int index = materialNames.indexOf(name);
+        if (index < 0) {
+            index = materialNames.size();
+            materialNames.add(name);
+        }
+        currentMaterial = index;
+    }
+
+    /**
+     * Split all polygons to triangles, convex ones as a fan, concave ones by ear clipping.
+     * Faces with less than 3 corners are dropped, materials of faces are kept.
+     *
+     * @return geometry of triangles sharing vertex data with this geometry,
+     * or this geometry if it has only triangles
+     * @see PolygonTriangulator
+     */
+    public OBJGeometry triangulate() {
+        final int faceCount = getFaceCount();
+        int maxSize = 3;
+        boolean triangles = true;
+        for (int face = 0; face < faceCount; face++) {
+            final int size = getFaceSize(face);
+            triangles &= size == 3;
+            maxSize = Math.max(maxSize, size);
+        }
+        if (triangles) {
+            return this;
+        }
+
+        final OBJGeometry result = new OBJGeometry(this);
+        final PolygonTriangulator triangulator = new PolygonTriangulator();
+        final int[] triangle = new int[(maxSize - 2) * 3];
+        final float[] p = positions.array();
+        final int[] c = corners.array();
+        for (int face = 0; face < faceCount; face++) {
+            final int first = getFirstCorner(face);
+            final int count = triangulator.triangulate(p, c, first, getFaceSize(face), triangle);
+            result.currentMaterial = getFaceMaterial(face);
+            for (int i = 0; i < count * 3; i++) {
+                final int corner = (first + triangle[i]) * 3;
+                result.addCorner(c[corner], c[corner + 1], c[corner + 2]);
+                if (i % 3 == 2) {
+                    result.endFace();
+                }
+            }
+        }
+        return result;
+    }
+
+    public int getPositionCount() {
+        return positions.size() / 3;
+    }
+
+    public int getTexCoordCount() {
+        return texCoords.size() / 2;
+    }
+
+    public int getNormalCount() {
+        return normals.size() / 3;
+    }
+
+    public int getFaceCount() {
+        return faceOffsets.size() - 1;
+    }
+
+    public int getCornerCount() {
+        return corners.size() / 3;
+    }
+
+    /**
+     * Index of the first corner of the face
+     *
+     * @param face face index
+     * @return corner index
+     */
+    public int getFirstCorner(int face) {
+        return faceOffsets.get(face);
+    }
+
+    /**
+     * Count of corners of the face
+     *
+     * @param face face index
+     * @return count
+     */
+    public int getFaceSize(int face) {
+        return faceOffsets.get(face + 1) - faceOffsets.get(face);
+    }
+
+    public int getMaterialCount() {
+        return materialNames.size();
+    }
+
+    /**
+     * Name of the material used by "usemtl"
+     *
+     * @param material material index
+     * @return name
+     */
+    public String getMaterialName(int material) {
+        return materialNames.get(material);
+    }
+
+    /**
+     * Material of the face
+     *
+     * @param face face index
+     * @return material index or -1 if the face has no material
+     */
+    public int getFaceMaterial(int face) {
+        return faceMaterials.get(face);
+    }
+
+    /**
+     * Positions as x, y, z triplets. The array can be longer than the data.
+     *
+     * @return backing array
+     */
+    public float[] getPositions() {
+        return positions.array();
+    }
+
+    /**
+     * Texture coordinates as u, v pairs. The array can be longer than the data.
+     *
+     * @return backing array
+     */
+    public float[] getTexCoords() {
+        return texCoords.array();
+    }
+
+    /**
+     * Normals as x, y, z triplets. The array can be longer than the data.
+     *
+     * @return backing array
+     */
+    public float[] getNormals() {
+        return normals.array();
+    }
+
+    /**
+     * Corners as position, texture coordinate and normal index triplets.
+     * The array can be longer than the data.
+     *
+     * @return backing array
+     */
+    public int[] getCorners() {
+        return corners.array();
+    }
+
+    /**
+     * Materialize the object view of the geometry. Vertices of corners with the same
+     * index share the same vector instances.
+     *
+     * @return new list of faces
+     */
+    public List<OBJLoader.Face> toFaces() {
+        final Vec3D[] positionViews = new Vec3D[getPositionCount()];
+        final Vec2D[] texCoordViews = new Vec2D[getTexCoordCount()];
+        final Vec3D[] normalViews = new Vec3D[getNormalCount()];
+        final float[] p = positions.array();
+        final float[] t = texCoords.array();
+        final float[] n = normals.array();
+        for (int i = 0; i < positionViews.length; i++) {
+            positionViews[i] = new Vec3D(p[i * 3], p[i * 3 + 1], p[i * 3 + 2]);
+        }
+        for (int i = 0; i < texCoordViews.length; i++) {
+            texCoordViews[i] = new Vec2D(t[i * 2], t[i * 2 + 1]);
+        }
+        for (int i = 0; i < normalViews.length; i++) {
+            normalViews[i] = new Vec3D(n[i * 3], n[i * 3 + 1], n[i * 3 + 2]);
+        }
+
+        final int[] c = corners.array();
+        final List<OBJLoader.Face> faces = new ArrayList<>(getFaceCount());
+        for (int face = 0; face < getFaceCount(); face++) {
+            final int first = getFirstCorner(face);
+            final int size = getFaceSize(face);
+            final List<OBJLoader.Vertex> vertices = new ArrayList<>(size);
+            for (int corner = first; corner < first + size; corner++) {
+                vertices.add(new OBJLoader.Vertex(
+                        c[corner * 3] < 0 ? null : positionViews[c[corner * 3]],
+                        c[corner * 3 + 1] < 0 ? null : texCoordViews[c[corner * 3 + 1]],
+                        c[corner * 3 + 2] < 0 ? null : normalViews[c[corner * 3 + 2]]
+                ));
+            }
+            faces.add(new OBJLoader.Face(OBJLoader.Topology.getTopology(size), vertices));
+        }
+        return faces;
+    }
+
+    @Override
+    public String toString() {
+        return "OBJGeometry{" +
+                "positions=" + getPositionCount() +
+                ", texCoords=" + getTexCoordCount() +
+                ", normals=" + getNormalCount() +
+                ", faces=" + getFaceCount() +
+                ", corners=" + getCornerCount() +
+                ", materials=" + materialNames +
+                '}';
+    }
+}
@@ -4,12 +4,20 @@ import transforms.Vec2D;
 import transforms.Vec3D;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import static org.lwjgl.opengl.GL33.*;
 
@@ -69,68 +77,274 @@ public class OBJLoader {
      * Obj and mtl file has to have the same name and placed in the same directory.
      * If mtl file has reference to any texture, It has to be in a relative path
      * from the mtl's file directory.
+     * <p>
+     * Both files can be compressed by gzip (.obj.gz, .mtl.gz) or zlib, the data are inflated
+     * by {@link InflatingInputStream} while they are parsed. A compressed file is also found
+     * by the path without the compression extension.
+     * <p>
+     * The model is read from {@link OBJModelCache} if the files have not changed since
+     * the last load, otherwise it is parsed, optimized by {@link MeshOptimizer} (if enabled),
+     * simplified into levels of detail by {@link MeshSimplifier} and written to the cache.
      *
      * @param modelPath relative path
      * @return new Model
+     * @see ParseMode#STREAMING
      */
     public static Model loadModel(String modelPath) {
-        List<Vec3D> vertexBuffer = new ArrayList<>();
-        List<Vec2D> textCoordBuffer = new ArrayList<>();
-        List<Vec3D> normalBuffer = new ArrayList<>();
-        List<Face> faceBuffer = new ArrayList<>();
+        final Model model = load(modelPath, ParseMode.STREAMING, OBJModelCache.isEnabled());
+        model.uploadTextures();
+        return model;
+    }
+
+    /**
+     * Tries to load the model from .obj file with the material in .mtl file
+     * using the given parser. The cache is not used. Compressed files are parsed
+     * by {@link ParseMode#STREAMING} instead of {@link ParseMode#PARALLEL}.
+     *
+     * @param modelPath relative path
+     * @param mode      parser implementation
+     * @return new Model
+     */
+    public static Model loadModel(String modelPath, ParseMode mode) {
+        final Model model = load(modelPath, mode, false);
+        model.uploadTextures();
+        return model;
+    }
+
+    /**
+     * Load the model like {@link #loadModel(String)} without any OpenGL call, so it can run
+     * on a worker thread. Textures are only decoded, they and the mesh are uploaded later
+     * by {@link Model#upload()} on the thread with OpenGL context.
+     *
+     * @param modelPath relative path
+     * @return new Model
+     * @see OBJLoadingService
+     */
+    public static Model loadModelData(String modelPath) {
+        return load(modelPath, ParseMode.STREAMING, OBJModelCache.isEnabled());
+    }
+
+    private static Model load(String modelPath, ParseMode mode, boolean useCache) {
+        OBJGeometry geometry = new OBJGeometry();
+        List<String> materialLibraries = new ArrayList<>();
         List<Material> materials = new ArrayList<>();
 
-        // loading obj file
-        try (final InputStream is = OBJLoader.class.getClassLoader().getResourceAsStream(modelPath)) {
+        final long start = System.nanoTime();
+        // loading obj file, the data of a compressed file stay compressed (and are hashed so by the cache)
+        final String resourcePath = InflatingInputStream.resolve(modelPath);
+        try (final InputStream is = resourcePath == null ? null
+                : OBJLoader.class.getClassLoader().getResourceAsStream(resourcePath)) {
 
             if (is == null) {
                 throw new IOException("File not found");
             }
-            final BufferedReader reader = new BufferedReader(new InputStreamReader(is));
+            final byte[] data = is.readAllBytes();
 
-            reader.lines().forEach(s -> {
-                final String[] strings = s.split("\\s+");
-                switch (strings[0]) {
-                    case "v":
-                        vertexBuffer.add(stringToVec3D(strings));
-                        break;
-                    case "vt":
-                        textCoordBuffer.add(stringToVec2D(strings));
-                        break;
-                    case "vn":
-                        normalBuffer.add(stringToVec3D(strings));
-                        break;
-                    case "f":
-                        List<Vertex> v = new ArrayList<>();
-                        Topology topology = Topology.getTopology(strings.length - 1);
-
-                        for (int i = 1; i < strings.length; i++) {
-                            final String[] indicies = strings[i].split("/");
-
-                            final Vertex vertex = new Vertex(
-                                    vertexBuffer.get(Integer.parseInt(indicies[0]) - 1),
-                                    textCoordBuffer.get(Integer.parseInt(indicies[1]) - 1),
-                                    normalBuffer.get(Integer.parseInt(indicies[2]) - 1)
-                            );
-                            v.add(vertex);
-                        }
-                        faceBuffer.add(new Face(topology, v));
-                        break;
-                    case "mtllib":
-                        materials.addAll(loadMaterials(modelPath, strings[1]));
-                        break;
+            if (useCache) {
+                final OBJModelCache.Entry entry = OBJModelCache.read(modelPath, data);
+                if (entry != null) {
+                    for (Material material : entry.materials) {
+                        decodeTextures(material);
+                    }
+                    final Model model = new Model(
+                            entry.materials.size() > 0 ? entry.materials.get(0) : null,
+                            entry.mesh
+                    );
+                    model.setMaterials(entry.materials);
+                    model.setLevels(entry.levels, entry.levelErrors);
+                    System.out.println(modelPath + " loaded from cache in " + millis(start) + " ms: " + entry.mesh);
+                    // quantized and bounded on the loading thread, the report compares GPU bytes
+                    System.out.println(modelPath + ": " + model.getQuantizedMesh());
+                    model.getLocalBounds();
+                    return model;
                 }
+            }
+
+            // the parallel parser needs the whole file, compressed data are inflated while streaming
+            if (mode == ParseMode.PARALLEL && InflatingInputStream.isCompressed(resourcePath)) {
+                mode = ParseMode.STREAMING;
+            }
+            switch (mode) {
+                case REFERENCE:
+                    try (InputStream input = InflatingInputStream.wrap(new ByteArrayInputStream(data), resourcePath)) {
+                        parseReference(input, geometry, materialLibraries);
+                    }
+                    break;
+                case STREAMING:
+                    try (InputStream input = InflatingInputStream.wrap(new ByteArrayInputStream(data), resourcePath)) {
+                        parseStreaming(input, geometry, materialLibraries);
+                    }
+                    break;
+                case PARALLEL:
+                    geometry = parseParallel(data, materialLibraries);
+                    break;
+            }
+            for (String mtllib : materialLibraries) {
+                materials.addAll(loadMaterials(modelPath, mtllib));
+            }
+            for (Material material : materials) {
+                decodeTextures(material);
+            }
+            // every model is a single list of triangles
+            geometry = geometry.triangulate();
+            System.out.println(modelPath + " parsed (" + mode + ") in " + millis(start) + " ms, "
+                    + megabytesPerSecond(data.length, start) + " MB/s"
+                    + (InflatingInputStream.isCompressed(resourcePath) ? " of compressed data" : ""));
+
+            // indexing stage
+            IndexedMesh mesh = IndexedMesh.fromGeometry(geometry);
+            System.out.println(modelPath + ": " + mesh);
+            if (MeshOptimizer.isEnabled()) {
+                final long optimizationStart = System.nanoTime();
+                final IndexedMesh source = mesh;
+                mesh = MeshOptimizer.optimize(source);
+                MeshOptimizer.report(modelPath, source, mesh, optimizationStart);
+            }
 
-            });
+            // faces of unknown materials use the first one
+            final Model model = new Model(
+                    materials.size() > 0 ? materials.get(0) : null,
+                    mesh
+            );
+            model.setMaterials(materials);
+            // quantized and bounded on the loading thread, the report compares GPU bytes
+            System.out.println(modelPath + ": " + model.getQuantizedMesh());
+            model.getLocalBounds();
+            final long simplificationStart = System.nanoTime();
+            model.generateLevels();
+            System.out.println(modelPath + " levels of detail in " + millis(simplificationStart) + " ms: "
+                    + levelsToString(model));
+            if (useCache) {
+                OBJModelCache.write(modelPath, data, materialLibraries, materials, model);
+            }
+            return model;
         } catch (IOException e) {
             e.printStackTrace();
         }
-//        For this implementation model accepts one material. But method loadMaterials() can
-//      parse more materials from .mtl file.
-        return new Model(
-                materials.size() > 0 ? materials.get(0) : null,
-                faceBuffer
-        );
+        return new Model(null, geometry);
+    }
+
+    private static String levelsToString(Model model) {
+        final StringBuilder sb = new StringBuilder();
+        for (int level = 0; level < model.getLevelCount(); level++) {
+            sb.append(level > 0 ? ", " : "").append(model.getLevelMesh(level).getTriangleCount())
+                    .append(String.format(Locale.US, " (error %.4f)", model.getLevelError(level)));
+        }
+        return sb.toString();
+    }
+
+    private static long millis(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private static long megabytesPerSecond(long bytes, long start) {
+        return bytes * 1_000_000_000L / Math.max(System.nanoTime() - start, 1) / (1 << 20);
+    }
+
+    /**
+     * Original line based parser. Every line is split by a regular expression and numbers are
+     * parsed by the JDK, so it stays a reference for the other parsers.
+     */
+    private static void parseReference(InputStream is, OBJGeometry geometry, List<String> materialLibraries) {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(is));
+
+        reader.lines().forEach(s -> {
+            final String[] strings = s.split("\\s+");
+            switch (strings[0]) {
+                case "v":
+                    geometry.addPosition(Float.parseFloat(strings[1]), Float.parseFloat(strings[2]), Float.parseFloat(strings[3]));
+                    break;
+                case "vt":
+                    geometry.addTexCoord(Float.parseFloat(strings[1]), Float.parseFloat(strings[2]));
+                    break;
+                case "vn":
+                    geometry.addNormal(Float.parseFloat(strings[1]), Float.parseFloat(strings[2]), Float.parseFloat(strings[3]));
+                    break;
+                case "f":
+                    for (int i = 1; i < strings.length; i++) {
+                        final String[] indicies = strings[i].split("/");
+                        geometry.addCorner(
+                                Integer.parseInt(indicies[0]) - 1,
+                                Integer.parseInt(indicies[1]) - 1,
+                                Integer.parseInt(indicies[2]) - 1
+                        );
+                    }
+                    geometry.endFace();
+                    break;
+                case "mtllib":
+                    materialLibraries.add(strings[1]);
+                    break;
+                case "usemtl":
+                    geometry.useMaterial(strings[1]);
+                    break;
+            }
+
+        });
+    }
+
+    /**
+     * Byte level parser, see {@link OBJTokenizer}.
+     */
+    private static void parseStreaming(InputStream is, OBJGeometry geometry,
+                                       List<String> materialLibraries) throws IOException {
+        final OBJTokenizer tokenizer = new OBJTokenizer(is);
+        final int[] corner = new int[3];
+
+        int record;
+        while ((record = tokenizer.nextRecord()) != OBJTokenizer.EOF) {
+            switch (record) {
+                case OBJTokenizer.VERTEX:
+                    geometry.addPosition(tokenizer.nextFloat(), tokenizer.nextFloat(), tokenizer.nextFloat());
+                    break;
+                case OBJTokenizer.TEX_COORD:
+                    geometry.addTexCoord(tokenizer.nextFloat(), tokenizer.nextFloat());
+                    break;
+                case OBJTokenizer.NORMAL:
+                    geometry.addNormal(tokenizer.nextFloat(), tokenizer.nextFloat(), tokenizer.nextFloat());
+                    break;
+                case OBJTokenizer.FACE:
+                    while (tokenizer.hasNext()) {
+                        tokenizer.nextCorner(corner);
+                        geometry.addCorner(
+                                resolveIndex(corner[0], geometry.getPositionCount()),
+                                resolveIndex(corner[1], geometry.getTexCoordCount()),
+                                resolveIndex(corner[2], geometry.getNormalCount())
+                        );
+                    }
+                    geometry.endFace();
+                    break;
+                case OBJTokenizer.MTLLIB:
+                    materialLibraries.add(tokenizer.nextString());
+                    break;
+                case OBJTokenizer.USEMTL:
+                    geometry.useMaterial(tokenizer.nextString());
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Parallel parser, see {@link OBJParallelParser}. Materials (and their textures)
+     * are loaded later on the calling thread because of the OpenGL context.
+     */
+    private static OBJGeometry parseParallel(byte[] data, List<String> materialLibraries) {
+        final OBJParallelParser.Result result = OBJParallelParser.parse(data);
+
+        materialLibraries.addAll(result.materialLibraries);
+        return new OBJGeometry(result.positions, result.texCoords, result.normals,
+                result.corners, result.faceSizes, result.faceMaterials, result.materialNames);
+    }
+
+    /**
+     * Convert an index from .obj file (1-based, negative is relative to the end)
+     * to 0-based index. Missing index (0) is converted to -1.
+     *
+     * @param index index from file
+     * @param count count of already defined elements
+     * @return 0-based index
+     */
+    private static int resolveIndex(int index, int count) {
+        return index < 0 ? count + index : index - 1;
     }
 
     /**
@@ -145,7 +359,7 @@ public class OBJLoader {
         final List<Material> materials = new ArrayList<>();
 
         // loading mtl file
-        try (final InputStream is = OBJLoader.class.getClassLoader().getResourceAsStream(mtlPath + mtllib)) {
+        try (final InputStream is = InflatingInputStream.open(mtlPath + mtllib)) {
 
             if (is == null) {
                 final String[] splitPath = modelPath.split("/");
@@ -161,8 +375,8 @@ public class OBJLoader {
             Vec3D specularColor = null; //Ks
             float specularExponent = 0f; //Ns
             float alpha = 0f; //d
-            OGLTexture2D diffuseMap = null;
-            OGLTexture2D ambientMap = null;
+            String diffuseMapPath = null;
+            String ambientMapPath = null;
 
             try {
                 String line;
@@ -171,13 +385,13 @@ public class OBJLoader {
                     final String keyword = strings[0];
                     if (keyword.equals("newmtl")) {
                         if (foundMat) {
-                            materials.add(
-                                    new Material(
-                                            name, ambientColor, diffuseColor,
-                                            specularColor, specularExponent, alpha,
-                                            ambientMap, diffuseMap
-                                    )
+                            final Material material = new Material(
+                                    name, ambientColor, diffuseColor,
+                                    specularColor, specularExponent, alpha,
+                                    null, null
                             );
+                            material.setTexturePaths(ambientMapPath, diffuseMapPath);
+                            materials.add(material);
                             // erase data
                             name = strings[1];
                             ambientColor = null;
@@ -185,8 +399,8 @@ public class OBJLoader {
                             specularColor = null;
                             specularExponent = 0f;
                             alpha = 0f;
-                            diffuseMap = null;
-                            ambientMap = null;
+                            diffuseMapPath = null;
+                            ambientMapPath = null;
 
                         } else {
                             name = strings[1];
@@ -204,26 +418,26 @@ public class OBJLoader {
                             specularColor = stringToVec3D(strings);
                             break;
                         case "Ns":
-                            specularExponent = Float.parseFloat(strings[1]);
+                            specularExponent = stringToFloat(strings[1]);
                             break;
                         case "d":
-                            alpha = Float.parseFloat(strings[1]);
+                            alpha = stringToFloat(strings[1]);
                             break;
                         case "map_Ka":
-                            ambientMap = loadTexture(mtlPath + strings[1]);
+                            ambientMapPath = mtlPath + strings[1];
                             break;
                         case "map_Kd":
-                            diffuseMap = loadTexture(mtlPath + strings[1]);
+                            diffuseMapPath = mtlPath + strings[1];
                             break;
                     }
                 }
-                materials.add(
-                        new Material(
-                                name, ambientColor, diffuseColor,
-                                specularColor, specularExponent, alpha,
-                                ambientMap, diffuseMap
-                        )
+                final Material material = new Material(
+                        name, ambientColor, diffuseColor,
+                        specularColor, specularExponent, alpha,
+                        null, null
                 );
+                material.setTexturePaths(ambientMapPath, diffuseMapPath);
+                materials.add(material);
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -235,15 +449,32 @@ public class OBJLoader {
     }
 
     /**
-     * Load texture from file.
+     * Decode textures of the material from its texture paths, they are uploaded
+     * by {@link Material#uploadTextures()}
+     *
+     * @param material material
+     */
+    private static void decodeTextures(Material material) {
+        material.setDecodedImages(
+                decodeTexture(material.getAmbientTexturePath()),
+                decodeTexture(material.getDiffuseTexturePath())
+        );
+    }
+
+    /**
+     * Decode texture from file. Textures already resident in {@link OBJTextureCache}
+     * are not decoded.
      *
-     * @param path relative to obj file
-     * @return texture
+     * @param path relative to obj file, can be null
+     * @return decoded image or null
      */
-    private static OGLTexture2D loadTexture(String path) {
+    private static OGLTexture2D.DecodedImage decodeTexture(String path) {
+        if (path == null || OBJTextureCache.contains(path)) {
+            return null;
+        }
         System.out.println("path = " + path);
         try {
-            return new OGLTexture2D(path);
+            return OGLTexture2D.decode(path);
         } catch (IOException e) {
             e.printStackTrace();
             return null;
@@ -263,19 +494,6 @@ public class OBJLoader {
         );
     }
 
-    /**
-     * Parse data as s string to float values and return vector2D
-     *
-     * @param data string array
-     * @return vector (x,y)
-     */
-    private static Vec2D stringToVec2D(String[] data) {
-        return new Vec2D(
-                stringToFloat(data[1]),
-                stringToFloat(data[2])
-        );
-    }
-
     /**
      * Parse a string to float
      *
@@ -283,7 +501,67 @@ public class OBJLoader {
      * @return float
      */
     private static float stringToFloat(String data) {
-        return Float.parseFloat(data);
+        return FastNumberParser.parseFloat(data);
+    }
+
+    /**
+     * Implementation of .obj file parser used by {@link #loadModel(String, ParseMode)}.
+     */
+    public enum ParseMode {
+        /**
+         * Original parser, lines are split by regular expressions and numbers parsed from substrings.
+         * Kept as a reference for comparison.
+         */
+        REFERENCE,
+        /**
+         * Byte level tokenizer without intermediate Strings, see {@link OBJTokenizer}.
+         */
+        STREAMING,
+        /**
+         * The whole file is split into chunks on line boundaries, which are parsed in parallel,
+         * see {@link OBJParallelParser}.
+         */
+        PARALLEL
+    }
+
+    /**
+     * How a {@link Model} submits its geometry to OpenGL.
+     */
+    public enum RenderMode {
+        /**
+         * Every vertex is sent by glBegin/glEnd on every frame
+         */
+        IMMEDIATE,
+        /**
+         * The mesh is uploaded once into vertex buffers behind a vertex array object
+         * and drawn by one glDrawElements call
+         */
+        RETAINED,
+        /**
+         * Geometry and material state are compiled into a display list on the first draw,
+         * later draws only replay the list
+         */
+        DISPLAY_LIST,
+        /**
+         * Like {@link #RETAINED}, but from vertex buffers of {@link QuantizedMesh} (12 instead of 32 bytes
+         * per vertex), which are dequantized by its vertex shader
+         */
+        QUANTIZED,
+        /**
+         * Like {@link #RETAINED}, but vertices and indices are sub-allocated from large buffers shared
+         * by all models ({@link Model#getArena()}), which are drawn from one vertex array object
+         */
+        ARENA,
+        /**
+         * Like {@link #ARENA}, but the whole tree of a model is drawn by glMultiDrawElementsIndirect
+         * of an {@link IndirectBatch}, the model is drawn by parts if OpenGL 4.3 is not supported
+         */
+        INDIRECT,
+        /**
+         * Like {@link #RETAINED}, but lit per pixel by the Blinn-Phong shader of {@link PhongLighting}
+         * with lights and materials in uniform buffers instead of glLight and glMaterial
+         */
+        SHADED
     }
 
     /**
@@ -305,7 +583,14 @@ public class OBJLoader {
         /**
          * Quads corresponds to OpenGL GL_QUADS
          */
-        QUADS(4, GL_QUADS);
+        QUADS(4, GL_QUADS),
+        /**
+         * Polygon of more than 4 vertices corresponds to OpenGL GL_POLYGON,
+         * its count of vertices is -1
+         */
+        POLYGON(-1, GL_POLYGON);
+
+        private static final Topology[] TOPOLOGIES = values();
 
         /**
          * Number of vertices
@@ -333,13 +618,18 @@ public class OBJLoader {
          * Returns the corresponding Topology via its a count of vertices
          *
          * @param vertices a count
-         * @return match Topology
+         * @return match Topology, {@link #POLYGON} for more than 4 vertices
          */
         public static Topology getTopology(int vertices) {
-            return Arrays.stream(values())
-                    .filter(topology -> topology.vertices == vertices)
-                    .findFirst()
-                    .orElseThrow();
+            if (vertices > QUADS.vertices) {
+                return POLYGON;
+            }
+            for (Topology topology : TOPOLOGIES) {
+                if (topology.vertices == vertices) {
+                    return topology;
+                }
+            }
+            throw new NoSuchElementException("No topology for " + vertices + " vertices");
         }
     }
 
@@ -436,6 +726,12 @@ public class OBJLoader {
 
         private OGLTexture2D ambientTexture;
         private OGLTexture2D diffuseTexture;
+        private String ambientTexturePath;
+        private String diffuseTexturePath;
+        private OGLTexture2D.DecodedImage ambientImage;
+        private OGLTexture2D.DecodedImage diffuseImage;
+        private int uniformBuffer;
+        private boolean uniformsModified = true;
 
         /**
          * Constructor
@@ -485,6 +781,7 @@ public class OBJLoader {
 
         public void setAmbientColor(Vec3D ambientColor) {
             this.ambientColor = ambientColor;
+            uniformsModified = true;
         }
 
         public Vec3D getDiffuseColor() {
@@ -493,6 +790,7 @@ public class OBJLoader {
 
         public void setDiffuseColor(Vec3D diffuseColor) {
             this.diffuseColor = diffuseColor;
+            uniformsModified = true;
         }
 
         public Vec3D getSpecularColor() {
@@ -501,6 +799,7 @@ public class OBJLoader {
 
         public void setSpecularColor(Vec3D specularColor) {
             this.specularColor = specularColor;
+            uniformsModified = true;
         }
 
         public float getSpecularExponent() {
@@ -509,6 +808,7 @@ public class OBJLoader {
 
         public void setSpecularExponent(float specularExponent) {
             this.specularExponent = specularExponent;
+            uniformsModified = true;
         }
 
         public float getAlpha() {
@@ -535,6 +835,122 @@ public class OBJLoader {
             this.diffuseTexture = diffuseTexture;
         }
 
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Resource path of the ambient map. Can return null.
+         *
+         * @return path
+         */
+        public String getAmbientTexturePath() {
+            return ambientTexturePath;
+        }
+
+        /**
+         * Resource path of the diffuse map. Can return null.
+         *
+         * @return path
+         */
+        public String getDiffuseTexturePath() {
+            return diffuseTexturePath;
+        }
+
+        /**
+         * Set resource paths of texture maps the material was loaded with
+         *
+         * @param ambientTexturePath path of the ambient map or null
+         * @param diffuseTexturePath path of the diffuse map or null
+         */
+        void setTexturePaths(String ambientTexturePath, String diffuseTexturePath) {
+            this.ambientTexturePath = ambientTexturePath;
+            this.diffuseTexturePath = diffuseTexturePath;
+        }
+
+        /**
+         * Set decoded images of texture maps, which wait for {@link #uploadTextures()}
+         *
+         * @param ambientImage ambient map or null
+         * @param diffuseImage diffuse map or null
+         */
+        void setDecodedImages(OGLTexture2D.DecodedImage ambientImage, OGLTexture2D.DecodedImage diffuseImage) {
+            this.ambientImage = ambientImage;
+            this.diffuseImage = diffuseImage;
+        }
+
+        /**
+         * Check if there are texture maps waiting for the upload
+         *
+         * @return are there pending textures
+         */
+        public boolean hasPendingTextures() {
+            return (ambientTexture == null && ambientTexturePath != null)
+                    || (diffuseTexture == null && diffuseTexturePath != null);
+        }
+
+        /**
+         * Acquire textures of texture maps from {@link OBJTextureCache}, decoded images are
+         * uploaded if the texture is not shared yet. Has to be called on the thread with
+         * OpenGL context, already acquired textures are skipped.
+         */
+        public void uploadTextures() {
+            if (ambientTexture == null && ambientTexturePath != null) {
+                ambientTexture = OBJTextureCache.acquire(ambientTexturePath, ambientImage);
+            }
+            if (diffuseTexture == null && diffuseTexturePath != null) {
+                diffuseTexture = OBJTextureCache.acquire(diffuseTexturePath, diffuseImage);
+            }
+            ambientImage = null;
+            diffuseImage = null;
+        }
+
+        /**
+         * Release textures of the material. Shared textures are returned to {@link OBJTextureCache},
+         * other textures are deleted. Has to be called on the thread with OpenGL context.
+         */
+        public void releaseTextures() {
+            if (ambientTexture != null && !OBJTextureCache.release(ambientTexture)
+                    && ambientTexture != diffuseTexture) {
+                ambientTexture.delete();
+            }
+            if (diffuseTexture != null && !OBJTextureCache.release(diffuseTexture)) {
+                diffuseTexture.delete();
+            }
+            ambientTexture = null;
+            diffuseTexture = null;
+        }
+
+        /**
+         * Return the uniform buffer of the material for {@link PhongLighting}, it is created on the first
+         * call and uploaded again after a change. Has to be called on the thread with OpenGL context.
+         *
+         * @return uniform buffer
+         */
+        int getUniformBuffer() {
+            if (uniformBuffer == 0) {
+                uniformBuffer = glGenBuffers();
+                uniformsModified = true;
+            }
+            if (uniformsModified) {
+                PhongLighting.uploadMaterial(uniformBuffer, toFloatArray(ambientColor), toFloatArray(diffuseColor),
+                        toFloatArray(specularColor), specularExponent);
+                uniformsModified = false;
+            }
+            return uniformBuffer;
+        }
+
+        /**
+         * Delete the uniform buffer of the material, it is created again on the next use.
+         * Has to be called on the thread with OpenGL context.
+         */
+        public void deleteUniformBuffer() {
+            if (uniformBuffer != 0) {
+                glDeleteBuffers(uniformBuffer);
+                uniformBuffer = 0;
+            }
+        }
+
         /**
          * Return array of 4 float, where "w" is 1
          *
@@ -607,15 +1023,71 @@ public class OBJLoader {
      * </ul>
      *
      * @see Material
+     * @see OBJGeometry
      * @see Face
      * @see Vertex
      */
     public static class Model {
+        /**
+         * Ratio between errors of switching to a coarser and to a finer level of detail
+         */
+        public static final double LOD_HYSTERESIS = 1.5;
+
+        private static double lodPixelError = 1;
+        private static OGLBufferArena arena;
+        private static boolean indirectWarned;
+
         private Material material;
-        private final List<Face> faceBuffer;
+        private OBJGeometry geometry;
+        private IndexedMesh mesh;
+        private List<Face> faceBuffer;
         private boolean textureEnable = true;
+        private RenderMode renderMode = RenderMode.RETAINED;
+        private OGLBuffers buffers;
+        private int vertexArray;
+        private QuantizedMesh quantizedMesh;
+        private OGLBuffers quantizedBuffers;
+        private int quantizedVertexArray;
+        private int instancedVertexArray;
+        private OGLBufferArena.Allocation arenaAllocation;
+        private IndirectBatch indirectBatch;
+        private int shadedVertexArray;
+        private int displayList;
+        private List<Material> materials = new ArrayList<>();
+        private Material[] rangeMaterials;
         private final Model instance;
         private List<Model> parts = new ArrayList<>();
+        private Model parent;
+        private BoundingVolume localBounds;
+        private BoundingVolume bounds;
+        private List<IndexedMesh> levels = new ArrayList<>();
+        private float[] levelErrors = new float[0];
+        private int[] levelOffsets;
+        private int level;
+
+        /**
+         * Constructor
+         *
+         * @param material a model's material
+         * @param geometry a model's geometry
+         */
+        public Model(Material material, OBJGeometry geometry) {
+            this.material = material;
+            this.geometry = geometry;
+            this.instance = this;
+        }
+
+        /**
+         * Constructor
+         *
+         * @param material a model's material
+         * @param mesh     a model's indexed mesh
+         */
+        public Model(Material material, IndexedMesh mesh) {
+            this.material = material;
+            this.mesh = mesh;
+            this.instance = this;
+        }
 
         /**
          * Constructor
@@ -624,9 +1096,8 @@ public class OBJLoader {
          * @param faceBuffer a model's children (can be empty)
          */
         public Model(Material material, List<Face> faceBuffer) {
-            this.material = material;
+            this(material, OBJGeometry.fromFaces(faceBuffer));
             this.faceBuffer = faceBuffer;
-            this.instance = this;
         }
 
         /**
@@ -639,121 +1110,974 @@ public class OBJLoader {
         }
 
         /**
-         * Return loaded or set material. Can return null.
+         * Return the model's geometry. A model loaded from the cache has only a mesh,
+         * the geometry of triangles is then created on the first call.
          *
-         * @return an instance's material
+         * @return geometry
          */
-        public Material getMaterial() {
-            return material;
+        public OBJGeometry getGeometry() {
+            if (geometry == null) {
+                geometry = OBJGeometry.fromMesh(mesh);
+            }
+            return geometry;
         }
 
         /**
-         * Set new material to the model
+         * Return the deduplicated mesh of the model's geometry. The mesh is built
+         * on the first call.
          *
-         * @param material new material
+         * @return indexed mesh
          */
-        public void setMaterial(Material material) {
-            this.material = material;
+        public IndexedMesh getMesh() {
+            if (mesh == null) {
+                mesh = IndexedMesh.fromGeometry(geometry);
+            }
+            return mesh;
         }
 
         /**
-         * Check if is a diffuse texture enable for this instance.
+         * Return the bounding volume of this instance's mesh (without children),
+         * it is computed on the first call.
          *
-         * @return is a texture applied
+         * @return bounding volume, can be empty
          */
-        public boolean isTextureEnable() {
-            return textureEnable;
+        public BoundingVolume getLocalBounds() {
+            if (localBounds == null) {
+                localBounds = BoundingVolume.fromMesh(getMesh());
+            }
+            return localBounds;
         }
 
         /**
-         * Apply a texture for this instance and for all their children.
+         * Return the bounding volume of this instance and all their children. The volume is cached,
+         * {@link #addPart(Model)} and {@link #removePart(Model)} invalidate it for all ancestors.
          *
-         * @param textureEnable apply a texture
+         * @return bounding volume, can be empty
          */
-        public void setTextureEnable(boolean textureEnable) {
-            this.textureEnable = textureEnable;
-            for (Model part : parts) {
-                part.textureEnable = textureEnable;
+        public BoundingVolume getBounds() {
+            if (bounds == null) {
+                BoundingVolume union = getLocalBounds();
+                for (Model part : parts) {
+                    union = union.union(part.getBounds());
+                }
+                bounds = union;
             }
+            return bounds;
         }
 
         /**
-         * Add a child to a model
-         *
-         * @param part a child
-         * @return success
+         * Invalidate cached bounds of this instance and of all ancestors
          */
-        public boolean addPart(Model part) {
-            return this.parts.add(part);
+        private void invalidateBounds() {
+            for (Model model = this; model != null; model = model.parent) {
+                model.bounds = null;
+            }
         }
 
         /**
-         * Remove a child from a model
+         * Return the parent, which the model was added to as a part
          *
-         * @param part a child to remove
-         * @return success
+         * @return parent or null
          */
-        public boolean removePart(Model part) {
-            return this.parts.remove(part);
+        public Model getParent() {
+            return parent;
         }
 
         /**
-         * Draw this instance and all their children
+         * Create coarser levels of detail of the mesh by {@link MeshSimplifier}. Every level has
+         * at most half of the triangles of the previous one, a level is dropped if the simplification
+         * stops on {@link MeshSimplifier#MAX_RELATIVE_ERROR} before reducing enough triangles.
          */
-        public void draw() {
-            drawParts(this);
-            for (Model part : parts) {
-                part.draw();
+        public void generateLevels() {
+            final IndexedMesh source = getMesh();
+            final double maxError = MeshSimplifier.MAX_RELATIVE_ERROR * getLocalBounds().getRadius();
+            final MeshSimplifier simplifier = new MeshSimplifier(source);
+            final List<IndexedMesh> coarser = new ArrayList<>();
+            final List<Float> errors = new ArrayList<>();
+            int previous = source.getTriangleCount();
+            for (int i = 1; i < MeshSimplifier.MAX_LEVELS && previous > MeshSimplifier.MIN_TRIANGLES; i++) {
+                final IndexedMesh simplified = simplifier.simplify(source.getTriangleCount() >> i, maxError);
+                if (simplified.getTriangleCount() > previous * MeshSimplifier.MIN_REDUCTION) {
+                    break;
+                }
+                coarser.add(simplified);
+                errors.add((float) simplifier.getError());
+                previous = simplified.getTriangleCount();
             }
+            final float[] levelErrors = new float[errors.size()];
+            for (int i = 0; i < levelErrors.length; i++) {
+                levelErrors[i] = errors.get(i);
+            }
+            setLevels(coarser, levelErrors);
         }
 
         /**
-         * Actual drawing method
+         * Set coarser levels of detail. The levels have to share the vertex buffer
+         * and draw ranges of the model's mesh, uploaded buffers are deleted.
          *
-         * @param part model
+         * @param levels levels from level 1, ordered from the finest
+         * @param errors geometric error of every level in units of the model
          */
-        private void drawParts(Model part) {
-            Material material = part.material;
-            boolean textureEnable = part.textureEnable;
-            final List<Face> faceBuffer = part.faceBuffer;
+        public void setLevels(List<IndexedMesh> levels, float[] errors) {
+            this.levels = new ArrayList<>(levels);
+            this.levelErrors = errors.clone();
+            level = 0;
+            deleteBuffers();
+            invalidateDisplayList();
+        }
 
-            if (material != null) {
-                if (material.getDiffuseTexture() != null && textureEnable) {
-                    glEnable(GL_TEXTURE_2D);
-                    material.getDiffuseTexture().bind();
-                }
-                glMaterialfv(GL_FRONT, GL_AMBIENT, material.toFloatArray(material.getAmbientColor()));
-                glMaterialfv(GL_FRONT, GL_DIFFUSE, material.toFloatArray(material.getDiffuseColor()));
-                glMaterialfv(GL_FRONT, GL_SPECULAR, material.toFloatArray(material.getSpecularColor()));
-                glMaterialf(GL_FRONT, GL_SHININESS, material.getSpecularExponent());
-            }
+        /**
+         * Return count of levels of detail including the mesh itself
+         *
+         * @return count of levels
+         */
+        public int getLevelCount() {
+            return levels.size() + 1;
+        }
 
-            for (Face face : faceBuffer) {
+        /**
+         * Return the mesh of the level of detail
+         *
+         * @param level level, 0 is the model's mesh
+         * @return mesh
+         */
+        public IndexedMesh getLevelMesh(int level) {
+            return level == 0 ? getMesh() : levels.get(level - 1);
+        }
 
-                glBegin(face.topology.openGL);
-                for (Vertex vertex : face.vertices) {
-                    glTexCoord2d(
-                            vertex.texCoord.getX(),
-                            1 - vertex.texCoord.getY()
-                    );
-                    glNormal3d(
-                            vertex.normal.getX(),
-                            vertex.normal.getY(),
-                            vertex.normal.getZ()
-                    );
-                    glVertex3d(
-                            vertex.position.getX(),
-                            vertex.position.getY(),
-                            vertex.position.getZ()
-                    );
-                }
-                glEnd();
-            }
+        /**
+         * Return the geometric error of the level of detail
+         *
+         * @param level level, 0 is the model's mesh
+         * @return error in units of the model
+         */
+        public float getLevelError(int level) {
+            return level == 0 ? 0 : levelErrors[level - 1];
+        }
 
-            if (material != null) {
-                if (material.getDiffuseTexture() != null) {
-                    glDisable(GL_TEXTURE_2D);
-                }
+        /**
+         * Return the level of detail drawn by this instance
+         *
+         * @return level
+         */
+        public int getLevel() {
+            return level;
+        }
+
+        /**
+         * Set the level of detail drawn by this instance
+         *
+         * @param level level, clamped to existing levels
+         */
+        public void setLevel(int level) {
+            level = Math.max(0, Math.min(level, levels.size()));
+            if (this.level != level) {
+                this.level = level;
+                invalidateDisplayList();
+            }
+        }
+
+        /**
+         * Return the arena shared by models in {@link RenderMode#ARENA}, it is created on the first call
+         * with space for 64 Ki vertices and 256 Ki indices and it grows as needed
+         *
+         * @return arena of the vertex format of {@link IndexedMesh}
+         */
+        public static OGLBufferArena getArena() {
+            if (arena == null) {
+                arena = new OGLBufferArena(IndexedMesh.FLOATS_PER_VERTEX * Float.BYTES, IndexedMesh.getAttributes(),
+                        1 << 16, 1 << 18);
+            }
+            return arena;
+        }
+
+        public static double getLodPixelError() {
+            return lodPixelError;
+        }
+
+        /**
+         * Set the error of levels of detail tolerated on the screen, 0 draws always the finest level
+         *
+         * @param lodPixelError error in pixels
+         */
+        public static void setLodPixelError(double lodPixelError) {
+            Model.lodPixelError = lodPixelError;
+        }
+
+        /**
+         * Select the coarsest level of detail whose error projected by the frustum is within
+         * the tolerated pixel error. The error is projected at the point of the bounding sphere
+         * nearest to the viewer. To avoid popping, a coarser level is selected only if its error is
+         * below the tolerance divided by {@link #LOD_HYSTERESIS}, a finer one only if the current
+         * error is above the tolerance multiplied by it.
+         *
+         * @param frustum view frustum of the frame
+         */
+        public void selectLevel(Frustum frustum) {
+            if (levels.isEmpty()) {
+                return;
+            }
+            final double pixelsPerUnit = frustum.getPixelsPerUnit(getLocalBounds());
+            int selected = level;
+            while (selected < levels.size()
+                    && levelErrors[selected] * pixelsPerUnit < lodPixelError / LOD_HYSTERESIS) {
+                selected++;
+            }
+            while (selected > 0 && getLevelError(selected) * pixelsPerUnit > lodPixelError * LOD_HYSTERESIS) {
+                selected--;
+            }
+            setLevel(selected);
+        }
+
+        /**
+         * Return the quantized copy of the model's mesh. The copy is built on the first call.
+         *
+         * @return quantized mesh
+         */
+        public QuantizedMesh getQuantizedMesh() {
+            if (quantizedMesh == null) {
+                quantizedMesh = QuantizedMesh.fromMesh(getMesh());
+            }
+            return quantizedMesh;
+        }
+
+        /**
+         * Return faces of the model. The object view is created from the geometry
+         * on the first call.
+         *
+         * @return list of faces
+         */
+        public List<Face> getFaces() {
+            if (faceBuffer == null) {
+                faceBuffer = getGeometry().toFaces();
+            }
+            return faceBuffer;
+        }
+
+        /**
+         * Return loaded or set material. Can return null.
+         *
+         * @return an instance's material
+         */
+        public Material getMaterial() {
+            return material;
+        }
+
+        /**
+         * Set new material to the whole model, materials of draw ranges are discarded
+         *
+         * @param material new material
+         */
+        public void setMaterial(Material material) {
+            this.material = material;
+            setMaterials(new ArrayList<>());
+        }
+
+        /**
+         * Return materials of the model's draw ranges
+         *
+         * @return list of materials - can be empty
+         */
+        public List<Material> getMaterials() {
+            return materials;
+        }
+
+        /**
+         * Set materials for the model's draw ranges. Every range ("usemtl" group) is drawn with
+         * the material of the same name, ranges without a matching material use {@link #getMaterial()}.
+         *
+         * @param materials materials, typically all materials of the .mtl libraries
+         */
+        public void setMaterials(List<Material> materials) {
+            this.materials = new ArrayList<>(materials);
+            rangeMaterials = null;
+            invalidateDisplayList();
+        }
+
+        /**
+         * Material of every draw range of the mesh, resolved by name on the first call
+         *
+         * @return materials, an element can be null
+         */
+        private Material[] getRangeMaterials() {
+            if (rangeMaterials == null) {
+                final List<IndexedMesh.Range> ranges = getMesh().getRanges();
+                rangeMaterials = new Material[ranges.size()];
+                for (int i = 0; i < rangeMaterials.length; i++) {
+                    final String name = ranges.get(i).getMaterial();
+                    rangeMaterials[i] = material;
+                    for (Material candidate : materials) {
+                        if (name != null && name.equals(candidate.getName())) {
+                            rangeMaterials[i] = candidate;
+                            break;
+                        }
+                    }
+                }
+            }
+            return rangeMaterials;
+        }
+
+        /**
+         * Check if is a diffuse texture enable for this instance.
+         *
+         * @return is a texture applied
+         */
+        public boolean isTextureEnable() {
+            return textureEnable;
+        }
+
+        /**
+         * Apply a texture for this instance and for all their children.
+         *
+         * @param textureEnable apply a texture
+         */
+        public void setTextureEnable(boolean textureEnable) {
+            if (this.textureEnable != textureEnable) {
+                this.textureEnable = textureEnable;
+                invalidateDisplayList();
+            }
+            for (Model part : parts) {
+                part.setTextureEnable(textureEnable);
+            }
+        }
+
+        public RenderMode getRenderMode() {
+            return renderMode;
+        }
+
+        /**
+         * Set the render mode for this instance and for all their children.
+         *
+         * @param renderMode render mode
+         */
+        public void setRenderMode(RenderMode renderMode) {
+            this.renderMode = renderMode;
+            for (Model part : parts) {
+                part.setRenderMode(renderMode);
+            }
+        }
+
+        /**
+         * Return children of the model
+         *
+         * @return unmodifiable list of children
+         */
+        public List<Model> getParts() {
+            return Collections.unmodifiableList(parts);
+        }
+
+        /**
+         * Upload textures and the mesh of this instance (not of their children) to OpenGL,
+         * so the first draw does not stall. Has to be called on the thread with OpenGL context.
+         */
+        public void upload() {
+            uploadTextures();
+            if (renderMode == RenderMode.QUANTIZED) {
+                if (quantizedVertexArray == 0) {
+                    uploadQuantizedBuffers();
+                }
+            } else if (renderMode == RenderMode.ARENA || renderMode == RenderMode.INDIRECT) {
+                if (arenaAllocation == null || arenaAllocation.isFreed()) {
+                    uploadArena();
+                }
+            } else if (vertexArray == 0) {
+                uploadBuffers();
+            }
+        }
+
+        /**
+         * Create textures of all materials of this instance from their decoded images
+         */
+        public void uploadTextures() {
+            if (material != null) {
+                material.uploadTextures();
+            }
+            for (Material rangeMaterial : materials) {
+                rangeMaterial.uploadTextures();
+            }
+        }
+
+        /**
+         * Estimate of OpenGL memory used by this instance and all their children: vertex buffers,
+         * display list (as the size of expanded vertices) and textures (4 bytes per texel).
+         *
+         * @return size in bytes
+         */
+        public long getResidentBytes() {
+            long size = 0;
+            if (buffers != null) {
+                size += buffers.getSizeInBytes();
+            }
+            if (quantizedBuffers != null) {
+                size += quantizedBuffers.getSizeInBytes();
+            }
+            if (arenaAllocation != null) {
+                size += arenaAllocation.getSizeInBytes();
+            }
+            if (displayList != 0) {
+                size += (long) getLevelMesh(level).getIndexCount() * IndexedMesh.FLOATS_PER_VERTEX * Float.BYTES;
+            }
+            final Set<OGLTexture2D> textures = Collections.newSetFromMap(new IdentityHashMap<>());
+            final List<Material> all = new ArrayList<>(materials);
+            if (material != null) {
+                all.add(material);
+            }
+            for (Material m : all) {
+                if (m.getAmbientTexture() != null) {
+                    textures.add(m.getAmbientTexture());
+                }
+                if (m.getDiffuseTexture() != null) {
+                    textures.add(m.getDiffuseTexture());
+                }
+            }
+            for (OGLTexture2D texture : textures) {
+                size += 4L * texture.getWidth() * texture.getHeight();
+            }
+            for (Model part : parts) {
+                size += part.getResidentBytes();
+            }
+            return size;
+        }
+
+        /**
+         * Delete OpenGL objects (vertex buffers, display list and textures) of this instance and all
+         * their children. The mesh is kept, so vertex buffers are uploaded again on the next draw,
+         * but textures have to be loaded again.
+         */
+        public void release() {
+            invalidateDisplayList();
+            deleteBuffers();
+            if (material != null) {
+                material.releaseTextures();
+                material.deleteUniformBuffer();
+            }
+            for (Material m : materials) {
+                m.releaseTextures();
+                m.deleteUniformBuffer();
+            }
+            for (Model part : parts) {
+                part.release();
+            }
+        }
+
+        /**
+         * Delete vertex buffers of this instance
+         */
+        private void deleteBuffers() {
+            if (vertexArray != 0) {
+                glDeleteVertexArrays(vertexArray);
+                vertexArray = 0;
+            }
+            if (buffers != null) {
+                buffers.delete();
+                buffers = null;
+            }
+            if (quantizedVertexArray != 0) {
+                glDeleteVertexArrays(quantizedVertexArray);
+                quantizedVertexArray = 0;
+            }
+            if (quantizedBuffers != null) {
+                quantizedBuffers.delete();
+                quantizedBuffers = null;
+            }
+            if (instancedVertexArray != 0) {
+                glDeleteVertexArrays(instancedVertexArray);
+                instancedVertexArray = 0;
+            }
+            if (arenaAllocation != null) {
+                getArena().free(arenaAllocation);
+                arenaAllocation = null;
+            }
+            if (indirectBatch != null) {
+                indirectBatch.delete();
+                indirectBatch = null;
+            }
+            if (shadedVertexArray != 0) {
+                glDeleteVertexArrays(shadedVertexArray);
+                shadedVertexArray = 0;
+            }
+        }
+
+        /**
+         * Add a child to a model
+         *
+         * @param part a child
+         * @return success
+         */
+        public boolean addPart(Model part) {
+            if (part.parent != null) {
+                part.parent.removePart(part);
+            }
+            part.parent = this;
+            invalidateBounds();
+            return this.parts.add(part);
+        }
+
+        /**
+         * Remove a child from a model
+         *
+         * @param part a child to remove
+         * @return success
+         */
+        public boolean removePart(Model part) {
+            if (!this.parts.remove(part)) {
+                return false;
+            }
+            part.parent = null;
+            invalidateBounds();
+            return true;
+        }
+
+        /**
+         * Draw this instance and all their children
+         */
+        public void draw() {
+            if (renderMode == RenderMode.INDIRECT && drawIndirect(null)) {
+                return;
+            }
+            if (renderMode == RenderMode.SHADED) {
+                // the program and matrices are set once for the whole tree
+                PhongLighting.begin();
+                drawTree();
+                PhongLighting.end();
+                return;
+            }
+            drawTree();
+        }
+
+        private void drawTree() {
+            drawParts(this);
+            for (Model part : parts) {
+                part.drawTree();
+            }
+        }
+
+        /**
+         * Draw this instance and all their children, which are not outside of the frustum.
+         * A subtree is skipped as a whole if its bounds are outside, the frustum is not tested
+         * any more inside of a subtree whose bounds are completely inside.
+         *
+         * @param frustum view frustum in the model's space, it counts drawn and culled nodes
+         */
+        public void draw(Frustum frustum) {
+            if (renderMode == RenderMode.INDIRECT && drawIndirect(frustum)) {
+                return;
+            }
+            if (renderMode == RenderMode.SHADED) {
+                PhongLighting.begin();
+                visit(frustum, false, this::drawParts);
+                PhongLighting.end();
+                return;
+            }
+            visit(frustum, false, this::drawParts);
+        }
+
+        /**
+         * Call the action on this instance and all their children, which are not outside of the frustum,
+         * in the selected level of detail. Drawn and culled nodes are counted by the frustum.
+         */
+        private void visit(Frustum frustum, boolean inside, Consumer<Model> action) {
+            if (!inside) {
+                final int subtree = frustum.classify(getBounds());
+                if (subtree == Frustum.OUTSIDE) {
+                    cull(frustum);
+                    return;
+                }
+                inside = subtree == Frustum.INSIDE;
+            }
+            if (inside || frustum.classify(getLocalBounds()) != Frustum.OUTSIDE) {
+                selectLevel(frustum);
+                action.accept(this);
+                frustum.addDrawn(getLevelMesh(level).getTriangleCount());
+            } else {
+                frustum.addCulled(getMesh().getTriangleCount());
+            }
+            for (Model part : parts) {
+                part.visit(frustum, inside, action);
+            }
+        }
+
+        /**
+         * Draw the whole tree by one batch of indirect commands
+         *
+         * @param frustum view frustum in the model's space or null
+         * @return false if it is not supported
+         */
+        private boolean drawIndirect(Frustum frustum) {
+            if (!IndirectBatch.isSupported()) {
+                if (!indirectWarned) {
+                    System.err.println("Multi-draw indirect needs OpenGL 4.3, models are drawn by parts");
+                    indirectWarned = true;
+                }
+                return false;
+            }
+            if (indirectBatch == null) {
+                indirectBatch = new IndirectBatch();
+            }
+            indirectBatch.clear();
+            indirectBatch.add(this, frustum);
+            indirectBatch.draw();
+            return true;
+        }
+
+        /**
+         * Add draws of this instance and all their children to a batch
+         *
+         * @param batch     batch
+         * @param transform model matrix of all draws in OpenGL's column-major order
+         * @param frustum   view frustum in the model's space to cull parts and select levels of detail,
+         *                  null to add all parts in their current levels
+         */
+        void collectDraws(IndirectBatch batch, float[] transform, Frustum frustum) {
+            if (frustum != null) {
+                visit(frustum, false, part -> part.addDraws(batch, transform));
+                return;
+            }
+            addDraws(batch, transform);
+            for (Model part : parts) {
+                part.collectDraws(batch, transform, null);
+            }
+        }
+
+        /**
+         * Add draws of every range of the mesh in the current level of detail, the mesh is
+         * sub-allocated in the shared arena if it is not yet
+         */
+        private void addDraws(IndirectBatch batch, float[] transform) {
+            if (arenaAllocation == null || arenaAllocation.isFreed()) {
+                uploadArena();
+                if (arenaAllocation == null) {
+                    return;
+                }
+            }
+            final List<IndexedMesh.Range> ranges = getLevelMesh(level).getRanges();
+            final Material[] materials = getRangeMaterials();
+            for (int i = 0; i < ranges.size(); i++) {
+                final IndexedMesh.Range range = ranges.get(i);
+                if (range.getCount() == 0) {
+                    continue;
+                }
+                final Material material = materials[i];
+                final OGLTexture2D texture = material != null && textureEnable ? material.getDiffuseTexture() : null;
+                batch.addDraw(transform, arenaAllocation, getLevelFirst(range), range.getCount(), material, texture);
+            }
+        }
+
+        private void cull(Frustum frustum) {
+            frustum.addCulled(getMesh().getTriangleCount());
+            for (Model part : parts) {
+                part.cull(frustum);
+            }
+        }
+
+        /**
+         * Delete the compiled display list, it is compiled again on the next draw
+         * in {@link RenderMode#DISPLAY_LIST}.
+         */
+        public void invalidateDisplayList() {
+            if (displayList != 0) {
+                glDeleteLists(displayList, 1);
+                displayList = 0;
+            }
+        }
+
+        /**
+         * Actual drawing method
+         *
+         * @param part model
+         */
+        private void drawParts(Model part) {
+            if (part.renderMode == RenderMode.RETAINED) {
+                drawWithMaterial(part, part::drawRetained);
+                return;
+            }
+            if (part.renderMode == RenderMode.QUANTIZED) {
+                drawWithMaterial(part, part::drawQuantized);
+                return;
+            }
+            if (part.renderMode == RenderMode.SHADED) {
+                part.drawShaded();
+                return;
+            }
+            if (part.renderMode == RenderMode.ARENA || part.renderMode == RenderMode.INDIRECT) {
+                drawWithMaterial(part, part::drawArena);
+                return;
+            }
+            if (part.renderMode != RenderMode.DISPLAY_LIST) {
+                drawWithMaterial(part, part::drawImmediate);
+                return;
+            }
+            if (part.displayList == 0) {
+                part.displayList = glGenLists(1);
+                glNewList(part.displayList, GL_COMPILE);
+                drawWithMaterial(part, part::drawImmediate);
+                glEndList();
+            }
+            glCallList(part.displayList);
+        }
+
+        /**
+         * Draw every range of the mesh with its material
+         *
+         * @param part model
+         * @param draw how to send the geometry of a range
+         */
+        private void drawWithMaterial(Model part, Consumer<IndexedMesh.Range> draw) {
+            // levels of detail keep all draw ranges of the mesh
+            final List<IndexedMesh.Range> ranges = part.getLevelMesh(part.level).getRanges();
+            final Material[] materials = part.getRangeMaterials();
+            boolean textureEnable = part.textureEnable;
+
+            for (int i = 0; i < ranges.size(); i++) {
+                final Material material = materials[i];
+                if (material != null) {
+                    if (material.getDiffuseTexture() != null && textureEnable) {
+                        glEnable(GL_TEXTURE_2D);
+                        material.getDiffuseTexture().bind();
+                    }
+                    glMaterialfv(GL_FRONT, GL_AMBIENT, material.toFloatArray(material.getAmbientColor()));
+                    glMaterialfv(GL_FRONT, GL_DIFFUSE, material.toFloatArray(material.getDiffuseColor()));
+                    glMaterialfv(GL_FRONT, GL_SPECULAR, material.toFloatArray(material.getSpecularColor()));
+                    glMaterialf(GL_FRONT, GL_SHININESS, material.getSpecularExponent());
+                }
+
+                draw.accept(ranges.get(i));
+
+                if (material != null) {
+                    if (material.getDiffuseTexture() != null) {
+                        glDisable(GL_TEXTURE_2D);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Send every vertex of the range by glBegin/glEnd
+         *
+         * @param range part of the index buffer
+         */
+        private void drawImmediate(IndexedMesh.Range range) {
+            final IndexedMesh mesh = getLevelMesh(level);
+            final FloatBuffer vertices = mesh.getVertexBuffer();
+            final IntBuffer indices = mesh.getIndexBuffer();
+            final int end = range.getFirst() + range.getCount();
+
+            glBegin(GL_TRIANGLES);
+            for (int i = range.getFirst(); i < end; i++) {
+                final int v = indices.get(i) * IndexedMesh.FLOATS_PER_VERTEX;
+                glTexCoord2f(vertices.get(v + 3), vertices.get(v + 4));
+                glNormal3f(vertices.get(v + 5), vertices.get(v + 6), vertices.get(v + 7));
+                glVertex3f(vertices.get(v), vertices.get(v + 1), vertices.get(v + 2));
+            }
+            glEnd();
+        }
+
+        /**
+         * Indices of all levels of detail in one array, offsets of levels are stored in {@link #levelOffsets}
+         *
+         * @return indices
+         */
+        private int[] getAllLevelIndices() {
+            levelOffsets = new int[getLevelCount()];
+            int count = 0;
+            for (int i = 0; i < levelOffsets.length; i++) {
+                levelOffsets[i] = count;
+                count += getLevelMesh(i).getIndexCount();
+            }
+            final int[] indices = new int[count];
+            for (int i = 0; i < levelOffsets.length; i++) {
+                getLevelMesh(i).getIndexBuffer().get(indices, levelOffsets[i], getLevelMesh(i).getIndexCount());
+            }
+            return indices;
+        }
+
+        /**
+         * Upload the mesh into vertex buffers behind a vertex array object, an empty mesh is skipped.
+         * The index buffer holds all levels of detail.
+         */
+        private void uploadBuffers() {
+            final IndexedMesh mesh = getMesh();
+            if (mesh.getIndexCount() == 0) {
+                return;
+            }
+            buffers = levels.isEmpty() ? mesh.toOGLBuffers()
+                    : new OGLBuffers(mesh.getVertexBuffer(), IndexedMesh.FLOATS_PER_VERTEX,
+                    IndexedMesh.getAttributes(), IntBuffer.wrap(getAllLevelIndices()));
+            vertexArray = glGenVertexArrays();
+            glBindVertexArray(vertexArray);
+            buffers.bindFixedFunction();
+            glBindVertexArray(0);
+            buffers.unbindFixedFunction();
+            glBindBuffer(GL_ARRAY_BUFFER, 0);
+        }
+
+        /**
+         * First index of the range of the drawn level in uploaded index buffers
+         *
+         * @param range range of the drawn level
+         * @return index
+         */
+        private int getLevelFirst(IndexedMesh.Range range) {
+            return levels.isEmpty() ? range.getFirst() : range.getFirst() + levelOffsets[level];
+        }
+
+        /**
+         * Draw the range from vertex buffers, they are uploaded on the first call
+         *
+         * @param range part of the index buffer
+         */
+        private void drawRetained(IndexedMesh.Range range) {
+            if (vertexArray == 0) {
+                uploadBuffers();
+                if (vertexArray == 0) {
+                    return;
+                }
+            }
+            glBindVertexArray(vertexArray);
+            glDrawElements(GL_TRIANGLES, range.getCount(), GL_UNSIGNED_INT, (long) getLevelFirst(range) * Integer.BYTES);
+            glBindVertexArray(0);
+        }
+
+        /**
+         * Sub-allocate the mesh with all levels of detail in the shared arena, an empty mesh is skipped
+         */
+        private void uploadArena() {
+            final IndexedMesh mesh = getMesh();
+            if (mesh.getIndexCount() == 0) {
+                return;
+            }
+            arenaAllocation = getArena().allocate(mesh.getVertexBuffer(),
+                    levels.isEmpty() ? mesh.getIndexBuffer() : IntBuffer.wrap(getAllLevelIndices()));
+        }
+
+        /**
+         * Draw the range from the shared arena by its base vertex, the mesh is sub-allocated on the first call
+         *
+         * @param range part of the index buffer
+         */
+        private void drawArena(IndexedMesh.Range range) {
+            if (arenaAllocation == null || arenaAllocation.isFreed()) {
+                uploadArena();
+                if (arenaAllocation == null) {
+                    return;
+                }
+            }
+            final OGLBufferArena arena = getArena();
+            arena.bindFixedFunction();
+            arena.drawElements(arenaAllocation, getLevelFirst(range), range.getCount());
+            glBindVertexArray(0);
+        }
+
+        /**
+         * Draw every range of the mesh from vertex buffers by the shader of {@link PhongLighting}
+         * with the uniform buffer of its material, buffers are uploaded on the first call.
+         * The program is used by {@link #draw()} for the whole tree.
+         */
+        private void drawShaded() {
+            if (shadedVertexArray == 0) {
+                if (getMesh().getIndexCount() == 0) {
+                    return;
+                }
+                if (vertexArray == 0) {
+                    uploadBuffers();
+                }
+                shadedVertexArray = glGenVertexArrays();
+                glBindVertexArray(shadedVertexArray);
+                buffers.bind(PhongLighting.getProgram());
+                glBindVertexArray(0);
+                glBindBuffer(GL_ARRAY_BUFFER, 0);
+            }
+            final List<IndexedMesh.Range> ranges = getLevelMesh(level).getRanges();
+            final Material[] materials = getRangeMaterials();
+            glBindVertexArray(shadedVertexArray);
+            for (int i = 0; i < ranges.size(); i++) {
+                final IndexedMesh.Range range = ranges.get(i);
+                PhongLighting.bindMaterial(materials[i], textureEnable);
+                glDrawElements(GL_TRIANGLES, range.getCount(), GL_UNSIGNED_INT, (long) getLevelFirst(range) * Integer.BYTES);
+            }
+            glBindVertexArray(0);
+        }
+
+        /**
+         * Upload the quantized mesh into vertex buffers behind a vertex array object bound to
+         * the attributes of the dequantization shader, an empty mesh is skipped
+         */
+        private void uploadQuantizedBuffers() {
+            final QuantizedMesh quantized = getQuantizedMesh();
+            if (quantized.getIndexCount() == 0) {
+                return;
+            }
+            quantizedBuffers = levels.isEmpty() ? quantized.toOGLBuffers()
+                    : new OGLBuffers(quantized.getVertexBuffer(), QuantizedMesh.BYTES_PER_VERTEX,
+                    QuantizedMesh.getAttributes(), IntBuffer.wrap(getAllLevelIndices()));
+            quantizedVertexArray = glGenVertexArrays();
+            glBindVertexArray(quantizedVertexArray);
+            quantizedBuffers.bind(QuantizedMesh.getProgram());
+            glBindVertexArray(0);
+            glBindBuffer(GL_ARRAY_BUFFER, 0);
+        }
+
+        /**
+         * Draw the range from quantized vertex buffers by the dequantization shader,
+         * they are uploaded on the first call
+         *
+         * @param range part of the index buffer
+         */
+        private void drawQuantized(IndexedMesh.Range range) {
+            if (quantizedVertexArray == 0) {
+                uploadQuantizedBuffers();
+                if (quantizedVertexArray == 0) {
+                    return;
+                }
+            }
+            glUseProgram(QuantizedMesh.getProgram());
+            getQuantizedMesh().setUniforms();
+            glBindVertexArray(quantizedVertexArray);
+            glDrawElements(GL_TRIANGLES, range.getCount(), GL_UNSIGNED_INT, (long) getLevelFirst(range) * Integer.BYTES);
+            glBindVertexArray(0);
+            glUseProgram(0);
+        }
+
+        /**
+         * Draw copies of this instance and all their children by hardware instancing, every range
+         * is drawn for all copies by one glDrawElementsInstanced. Copies are drawn in the current
+         * level of detail and they are not culled, the render mode is ignored (vertex buffers are used).
+         * Has to be called on the thread with OpenGL context.
+         *
+         * @param instances model matrices and tints of the copies
+         */
+        public void drawInstanced(ModelInstances instances) {
+            if (instances.getCount() > 0) {
+                glUseProgram(ModelInstances.getProgram());
+                drawInstancedParts(instances);
+                glUseProgram(0);
+            }
+        }
+
+        private void drawInstancedParts(ModelInstances instances) {
+            if (instancedVertexArray == 0 && getMesh().getIndexCount() > 0) {
+                if (vertexArray == 0) {
+                    uploadBuffers();
+                }
+                instancedVertexArray = glGenVertexArrays();
+                glBindVertexArray(instancedVertexArray);
+                buffers.bind(ModelInstances.getProgram());
+                glBindVertexArray(0);
+                glBindBuffer(GL_ARRAY_BUFFER, 0);
+            }
+            if (instancedVertexArray != 0) {
+                glBindVertexArray(instancedVertexArray);
+                // the vertex array may be shared by several sets of instances
+                instances.bind();
+                drawWithMaterial(this, range -> {
+                    ModelInstances.setUniforms();
+                    glDrawElementsInstanced(GL_TRIANGLES, range.getCount(), GL_UNSIGNED_INT,
+                            (long) getLevelFirst(range) * Integer.BYTES, instances.getCount());
+                });
+                glBindVertexArray(0);
+            }
+            for (Model part : parts) {
+                part.drawInstancedParts(instances);
             }
         }
     }
@@ -0,0 +1,178 @@
+package lwjglutils;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Class {@code OBJLoadingService} loads models in the background.
+ * <p>
+ * Worker threads parse .obj and .mtl files and decode textures by {@link OBJLoader#loadModelData(String)},
+ * which does not call OpenGL. Finished models are handed to the render thread, which uploads them
+ * step by step (textures and vertex buffers of one model node per step) in {@link #update(long)}
+ * within the given time budget, so a frame is never blocked by a whole model.
+ * <p>
+ * Except of the constructor, all methods have to be called on the render thread.
+ *
+ * @author Stanislav Čapek
+ * @version 1.0
+ * @see OBJLoader
+ */
+public class OBJLoadingService {
+
+    /**
+     * Model parsed by a worker, model is null if the loading failed
+     */
+    private static class Loaded {
+        final OBJLoader.Model model;
+        final Consumer<OBJLoader.Model> onReady;
+
+        Loaded(OBJLoader.Model model, Consumer<OBJLoader.Model> onReady) {
+            this.model = model;
+            this.onReady = onReady;
+        }
+    }
+
+    private final ExecutorService executor;
+    private final Queue<Loaded> loaded = new ConcurrentLinkedQueue<>();
+    private final Deque<Runnable> uploads = new ArrayDeque<>();
+    private final AtomicInteger parsedCount = new AtomicInteger();
+    private int submittedCount;
+    private int readyCount;
+
+    /**
+     * Constructor, one thread is left for rendering
+     */
+    public OBJLoadingService() {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param threads count of worker threads
+     */
+    public OBJLoadingService(int threads) {
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, "obj-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start loading of a model. The first path is the model, models of other paths
+     * are added as its parts.
+     *
+     * @param onReady   called on the render thread when the model is uploaded, with null
+     *                  if the loading failed
+     * @param modelPath relative path of the model
+     * @param partPaths relative paths of the model's parts
+     */
+    public void load(Consumer<OBJLoader.Model> onReady, String modelPath, String... partPaths) {
+        submittedCount++;
+        executor.execute(() -> {
+            OBJLoader.Model model = null;
+            try {
+                model = OBJLoader.loadModelData(modelPath);
+                for (String partPath : partPaths) {
+                    model.addPart(OBJLoader.loadModelData(partPath));
+                }
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                model = null;
+            } finally {
+                parsedCount.incrementAndGet();
+                loaded.add(new Loaded(model, onReady));
+            }
+        });
+    }
+
+    /**
+     * Upload finished models, it is meant to be called once per frame. At least one step
+     * is done, if there is any, further steps only while the budget is not exceeded.
+     *
+     * @param budgetNanos time budget in nanoseconds
+     */
+    public void update(long budgetNanos) {
+        final long start = System.nanoTime();
+        do {
+            if (uploads.isEmpty()) {
+                final Loaded next = loaded.poll();
+                if (next == null) {
+                    return;
+                }
+                schedule(next);
+            }
+            uploads.poll().run();
+        } while (System.nanoTime() - start < budgetNanos);
+    }
+
+    /**
+     * Split the upload of a model into steps
+     *
+     * @param next parsed model
+     */
+    private void schedule(Loaded next) {
+        if (next.model != null) {
+            scheduleUpload(next.model);
+        }
+        uploads.add(() -> {
+            readyCount++;
+            next.onReady.accept(next.model);
+        });
+    }
+
+    private void scheduleUpload(OBJLoader.Model model) {
+        uploads.add(model::upload);
+        for (OBJLoader.Model part : model.getParts()) {
+            scheduleUpload(part);
+        }
+    }
+
+    public int getSubmittedCount() {
+        return submittedCount;
+    }
+
+    /**
+     * Count of models which are uploaded (or failed) and handed over
+     *
+     * @return count
+     */
+    public int getReadyCount() {
+        return readyCount;
+    }
+
+    /**
+     * Check if all submitted models are ready
+     *
+     * @return nothing is loading
+     */
+    public boolean isIdle() {
+        return readyCount == submittedCount;
+    }
+
+    /**
+     * Progress of all submitted models, parsing and uploading count as a half each
+     *
+     * @return progress from 0 to 1
+     */
+    public double getProgress() {
+        if (submittedCount == 0) {
+            return 1;
+        }
+        return (parsedCount.get() + readyCount) / (2.0 * submittedCount);
+    }
+
+    /**
+     * Stop worker threads, models which are not parsed yet are dropped
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
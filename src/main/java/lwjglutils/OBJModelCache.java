@@ -0,0 +1,393 @@
+package lwjglutils;
+
+import transforms.Vec3D;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class {@code OBJModelCache} stores loaded models in a binary format, so the text .obj and .mtl
+ * files do not have to be parsed on every launch.
+ * <p>
+ * A cache file is named by the SHA-256 hash of the .obj content. It also holds names and hashes
+ * of all .mtl libraries, an entry is used only if all of them still match and the mesh was
+ * optimized by {@link MeshOptimizer} if the optimizer is enabled. The file contains
+ * material records (texture maps as resource paths, textures are loaded by {@link OBJLoader})
+ * and the flat vertex and index arrays of {@link IndexedMesh} with its draw ranges in the native
+ * byte order, followed by indices of levels of detail created by {@link MeshSimplifier}.
+ * <p>
+ * The file is read by {@link FileChannel#map}, the mesh buffers are slices of the mapping,
+ * so they can be handed to OpenGL without copying.
+ * <p>
+ * Layout (all values 4-byte aligned):
+ * <pre>
+ * int magic, int version, int byte order mark
+ * 32 B  .obj hash
+ * int   library count, (string name, 32 B hash) per library
+ * int   material count, (string name, Ka, Kd, Ks, float Ns, float d, string map_Ka, string map_Kd) per material
+ * int   optimized flag (1 if the mesh is optimized by {@link MeshOptimizer})
+ * int   source corner count, int vertex count, int index count
+ * int   range count, (string material, int first, int count) per range
+ * int   level count, (float error, int index count, (int first, int count) per range) per level
+ * float vertices[vertex count * 8], int indices[index count], int level indices[index count] per level
+ * </pre>
+ * Strings are stored as int length (-1 for null) and UTF-8 bytes padded to 4 bytes,
+ * colors as int flag (0 for null) and 3 floats.
+ *
+ * @author Stanislav Čapek
+ * @version 1.0
+ * @see OBJLoader#loadModel(String)
+ */
+public class OBJModelCache {
+
+    private static final int MAGIC = 0x4F424A43;
+    private static final int VERSION = 5;
+    private static final int BYTE_ORDER_MARK = 0x01020304;
+    private static final String EXTENSION = ".objc";
+    private static final int HASH_LENGTH = 32;
+
+    private static Path directory = Paths.get(System.getProperty("java.io.tmpdir"), "modelviewer-cache");
+    private static boolean enabled = true;
+
+    /**
+     * Cached model data
+     */
+    static class Entry {
+        final List<OBJLoader.Material> materials;
+        final IndexedMesh mesh;
+        final List<IndexedMesh> levels;
+        final float[] levelErrors;
+
+        Entry(List<OBJLoader.Material> materials, IndexedMesh mesh, List<IndexedMesh> levels, float[] levelErrors) {
+            this.materials = materials;
+            this.mesh = mesh;
+            this.levels = levels;
+            this.levelErrors = levelErrors;
+        }
+    }
+
+    /**
+     * Private constructor- utility class
+     */
+    private OBJModelCache() {
+    }
+
+    public static Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Set the directory of cache files
+     *
+     * @param directory directory, created on the first write
+     */
+    public static void setDirectory(Path directory) {
+        OBJModelCache.directory = directory;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enable or disable reading and writing of the cache
+     *
+     * @param enabled use the cache
+     */
+    public static void setEnabled(boolean enabled) {
+        OBJModelCache.enabled = enabled;
+    }
+
+    /**
+     * Read a cached model
+     *
+     * @param modelPath resource path of .obj file
+     * @param objData   content of .obj file
+     * @return cached data or null if there is no valid entry
+     */
+    static Entry read(String modelPath, byte[] objData) {
+        final byte[] objHash = hash(objData);
+        final Path file = directory.resolve(toHex(objHash) + EXTENSION);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            map.order(ByteOrder.nativeOrder());
+
+            if (map.getInt() != MAGIC || map.getInt() != VERSION || map.getInt() != BYTE_ORDER_MARK) {
+                return null;
+            }
+            final byte[] storedHash = new byte[HASH_LENGTH];
+            map.get(storedHash);
+            if (!Arrays.equals(storedHash, objHash)) {
+                return null;
+            }
+
+            final int libraryCount = map.getInt();
+            for (int i = 0; i < libraryCount; i++) {
+                final String library = getString(map);
+                map.get(storedHash);
+                if (!Arrays.equals(storedHash, hashLibrary(modelPath, library))) {
+                    return null;
+                }
+            }
+
+            final int materialCount = map.getInt();
+            final List<OBJLoader.Material> materials = new ArrayList<>(materialCount);
+            for (int i = 0; i < materialCount; i++) {
+                final String name = getString(map);
+                final Vec3D ambientColor = getColor(map);
+                final Vec3D diffuseColor = getColor(map);
+                final Vec3D specularColor = getColor(map);
+                final float specularExponent = map.getFloat();
+                final float alpha = map.getFloat();
+                final OBJLoader.Material material = new OBJLoader.Material(
+                        name, ambientColor, diffuseColor, specularColor, 0, alpha, null, null);
+                // the stored value is already mapped to OpenGL's range
+                material.setSpecularExponent(specularExponent);
+                material.setTexturePaths(getString(map), getString(map));
+                materials.add(material);
+            }
+
+            if ((map.getInt() != 0) != MeshOptimizer.isEnabled()) {
+                return null;
+            }
+            final int sourceCornerCount = map.getInt();
+            final int vertexCount = map.getInt();
+            final int indexCount = map.getInt();
+            final int rangeCount = map.getInt();
+            final List<IndexedMesh.Range> ranges = new ArrayList<>(rangeCount);
+            for (int i = 0; i < rangeCount; i++) {
+                ranges.add(new IndexedMesh.Range(getString(map), map.getInt(), map.getInt()));
+            }
+            final int levelCount = map.getInt();
+            final float[] levelErrors = new float[levelCount];
+            final int[] levelIndexCounts = new int[levelCount];
+            final List<List<IndexedMesh.Range>> levelRanges = new ArrayList<>(levelCount);
+            for (int level = 0; level < levelCount; level++) {
+                levelErrors[level] = map.getFloat();
+                levelIndexCounts[level] = map.getInt();
+                final List<IndexedMesh.Range> rangesOfLevel = new ArrayList<>(rangeCount);
+                for (IndexedMesh.Range range : ranges) {
+                    rangesOfLevel.add(new IndexedMesh.Range(range.getMaterial(), map.getInt(), map.getInt()));
+                }
+                levelRanges.add(rangesOfLevel);
+            }
+
+            final int vertexBytes = vertexCount * IndexedMesh.FLOATS_PER_VERTEX * Float.BYTES;
+            final FloatBuffer vertices = slice(map, vertexBytes).asFloatBuffer();
+            final IntBuffer indices = slice(map, indexCount * Integer.BYTES).asIntBuffer();
+            final List<IndexedMesh> levels = new ArrayList<>(levelCount);
+            for (int level = 0; level < levelCount; level++) {
+                final IntBuffer levelIndices = slice(map, levelIndexCounts[level] * Integer.BYTES).asIntBuffer();
+                levels.add(new IndexedMesh(vertices, levelIndices, sourceCornerCount, levelRanges.get(level)));
+            }
+
+            return new Entry(materials, new IndexedMesh(vertices, indices, sourceCornerCount, ranges),
+                    levels, levelErrors);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Invalid cache file " + file + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Write a model to the cache. Failures are only reported, the cache is optional.
+     *
+     * @param modelPath         resource path of .obj file
+     * @param objData           content of .obj file
+     * @param materialLibraries names of .mtl libraries referenced by .obj file
+     * @param materials         loaded materials
+     * @param model             model with its mesh and levels of detail
+     */
+    static void write(String modelPath, byte[] objData, List<String> materialLibraries,
+                      List<OBJLoader.Material> materials, OBJLoader.Model model) {
+        final IndexedMesh mesh = model.getMesh();
+        final byte[] objHash = hash(objData);
+        final Path file = directory.resolve(toHex(objHash) + EXTENSION);
+
+        final List<byte[]> strings = new ArrayList<>();
+        int size = 3 * Integer.BYTES + HASH_LENGTH + Integer.BYTES;
+        for (String library : materialLibraries) {
+            size += stringSize(library) + HASH_LENGTH;
+        }
+        size += Integer.BYTES;
+        for (OBJLoader.Material material : materials) {
+            size += stringSize(material.getName()) + 3 * 4 * Float.BYTES + 2 * Float.BYTES
+                    + stringSize(material.getAmbientTexturePath()) + stringSize(material.getDiffuseTexturePath());
+        }
+        size += 6 * Integer.BYTES;
+        for (IndexedMesh.Range range : mesh.getRanges()) {
+            size += stringSize(range.getMaterial()) + 2 * Integer.BYTES;
+        }
+        size += mesh.getVertexCount() * IndexedMesh.FLOATS_PER_VERTEX * Float.BYTES;
+        for (int level = 0; level < model.getLevelCount(); level++) {
+            if (level > 0) {
+                size += Float.BYTES + Integer.BYTES + mesh.getRanges().size() * 2 * Integer.BYTES;
+            }
+            size += model.getLevelMesh(level).getIndexCount() * Integer.BYTES;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.nativeOrder());
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(BYTE_ORDER_MARK);
+        buffer.put(objHash);
+        buffer.putInt(materialLibraries.size());
+        for (String library : materialLibraries) {
+            putString(buffer, library);
+            buffer.put(hashLibrary(modelPath, library));
+        }
+        buffer.putInt(materials.size());
+        for (OBJLoader.Material material : materials) {
+            putString(buffer, material.getName());
+            putColor(buffer, material.getAmbientColor());
+            putColor(buffer, material.getDiffuseColor());
+            putColor(buffer, material.getSpecularColor());
+            buffer.putFloat(material.getSpecularExponent());
+            buffer.putFloat(material.getAlpha());
+            putString(buffer, material.getAmbientTexturePath());
+            putString(buffer, material.getDiffuseTexturePath());
+        }
+        buffer.putInt(MeshOptimizer.isEnabled() ? 1 : 0);
+        buffer.putInt(mesh.getSourceCornerCount());
+        buffer.putInt(mesh.getVertexCount());
+        buffer.putInt(mesh.getIndexCount());
+        buffer.putInt(mesh.getRanges().size());
+        for (IndexedMesh.Range range : mesh.getRanges()) {
+            putString(buffer, range.getMaterial());
+            buffer.putInt(range.getFirst()).putInt(range.getCount());
+        }
+        buffer.putInt(model.getLevelCount() - 1);
+        for (int level = 1; level < model.getLevelCount(); level++) {
+            final IndexedMesh levelMesh = model.getLevelMesh(level);
+            buffer.putFloat(model.getLevelError(level)).putInt(levelMesh.getIndexCount());
+            for (IndexedMesh.Range range : levelMesh.getRanges()) {
+                buffer.putInt(range.getFirst()).putInt(range.getCount());
+            }
+        }
+        buffer.asFloatBuffer().put(mesh.getVertexBuffer());
+        buffer.position(buffer.position() + mesh.getVertexCount() * IndexedMesh.FLOATS_PER_VERTEX * Float.BYTES);
+        for (int level = 0; level < model.getLevelCount(); level++) {
+            final IndexedMesh levelMesh = model.getLevelMesh(level);
+            buffer.asIntBuffer().put(levelMesh.getIndexBuffer());
+            buffer.position(buffer.position() + levelMesh.getIndexCount() * Integer.BYTES);
+        }
+        buffer.flip();
+
+        try {
+            Files.createDirectories(directory);
+            final Path tmp = Files.createTempFile(directory, "model", ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Unable to write cache file " + file + ": " + e);
+        }
+    }
+
+    /**
+     * Hash of a .mtl library (of the compressed data if only a compressed library exists),
+     * an empty array is hashed for a missing library
+     *
+     * @param modelPath model's path
+     * @param library   library's name
+     * @return hash
+     */
+    private static byte[] hashLibrary(String modelPath, String library) {
+        final String mtlPath = InflatingInputStream.resolve(
+                modelPath.substring(0, modelPath.lastIndexOf("/") + 1) + library);
+        try (InputStream is = mtlPath == null ? null : OBJModelCache.class.getClassLoader().getResourceAsStream(mtlPath)) {
+            return hash(is == null ? new byte[0] : is.readAllBytes());
+        } catch (IOException e) {
+            return hash(new byte[0]);
+        }
+    }
+
+    private static byte[] hash(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        final StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int length) {
+        final ByteBuffer slice = buffer.slice();
+        slice.limit(length);
+        buffer.position(buffer.position() + length);
+        return slice.order(ByteOrder.nativeOrder());
+    }
+
+    private static int stringSize(String s) {
+        return Integer.BYTES + (s == null ? 0 : align(s.getBytes(StandardCharsets.UTF_8).length));
+    }
+
+    private static int align(int length) {
+        return (length + 3) & ~3;
+    }
+
+    private static void putString(ByteBuffer buffer, String s) {
+        if (s == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+        buffer.position(buffer.position() + align(bytes.length) - bytes.length);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        buffer.position(buffer.position() + align(length) - length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putColor(ByteBuffer buffer, Vec3D color) {
+        buffer.putInt(color == null ? 0 : 1);
+        buffer.putFloat(color == null ? 0 : (float) color.getX());
+        buffer.putFloat(color == null ? 0 : (float) color.getY());
+        buffer.putFloat(color == null ? 0 : (float) color.getZ());
+    }
+
+    private static Vec3D getColor(ByteBuffer buffer) {
+        final boolean present = buffer.getInt() != 0;
+        final Vec3D color = new Vec3D(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+        return present ? color : null;
+    }
+}
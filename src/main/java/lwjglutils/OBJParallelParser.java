@@ -0,0 +1,304 @@
+package lwjglutils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Class {@code OBJParallelParser} parses a whole .obj file loaded in memory on a {@link ForkJoinPool}.
+ * <p>
+ * The file is split into byte ranges on line boundaries. Every range is parsed by its own task
+ * with {@link OBJTokenizer} into primitive arrays. Face indices are global in .obj files, except of
+ * the negative (relative) ones, so they are resolved in the merge step, where every chunk knows
+ * the count of positions, texture coordinates and normals defined by all chunks before it
+ * (prefix sums). The merge step runs in parallel as well.
+ * <p>
+ * Material switches ("usemtl") are recorded per chunk with the local face index. Faces before
+ * the first switch in a chunk inherit the material selected at the end of the previous chunks.
+ *
+ * @author Stanislav Čapek
+ * @version 1.0
+ * @see OBJLoader.ParseMode#PARALLEL
+ */
+class OBJParallelParser {
+
+    /**
+     * Smaller files are not worth to split
+     */
+    private static final int MIN_CHUNK_SIZE = 1 << 18;
+    /**
+     * Chunks per thread, a few more than threads for load balancing
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+    /**
+     * Relative indices are stored shifted by this bias, so they stay negative
+     */
+    private static final int RELATIVE_BIAS = 1 << 30;
+
+    /**
+     * Merged data of all chunks. Indices in {@link #corners} are 0-based,
+     * missing texture coordinate or normal is -1.
+     */
+    static class Result {
+        float[] positions;
+        float[] texCoords;
+        float[] normals;
+        /**
+         * Triplets of position, texture coordinate and normal index
+         */
+        int[] corners;
+        /**
+         * Count of corners per face
+         */
+        int[] faceSizes;
+        /**
+         * Material index of every face to {@link #materialNames}, -1 for no material
+         */
+        int[] faceMaterials;
+        final List<String> materialNames = new ArrayList<>();
+        final List<String> materialLibraries = new ArrayList<>();
+    }
+
+    /**
+     * Data of one byte range. Negative indices are already resolved to the chunk's local
+     * index and stored with a bias, see {@link #resolveIndex(int, int)}.
+     */
+    private static class Chunk {
+        final FloatList positions = new FloatList(1024);
+        final FloatList texCoords = new FloatList(1024);
+        final FloatList normals = new FloatList(1024);
+        final IntList corners = new IntList(4096);
+        final IntList faceSizes = new IntList(1024);
+        final List<String> materialLibraries = new ArrayList<>();
+        /**
+         * Local face index of every material switch and the switched material
+         */
+        final IntList switchFaces = new IntList(4);
+        final List<String> switchNames = new ArrayList<>(4);
+        final IntList switchMaterials = new IntList(4);
+        int initialMaterial;
+
+        int positionOffset;
+        int texCoordOffset;
+        int normalOffset;
+        int cornerOffset;
+        int faceOffset;
+    }
+
+    private OBJParallelParser() {
+    }
+
+    /**
+     * Parse the whole file
+     *
+     * @param data content of .obj file
+     * @return merged data
+     */
+    static Result parse(byte[] data) {
+        return parse(data, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parse the whole file
+     *
+     * @param data content of .obj file
+     * @param pool pool to run the tasks
+     * @return merged data
+     */
+    static Result parse(byte[] data, ForkJoinPool pool) {
+        final int[] bounds = split(data, pool.getParallelism());
+        final int chunkCount = bounds.length - 1;
+
+        final List<ForkJoinTask<Chunk>> tasks = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            final int from = bounds[i];
+            final int to = bounds[i + 1];
+            tasks.add(pool.submit(() -> parseChunk(data, from, to)));
+        }
+        final Chunk[] chunks = new Chunk[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            chunks[i] = tasks.get(i).join();
+        }
+
+        // prefix sums
+        final Result result = new Result();
+        int positions = 0, texCoords = 0, normals = 0, corners = 0, faces = 0;
+        int material = -1;
+        for (Chunk chunk : chunks) {
+            chunk.positionOffset = positions;
+            chunk.texCoordOffset = texCoords;
+            chunk.normalOffset = normals;
+            chunk.cornerOffset = corners;
+            chunk.faceOffset = faces;
+            positions += chunk.positions.size() / 3;
+            texCoords += chunk.texCoords.size() / 2;
+            normals += chunk.normals.size() / 3;
+            corners += chunk.corners.size();
+            faces += chunk.faceSizes.size();
+            result.materialLibraries.addAll(chunk.materialLibraries);
+
+            chunk.initialMaterial = material;
+            for (String name : chunk.switchNames) {
+                material = result.materialNames.indexOf(name);
+                if (material < 0) {
+                    material = result.materialNames.size();
+                    result.materialNames.add(name);
+                }
+                chunk.switchMaterials.add(material);
+            }
+        }
+        result.positions = new float[positions * 3];
+        result.texCoords = new float[texCoords * 2];
+        result.normals = new float[normals * 3];
+        result.corners = new int[corners];
+        result.faceSizes = new int[faces];
+        result.faceMaterials = new int[faces];
+
+        final List<ForkJoinTask<?>> merges = new ArrayList<>(chunkCount);
+        for (Chunk chunk : chunks) {
+            merges.add(pool.submit(() -> merge(chunk, result)));
+        }
+        for (ForkJoinTask<?> merge : merges) {
+            merge.join();
+        }
+        return result;
+    }
+
+    /**
+     * Split data into ranges, every range ends after a line break.
+     *
+     * @param data        content of the file
+     * @param parallelism count of threads
+     * @return bounds of ranges, range i is [bounds[i], bounds[i + 1])
+     */
+    private static int[] split(byte[] data, int parallelism) {
+        final int chunkCount = Math.max(1, Math.min(parallelism * CHUNKS_PER_THREAD, data.length / MIN_CHUNK_SIZE));
+        final IntList bounds = new IntList(chunkCount + 1);
+        bounds.add(0);
+        for (int i = 1; i < chunkCount; i++) {
+            int bound = Math.max((int) ((long) data.length * i / chunkCount), bounds.get(bounds.size() - 1));
+            while (bound < data.length && data[bound] != '\n') {
+                bound++;
+            }
+            if (bound < data.length) {
+                bound++;
+            }
+            if (bound > bounds.get(bounds.size() - 1) && bound < data.length) {
+                bounds.add(bound);
+            }
+        }
+        bounds.add(data.length);
+        return bounds.toArray();
+    }
+
+    /**
+     * Parse one byte range
+     *
+     * @param data whole file
+     * @param from first byte (inclusive)
+     * @param to   last byte (exclusive)
+     * @return parsed chunk
+     */
+    private static Chunk parseChunk(byte[] data, int from, int to) {
+        final Chunk chunk = new Chunk();
+        final OBJTokenizer tokenizer = new OBJTokenizer(data, from, to);
+        final int[] corner = new int[3];
+        try {
+            int record;
+            while ((record = tokenizer.nextRecord()) != OBJTokenizer.EOF) {
+                switch (record) {
+                    case OBJTokenizer.VERTEX:
+                        chunk.positions.add(tokenizer.nextFloat());
+                        chunk.positions.add(tokenizer.nextFloat());
+                        chunk.positions.add(tokenizer.nextFloat());
+                        break;
+                    case OBJTokenizer.TEX_COORD:
+                        chunk.texCoords.add(tokenizer.nextFloat());
+                        chunk.texCoords.add(tokenizer.nextFloat());
+                        break;
+                    case OBJTokenizer.NORMAL:
+                        chunk.normals.add(tokenizer.nextFloat());
+                        chunk.normals.add(tokenizer.nextFloat());
+                        chunk.normals.add(tokenizer.nextFloat());
+                        break;
+                    case OBJTokenizer.FACE:
+                        int size = 0;
+                        while (tokenizer.hasNext()) {
+                            tokenizer.nextCorner(corner);
+                            chunk.corners.add(resolveIndex(corner[0], chunk.positions.size() / 3));
+                            chunk.corners.add(resolveIndex(corner[1], chunk.texCoords.size() / 2));
+                            chunk.corners.add(resolveIndex(corner[2], chunk.normals.size() / 3));
+                            size++;
+                        }
+                        chunk.faceSizes.add(size);
+                        break;
+                    case OBJTokenizer.MTLLIB:
+                        chunk.materialLibraries.add(tokenizer.nextString());
+                        break;
+                    case OBJTokenizer.USEMTL:
+                        chunk.switchFaces.add(chunk.faceSizes.size());
+                        chunk.switchNames.add(tokenizer.nextString());
+                        break;
+                }
+            }
+        } catch (IOException e) {
+            // there is no stream under the byte range
+            throw new UncheckedIOException(e);
+        }
+        return chunk;
+    }
+
+    /**
+     * Relative indices can be resolved only against the chunk's local count.
+     * They are stored as the local 0-based index minus {@link #RELATIVE_BIAS} (always negative),
+     * the local index itself is negative if it points to a previous chunk.
+     * Absolute indices are stored as they are.
+     *
+     * @param index      index from the file
+     * @param localCount count of elements in the chunk so far
+     * @return stored index
+     */
+    private static int resolveIndex(int index, int localCount) {
+        return index < 0 ? localCount + index - RELATIVE_BIAS : index;
+    }
+
+    /**
+     * Copy the chunk to its place in the result and resolve its indices
+     *
+     * @param chunk  parsed chunk
+     * @param result merged data
+     */
+    private static void merge(Chunk chunk, Result result) {
+        System.arraycopy(chunk.positions.array(), 0, result.positions, chunk.positionOffset * 3, chunk.positions.size());
+        System.arraycopy(chunk.texCoords.array(), 0, result.texCoords, chunk.texCoordOffset * 2, chunk.texCoords.size());
+        System.arraycopy(chunk.normals.array(), 0, result.normals, chunk.normalOffset * 3, chunk.normals.size());
+        System.arraycopy(chunk.faceSizes.array(), 0, result.faceSizes, chunk.faceOffset, chunk.faceSizes.size());
+
+        final int[] corners = chunk.corners.array();
+        final int count = chunk.corners.size();
+        final int[] offsets = {chunk.positionOffset, chunk.texCoordOffset, chunk.normalOffset};
+        for (int i = 0; i < count; i++) {
+            final int index = corners[i];
+            final int global;
+            if (index < 0) {
+                global = offsets[i % 3] + index + RELATIVE_BIAS;
+            } else {
+                // 0 means missing index
+                global = index - 1;
+            }
+            result.corners[chunk.cornerOffset + i] = global;
+        }
+
+        int material = chunk.initialMaterial;
+        int nextSwitch = 0;
+        for (int face = 0; face < chunk.faceSizes.size(); face++) {
+            while (nextSwitch < chunk.switchFaces.size() && chunk.switchFaces.get(nextSwitch) == face) {
+                material = chunk.switchMaterials.get(nextSwitch++);
+            }
+            result.faceMaterials[chunk.faceOffset + face] = material;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package lwjglutils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class {@code OBJResidencyManager} keeps only recently viewed models of a rotation in OpenGL memory.
+ * <p>
+ * Models are registered by their paths and loaded by {@link OBJLoadingService} the first time
+ * they are requested by {@link #get(int)} or {@link #preload(int)}. Whenever the estimated resident
+ * size ({@link OBJLoader.Model#getResidentBytes()}) exceeds the budget, the least recently viewed
+ * models are released and dropped, they are loaded again when they are requested. The model viewed
+ * last and models preloaded since then are never evicted, so the budget can be exceeded by them.
+ * <p>
+ * Models drawn from the shared arena ({@link OBJLoader.Model#getArena()}) only return their ranges
+ * to it, so the arena is trimmed after evictions ({@link OGLBufferArena#trim()}) and its buffers
+ * do not stay at their peak size.
+ * <p>
+ * All methods have to be called on the render thread.
+ *
+ * @author Stanislav Čapek
+ * @version 1.0
+ * @see OBJLoadingService
+ */
+public class OBJResidencyManager {
+
+    /**
+     * One model of the rotation
+     */
+    private static class Entry {
+        final String modelPath;
+        final String[] partPaths;
+        OBJLoader.Model model;
+        boolean loading;
+        boolean failed;
+        long residentBytes;
+        long lastViewed;
+        long lastPreloaded;
+
+        Entry(String modelPath, String[] partPaths) {
+            this.modelPath = modelPath;
+            this.partPaths = partPaths;
+        }
+    }
+
+    private final OBJLoadingService loadingService;
+    private final List<Entry> entries = new ArrayList<>();
+    private long budgetBytes;
+    private long clock;
+    private int evictionCount;
+
+    /**
+     * Constructor
+     *
+     * @param loadingService service to load models
+     * @param budgetBytes    memory budget in bytes
+     */
+    public OBJResidencyManager(OBJLoadingService loadingService, long budgetBytes) {
+        this.loadingService = loadingService;
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Register a model, nothing is loaded yet
+     *
+     * @param modelPath relative path of the model
+     * @param partPaths relative paths of the model's parts
+     * @return index of the model
+     */
+    public int add(String modelPath, String... partPaths) {
+        entries.add(new Entry(modelPath, partPaths));
+        return entries.size() - 1;
+    }
+
+    /**
+     * Count of registered models
+     *
+     * @return count
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Return the model for viewing. The model is marked as the most recently viewed
+     * and its loading is started if it is not resident.
+     *
+     * @param index index of the model
+     * @return model or null if it is not loaded yet (or the loading failed)
+     */
+    public OBJLoader.Model get(int index) {
+        final Entry entry = entries.get(index);
+        entry.lastViewed = ++clock;
+        request(entry);
+        return entry.model;
+    }
+
+    /**
+     * Start loading of the model if it is not resident, the model is not marked as viewed
+     *
+     * @param index index of the model
+     */
+    public void preload(int index) {
+        final Entry entry = entries.get(index);
+        entry.lastPreloaded = clock;
+        request(entry);
+    }
+
+    private void request(Entry entry) {
+        if (entry.model != null || entry.loading || entry.failed) {
+            return;
+        }
+        entry.loading = true;
+        loadingService.load(model -> {
+            entry.loading = false;
+            entry.model = model;
+            entry.failed = model == null;
+            entry.residentBytes = model == null ? 0 : model.getResidentBytes();
+            evict();
+        }, entry.modelPath, entry.partPaths);
+    }
+
+    /**
+     * Upload loaded models and evict models over the budget, it is meant to be called once per frame
+     *
+     * @param budgetNanos time budget for uploading in nanoseconds
+     * @see OBJLoadingService#update(long)
+     */
+    public void update(long budgetNanos) {
+        loadingService.update(budgetNanos);
+        for (Entry entry : entries) {
+            if (entry.model != null) {
+                // vertex buffers and display lists are created on the first draw
+                entry.residentBytes = entry.model.getResidentBytes();
+            }
+        }
+        evict();
+    }
+
+    /**
+     * Release the least recently viewed models until the resident size fits the budget,
+     * then trim the shared arena
+     */
+    private void evict() {
+        long resident = getResidentBytes();
+        boolean evicted = false;
+        while (resident > budgetBytes) {
+            Entry victim = null;
+            for (Entry entry : entries) {
+                if (entry.model != null && entry.lastViewed < clock && entry.lastPreloaded < clock
+                        && (victim == null || entry.lastViewed < victim.lastViewed)) {
+                    victim = entry;
+                }
+            }
+            if (victim == null) {
+                break;
+            }
+            victim.model.release();
+            victim.model = null;
+            resident -= victim.residentBytes;
+            victim.residentBytes = 0;
+            evictionCount++;
+            evicted = true;
+        }
+        if (evicted) {
+            OBJLoader.Model.getArena().trim();
+        }
+    }
+
+    /**
+     * Estimated OpenGL memory of all resident models
+     *
+     * @return size in bytes
+     */
+    public long getResidentBytes() {
+        long resident = 0;
+        for (Entry entry : entries) {
+            resident += entry.residentBytes;
+        }
+        return resident;
+    }
+
+    /**
+     * Count of models in OpenGL memory
+     *
+     * @return count
+     */
+    public int getResidentCount() {
+        int count = 0;
+        for (Entry entry : entries) {
+            if (entry.model != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getEvictionCount() {
+        return evictionCount;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * Set the memory budget, models over the budget are evicted on the next update
+     *
+     * @param budgetBytes budget in bytes
+     */
+    public void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+}
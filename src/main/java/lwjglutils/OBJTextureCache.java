@@ -0,0 +1,187 @@
+package lwjglutils;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class {@code OBJTextureCache} shares textures of materials loaded by {@link OBJLoader}.
+ * <p>
+ * Textures are keyed by the canonical resource path (normalized, with '/' separators), so materials
+ * of different models referring to the same image get the same {@link OGLTexture2D} instance.
+ * Every {@link #acquire(String, OGLTexture2D.DecodedImage)} increments the texture's reference count,
+ * every {@link #release(OGLTexture2D)} decrements it, and the OpenGL texture is deleted
+ * when the count drops to zero.
+ * <p>
+ * Loader threads may ask {@link #contains(String)} to skip decoding of images, which are
+ * already resident. All other methods have to be called on the thread with OpenGL context.
+ *
+ * @author Stanislav Čapek
+ * @version 1.0
+ * @see OBJLoader.Material#uploadTextures()
+ */
+public class OBJTextureCache {
+
+    /**
+     * Shared texture with its reference count
+     */
+    private static class Entry {
+        final String path;
+        final OGLTexture2D texture;
+        int references;
+
+        Entry(String path, OGLTexture2D texture) {
+            this.path = path;
+            this.texture = texture;
+        }
+    }
+
+    private static final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private static final Map<OGLTexture2D, Entry> byTexture = new IdentityHashMap<>();
+    private static long hitCount;
+    private static long missCount;
+    private static long bytesSaved;
+
+    /**
+     * Private constructor- utility class
+     */
+    private OBJTextureCache() {
+    }
+
+    /**
+     * Canonical form of a resource path
+     *
+     * @param path resource path
+     * @return normalized path with '/' separators
+     */
+    public static String canonicalPath(String path) {
+        return Paths.get(path).normalize().toString().replace('\\', '/');
+    }
+
+    /**
+     * Check if the texture is resident, so its image does not have to be decoded
+     *
+     * @param path resource path
+     * @return is the texture in the cache
+     */
+    public static boolean contains(String path) {
+        return entries.containsKey(canonicalPath(path));
+    }
+
+    /**
+     * Return the shared texture and increment its reference count. A missing texture is
+     * created from the decoded image, or the image is decoded now if it is null.
+     * The decoded image is always released.
+     *
+     * @param path  resource path
+     * @param image decoded image of the path or null
+     * @return texture or null if the image cannot be loaded
+     */
+    public static OGLTexture2D acquire(String path, OGLTexture2D.DecodedImage image) {
+        final String key = canonicalPath(path);
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (image != null) {
+                image.free();
+            }
+            hitCount++;
+            bytesSaved += sizeInBytes(entry.texture);
+        } else {
+            try {
+                final OGLTexture2D texture = new OGLTexture2D(image != null ? image : OGLTexture2D.decode(path));
+                entry = new Entry(key, texture);
+                entries.put(key, entry);
+                byTexture.put(texture, entry);
+                missCount++;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+        entry.references++;
+        return entry.texture;
+    }
+
+    /**
+     * Decrement the reference count of the texture, the texture is deleted by the last release
+     *
+     * @param texture shared texture
+     * @return false if the texture is not from the cache
+     */
+    public static boolean release(OGLTexture2D texture) {
+        final Entry entry = byTexture.get(texture);
+        if (entry == null) {
+            return false;
+        }
+        if (--entry.references == 0) {
+            entries.remove(entry.path);
+            byTexture.remove(texture);
+            texture.delete();
+        }
+        return true;
+    }
+
+    private static long sizeInBytes(OGLTexture2D texture) {
+        return 4L * texture.getWidth() * texture.getHeight();
+    }
+
+    /**
+     * Count of acquires of an already resident texture
+     *
+     * @return count
+     */
+    public static long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Count of acquires, which had to create a texture
+     *
+     * @return count
+     */
+    public static long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Texture memory (4 bytes per texel) not allocated thanks to hits
+     *
+     * @return size in bytes
+     */
+    public static long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    /**
+     * Count of resident textures
+     *
+     * @return count
+     */
+    public static int getTextureCount() {
+        return entries.size();
+    }
+
+    /**
+     * Texture memory of resident textures (4 bytes per texel)
+     *
+     * @return size in bytes
+     */
+    public static long getResidentBytes() {
+        long size = 0;
+        for (Entry entry : entries.values()) {
+            size += sizeInBytes(entry.texture);
+        }
+        return size;
+    }
+
+    /**
+     * Reset hit, miss and bytes saved counters
+     */
+    public static void resetStatistics() {
+        hitCount = 0;
+        missCount = 0;
+        bytesSaved = 0;
+    }
+}
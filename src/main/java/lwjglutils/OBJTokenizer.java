@@ -0,0 +1,281 @@
+package lwjglutils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Class {@code OBJTokenizer} scans .obj data directly in a byte buffer. It recognizes
+ * record keywords and parses floats and face indices in place, so no intermediate
+ * Strings or arrays are created per line.
+ * <p>
+ * The tokenizer works either over an {@link InputStream} (the buffer is refilled
+ * as lines are consumed) or over a fixed byte range of an already loaded file.
+ *
+ * @author Stanislav Čapek
+ * @version 1.0
+ * @see OBJLoader
+ */
+class OBJTokenizer {
+
+    /**
+     * End of input
+     */
+    static final int EOF = -1;
+    /**
+     * Unknown or ignored record (comments, groups, smoothing...)
+     */
+    static final int OTHER = 0;
+    /**
+     * Vertex position "v"
+     */
+    static final int VERTEX = 1;
+    /**
+     * Texture coordinate "vt"
+     */
+    static final int TEX_COORD = 2;
+    /**
+     * Normal vector "vn"
+     */
+    static final int NORMAL = 3;
+    /**
+     * Face "f"
+     */
+    static final int FACE = 4;
+    /**
+     * Material library "mtllib"
+     */
+    static final int MTLLIB = 5;
+    /**
+     * Material switch "usemtl"
+     */
+    static final int USEMTL = 6;
+
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+    private static final byte[] MTLLIB_KEYWORD = "mtllib".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] USEMTL_KEYWORD = "usemtl".getBytes(StandardCharsets.US_ASCII);
+
+    private final InputStream in;
+    private byte[] buf;
+    private int pos;
+    private int limit;
+    private int lineEnd;
+    private boolean eof;
+
+    /**
+     * Constructor for streaming input
+     *
+     * @param in stream with .obj data
+     */
+    OBJTokenizer(InputStream in) {
+        this.in = in;
+        this.buf = new byte[DEFAULT_BUFFER_SIZE];
+    }
+
+    /**
+     * Constructor for a byte range of a loaded file
+     *
+     * @param data whole data
+     * @param from first byte (inclusive)
+     * @param to   last byte (exclusive)
+     */
+    OBJTokenizer(byte[] data, int from, int to) {
+        this.in = null;
+        this.buf = data;
+        this.pos = from;
+        this.limit = to;
+        this.lineEnd = from;
+        this.eof = true;
+    }
+
+    /**
+     * Moves to the next record and returns its keyword. The position is set
+     * after the keyword, on the first argument.
+     *
+     * @return keyword constant or {@link #EOF}
+     * @throws IOException on a read error
+     */
+    int nextRecord() throws IOException {
+        while (nextLine()) {
+            skipSpaces();
+            if (pos >= lineEnd) {
+                continue;
+            }
+            final int start = pos;
+            while (pos < lineEnd && !isSpace(buf[pos])) {
+                pos++;
+            }
+            final int length = pos - start;
+            final byte first = buf[start];
+
+            if (length == 1) {
+                if (first == 'v') return VERTEX;
+                if (first == 'f') return FACE;
+            } else if (length == 2 && first == 'v') {
+                if (buf[start + 1] == 't') return TEX_COORD;
+                if (buf[start + 1] == 'n') return NORMAL;
+            } else if (length == MTLLIB_KEYWORD.length && matches(start, MTLLIB_KEYWORD)) {
+                return MTLLIB;
+            } else if (length == USEMTL_KEYWORD.length && matches(start, USEMTL_KEYWORD)) {
+                return USEMTL;
+            }
+            return OTHER;
+        }
+        return EOF;
+    }
+
+    /**
+     * Check if there is another token on the current line
+     *
+     * @return true if the line has not been consumed
+     */
+    boolean hasNext() {
+        skipSpaces();
+        return pos < lineEnd;
+    }
+
+    /**
+     * Parse a float value on the current position
+     *
+     * @return float
+     * @see FastNumberParser#parseFloat(byte[], int, int)
+     */
+    float nextFloat() {
+        skipSpaces();
+        final int start = pos;
+        while (pos < lineEnd && !isSpace(buf[pos])) {
+            pos++;
+        }
+        return FastNumberParser.parseFloat(buf, start, pos);
+    }
+
+    /**
+     * Parse an integer value on the current position. Stops on whitespace or '/'.
+     *
+     * @return int, 0 if there is no value
+     */
+    int nextInt() {
+        skipSpaces();
+        final int start = pos;
+        while (pos < lineEnd && buf[pos] != '/' && !isSpace(buf[pos])) {
+            pos++;
+        }
+        return pos == start ? 0 : FastNumberParser.parseInt(buf, start, pos);
+    }
+
+    /**
+     * Parse one face corner in format v, v/vt, v//vn or v/vt/vn.
+     * Missing indices are returned as 0, the indices are not resolved.
+     *
+     * @param corner array of length 3 for position, texture and normal index
+     */
+    void nextCorner(int[] corner) {
+        corner[0] = nextInt();
+        corner[1] = 0;
+        corner[2] = 0;
+        if (pos < lineEnd && buf[pos] == '/') {
+            pos++;
+            if (pos < lineEnd && buf[pos] != '/') {
+                corner[1] = nextInt();
+            }
+            if (pos < lineEnd && buf[pos] == '/') {
+                pos++;
+                corner[2] = nextInt();
+            }
+        }
+        // skip rest of the token (unexpected characters)
+        while (pos < lineEnd && !isSpace(buf[pos])) {
+            pos++;
+        }
+    }
+
+    /**
+     * Return the next token as a string. Meant for rare records like "mtllib" or "usemtl".
+     *
+     * @return token
+     */
+    String nextString() {
+        skipSpaces();
+        final int start = pos;
+        while (pos < lineEnd && !isSpace(buf[pos])) {
+            pos++;
+        }
+        return new String(buf, start, pos - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Move to the beginning of the next line, the buffer is refilled if the line
+     * is not complete.
+     *
+     * @return false on the end of input
+     * @throws IOException on a read error
+     */
+    private boolean nextLine() throws IOException {
+        pos = lineEnd;
+        if (pos < limit && buf[pos] == '\n') {
+            pos++;
+        }
+        int scan = pos;
+        while (true) {
+            while (scan < limit && buf[scan] != '\n') {
+                scan++;
+            }
+            if (scan < limit || eof) {
+                break;
+            }
+            scan -= pos;
+            fill();
+        }
+        if (pos >= limit) {
+            lineEnd = limit;
+            return false;
+        }
+        lineEnd = scan;
+        return true;
+    }
+
+    /**
+     * Drop the consumed data and read more data from the stream
+     *
+     * @throws IOException on a read error
+     */
+    private void fill() throws IOException {
+        final int remaining = limit - pos;
+        if (remaining == buf.length) {
+            // the line is longer than the buffer
+            final byte[] bigger = new byte[buf.length * 2];
+            System.arraycopy(buf, pos, bigger, 0, remaining);
+            buf = bigger;
+        } else if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, remaining);
+        }
+        pos = 0;
+        limit = remaining;
+
+        final int read = in.read(buf, limit, buf.length - limit);
+        if (read < 0) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    private void skipSpaces() {
+        while (pos < lineEnd && isSpace(buf[pos])) {
+            pos++;
+        }
+    }
+
+    private boolean matches(int start, byte[] keyword) {
+        for (int i = 0; i < keyword.length; i++) {
+            if (buf[start + i] != keyword[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\f';
+    }
+}
@@ -0,0 +1,676 @@
+package lwjglutils;
+
+import org.lwjgl.BufferUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.lwjgl.opengl.GL33.*;
+
+/**
+ * Class {@code OGLBufferArena} sub-allocates vertices and indices of many meshes of one vertex format
+ * from a single vertex buffer and a single index buffer, so all of them are drawn from one vertex
+ * array object without rebinding buffers between meshes.
+ * <p>
+ * Free space of both buffers is kept in free lists of blocks sorted by offset. An allocation takes
+ * the first block large enough (first fit), a freed range is merged with its free neighbours.
+ * If no block is large enough, the buffer is compacted when its free space would suffice,
+ * otherwise it grows at least twice; both copy the data on the GPU (glCopyBufferSubData).
+ * Freed ranges stay in the buffers, {@link #trim()} compacts a sparsely used arena and shrinks
+ * its buffers back.
+ * <p>
+ * Indices of an allocation are relative to its first vertex and they are drawn by
+ * glDrawElementsBaseVertex, see {@link #drawElements(Allocation, int, int)}. Compaction moves
+ * allocations, so their offsets are to be read on every draw, not cached.
+ * <p>
+ * Buffers are created on the first allocation, all methods except of metrics have to be called
+ * on the thread with OpenGL context.
+ *
+ * @author Stanislav Čapek
+ * @version 1.0
+ * @see OBJLoader.RenderMode#ARENA
+ */
+public class OGLBufferArena {
+
+    /**
+     * Utilization under which {@link #trim()} shrinks the buffers
+     */
+    public static final double TRIM_UTILIZATION = 0.5;
+    /**
+     * Free space left in the buffers by {@link #trim()}, relative to the used space
+     */
+    public static final double TRIM_HEADROOM = 0.25;
+
+    /**
+     * Class {@code Allocation} is a range of vertices and a range of indices of one mesh in the arena
+     */
+    public static class Allocation {
+
+        private final int vertexCount;
+        private final int indexCount;
+        private final int bytesPerVertex;
+        private int baseVertex;
+        private int firstIndex;
+        private boolean freed;
+
+        private Allocation(int vertexCount, int indexCount, int bytesPerVertex) {
+            this.vertexCount = vertexCount;
+            this.indexCount = indexCount;
+            this.bytesPerVertex = bytesPerVertex;
+        }
+
+        /**
+         * Return the first vertex in the arena's vertex buffer, it is added to every index
+         *
+         * @return base vertex
+         */
+        public int getBaseVertex() {
+            return baseVertex;
+        }
+
+        /**
+         * Return the first index in the arena's index buffer
+         *
+         * @return first index
+         */
+        public int getFirstIndex() {
+            return firstIndex;
+        }
+
+        public int getVertexCount() {
+            return vertexCount;
+        }
+
+        public int getIndexCount() {
+            return indexCount;
+        }
+
+        /**
+         * Size of vertices and indices of the allocation
+         *
+         * @return size in bytes
+         */
+        public long getSizeInBytes() {
+            return (long) vertexCount * bytesPerVertex + (long) indexCount * Integer.BYTES;
+        }
+
+        public boolean isFreed() {
+            return freed;
+        }
+    }
+
+    /**
+     * Free blocks (offset to size) of a buffer in units of vertices or indices
+     */
+    private static class FreeList {
+
+        private final TreeMap<Integer, Integer> blocks = new TreeMap<>();
+        private int capacity;
+        private int free;
+
+        FreeList(int capacity) {
+            this.capacity = capacity;
+            reset(0);
+        }
+
+        /**
+         * Take the first block large enough
+         *
+         * @return offset or -1 if there is no such block
+         */
+        int allocate(int size) {
+            for (Map.Entry<Integer, Integer> block : blocks.entrySet()) {
+                final int offset = block.getKey();
+                final int blockSize = block.getValue();
+                if (blockSize >= size) {
+                    // the entry must not be read after removal, TreeMap may reuse it
+                    blocks.remove(offset);
+                    if (blockSize > size) {
+                        blocks.put(offset + size, blockSize - size);
+                    }
+                    free -= size;
+                    return offset;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Return a range, it is merged with the free blocks before and after it
+         */
+        void free(int offset, int size) {
+            int start = offset;
+            int end = offset + size;
+            final Map.Entry<Integer, Integer> lower = blocks.floorEntry(offset);
+            if (lower != null && lower.getKey() + lower.getValue() == start) {
+                start = lower.getKey();
+                blocks.remove(start);
+            }
+            final Integer higher = blocks.remove(end);
+            if (higher != null) {
+                end += higher;
+            }
+            blocks.put(start, end - start);
+            free += size;
+        }
+
+        void grow(int newCapacity) {
+            final int oldCapacity = capacity;
+            capacity = newCapacity;
+            free(oldCapacity, newCapacity - oldCapacity);
+        }
+
+        /**
+         * Cut the free block at the end, the list has to be compact
+         */
+        void shrink(int newCapacity) {
+            final int used = capacity - free;
+            capacity = newCapacity;
+            reset(used);
+        }
+
+        /**
+         * Make everything behind the first used units free
+         */
+        void reset(int used) {
+            blocks.clear();
+            if (capacity > used) {
+                blocks.put(used, capacity - used);
+            }
+            free = capacity - used;
+        }
+
+        /**
+         * Check if the only free block (if any) is at the end
+         */
+        boolean isCompact() {
+            return blocks.isEmpty() || (blocks.size() == 1 && blocks.firstKey() + blocks.firstEntry().getValue() == capacity);
+        }
+
+        int getLargest() {
+            int largest = 0;
+            for (int size : blocks.values()) {
+                largest = Math.max(largest, size);
+            }
+            return largest;
+        }
+
+        double getFragmentation() {
+            return free == 0 ? 0 : 1 - getLargest() / (double) free;
+        }
+    }
+
+    private final int bytesPerVertex;
+    private final OGLBuffers.Attrib[] attributes;
+    private final int minVertexCapacity;
+    private final int minIndexCapacity;
+    private final FreeList vertices;
+    private final FreeList indices;
+    private final Set<Allocation> allocations = new LinkedHashSet<>();
+    private int vertexBuffer;
+    private int indexBuffer;
+    private OGLBuffers view;
+    private int fixedFunctionVertexArray;
+    private final Map<Integer, Integer> programVertexArrays = new HashMap<>();
+    private int growCount;
+    private int compactionCount;
+    private int shrinkCount;
+
+    /**
+     * Constructor, buffers are created on the first allocation
+     *
+     * @param bytesPerVertex stride of vertices
+     * @param attributes     attributes of vertices
+     * @param vertexCapacity initial count of vertices
+     * @param indexCapacity  initial count of indices
+     */
+    public OGLBufferArena(int bytesPerVertex, OGLBuffers.Attrib[] attributes, int vertexCapacity, int indexCapacity) {
+        this.bytesPerVertex = bytesPerVertex;
+        this.attributes = attributes;
+        this.minVertexCapacity = Math.max(vertexCapacity, 1);
+        this.minIndexCapacity = Math.max(indexCapacity, 1);
+        this.vertices = new FreeList(minVertexCapacity);
+        this.indices = new FreeList(minIndexCapacity);
+    }
+
+    /**
+     * Allocate and upload a mesh of float attributes. A direct buffer is uploaded as it is, a heap
+     * buffer by its backing array if it covers the whole array, otherwise it is copied.
+     *
+     * @param vertexData vertex data from position to limit
+     * @param indexData  indices relative to the first vertex, from position to limit
+     * @return new allocation
+     */
+    public Allocation allocate(FloatBuffer vertexData, IntBuffer indexData) {
+        final Allocation allocation = reserve(vertexData.remaining() * Float.BYTES, indexData.remaining());
+        glBindBuffer(GL_COPY_WRITE_BUFFER, vertexBuffer);
+        final long offset = (long) allocation.baseVertex * bytesPerVertex;
+        if (vertexData.isDirect()) {
+            glBufferSubData(GL_COPY_WRITE_BUFFER, offset, vertexData);
+        } else if (vertexData.hasArray() && vertexData.arrayOffset() + vertexData.position() == 0
+                && vertexData.remaining() == vertexData.array().length) {
+            glBufferSubData(GL_COPY_WRITE_BUFFER, offset, vertexData.array());
+        } else {
+            glBufferSubData(GL_COPY_WRITE_BUFFER, offset, (FloatBuffer) BufferUtils
+                    .createFloatBuffer(vertexData.remaining()).put(vertexData.duplicate()).rewind());
+        }
+        uploadIndices(allocation, indexData);
+        return allocation;
+    }
+
+    /**
+     * Allocate and upload a mesh of attributes of any type, a heap buffer is copied
+     *
+     * @param vertexData vertex data from position to limit
+     * @param indexData  indices relative to the first vertex, from position to limit
+     * @return new allocation
+     */
+    public Allocation allocate(ByteBuffer vertexData, IntBuffer indexData) {
+        final Allocation allocation = reserve(vertexData.remaining(), indexData.remaining());
+        glBindBuffer(GL_COPY_WRITE_BUFFER, vertexBuffer);
+        glBufferSubData(GL_COPY_WRITE_BUFFER, (long) allocation.baseVertex * bytesPerVertex, vertexData.isDirect()
+                ? vertexData
+                : (ByteBuffer) BufferUtils.createByteBuffer(vertexData.remaining()).put(vertexData.duplicate()).rewind());
+        uploadIndices(allocation, indexData);
+        return allocation;
+    }
+
+    private void uploadIndices(Allocation allocation, IntBuffer indexData) {
+        glBindBuffer(GL_COPY_WRITE_BUFFER, indexBuffer);
+        final long offset = (long) allocation.firstIndex * Integer.BYTES;
+        if (indexData.isDirect()) {
+            glBufferSubData(GL_COPY_WRITE_BUFFER, offset, indexData);
+        } else if (indexData.hasArray() && indexData.arrayOffset() + indexData.position() == 0
+                && indexData.remaining() == indexData.array().length) {
+            glBufferSubData(GL_COPY_WRITE_BUFFER, offset, indexData.array());
+        } else {
+            glBufferSubData(GL_COPY_WRITE_BUFFER, offset, (IntBuffer) BufferUtils
+                    .createIntBuffer(indexData.remaining()).put(indexData.duplicate()).rewind());
+        }
+        glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+    }
+
+    /**
+     * Find space for the mesh, compact or grow buffers if needed
+     */
+    private Allocation reserve(int vertexBytes, int indexCount) {
+        if (vertexBytes % bytesPerVertex != 0) {
+            throw new RuntimeException(
+                    "The total number of bytes is incongruent with the number of bytes per vertex.");
+        }
+        final int vertexCount = vertexBytes / bytesPerVertex;
+        if (vertexCount == 0 || indexCount == 0) {
+            throw new IllegalArgumentException("Empty mesh");
+        }
+        if (vertexBuffer == 0) {
+            vertexBuffer = createBuffer((long) vertices.capacity * bytesPerVertex);
+            indexBuffer = createBuffer((long) indices.capacity * Integer.BYTES);
+        }
+        final Allocation allocation = new Allocation(vertexCount, indexCount, bytesPerVertex);
+        allocation.baseVertex = reserve(true, vertexCount);
+        allocation.firstIndex = reserve(false, indexCount);
+        allocations.add(allocation);
+        return allocation;
+    }
+
+    private int reserve(boolean vertexSpace, int size) {
+        final FreeList space = vertexSpace ? vertices : indices;
+        int offset = space.allocate(size);
+        if (offset < 0 && space.free >= size) {
+            compact(vertexSpace);
+            offset = space.allocate(size);
+        }
+        if (offset < 0) {
+            grow(vertexSpace, Math.max(space.capacity * 2, space.capacity + size));
+            offset = space.allocate(size);
+        }
+        return offset;
+    }
+
+    private static int createBuffer(long size) {
+        final int buffer = glGenBuffers();
+        glBindBuffer(GL_COPY_WRITE_BUFFER, buffer);
+        glBufferData(GL_COPY_WRITE_BUFFER, size, GL_STATIC_DRAW);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+        return buffer;
+    }
+
+    /**
+     * Replace a buffer by a larger one with the same content
+     */
+    private void grow(boolean vertexSpace, int newCapacity) {
+        final FreeList space = vertexSpace ? vertices : indices;
+        replaceBuffer(vertexSpace, newCapacity, space.capacity);
+        space.grow(newCapacity);
+        growCount++;
+    }
+
+    /**
+     * Replace a compact buffer by a smaller one with the same allocations
+     */
+    private void shrink(boolean vertexSpace, int newCapacity) {
+        final FreeList space = vertexSpace ? vertices : indices;
+        replaceBuffer(vertexSpace, newCapacity, space.capacity - space.free);
+        space.shrink(newCapacity);
+    }
+
+    /**
+     * Create a buffer of the new capacity and copy the first units of the old one into it
+     */
+    private void replaceBuffer(boolean vertexSpace, int newCapacity, int copiedUnits) {
+        final int unit = vertexSpace ? bytesPerVertex : Integer.BYTES;
+        final int oldBuffer = vertexSpace ? vertexBuffer : indexBuffer;
+        final int buffer = createBuffer((long) newCapacity * unit);
+        glBindBuffer(GL_COPY_READ_BUFFER, oldBuffer);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, buffer);
+        if (copiedUnits > 0) {
+            glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER, 0, 0, (long) copiedUnits * unit);
+        }
+        glBindBuffer(GL_COPY_READ_BUFFER, 0);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+        glDeleteBuffers(oldBuffer);
+        if (vertexSpace) {
+            vertexBuffer = buffer;
+        } else {
+            indexBuffer = buffer;
+        }
+        deleteVertexArrays();
+    }
+
+    /**
+     * Compact the arena and shrink its buffers to the used space with {@link #TRIM_HEADROOM},
+     * if its utilization is below {@link #TRIM_UTILIZATION}. Buffers never get smaller than
+     * the initial capacities. It is meant to be called after allocations are freed, so the GPU
+     * memory does not stay at its peak. Offsets of allocations change.
+     *
+     * @return buffers were shrunk
+     */
+    public boolean trim() {
+        if (vertexBuffer == 0 || getUtilization() >= TRIM_UTILIZATION) {
+            return false;
+        }
+        final int vertexCapacity = trimmedCapacity(vertices, minVertexCapacity);
+        final int indexCapacity = trimmedCapacity(indices, minIndexCapacity);
+        if (vertexCapacity == vertices.capacity && indexCapacity == indices.capacity) {
+            return false;
+        }
+        compact();
+        if (vertexCapacity < vertices.capacity) {
+            shrink(true, vertexCapacity);
+        }
+        if (indexCapacity < indices.capacity) {
+            shrink(false, indexCapacity);
+        }
+        shrinkCount++;
+        return true;
+    }
+
+    private static int trimmedCapacity(FreeList space, int minCapacity) {
+        final long used = space.capacity - space.free;
+        final long capacity = Math.max(minCapacity, used + (long) Math.ceil(used * TRIM_HEADROOM));
+        return (int) Math.min(capacity, space.capacity);
+    }
+
+    /**
+     * Move all allocations to the beginning of both buffers, so the free space is one block
+     * at the end. Offsets of allocations change.
+     */
+    public void compact() {
+        if (vertexBuffer != 0) {
+            compact(true);
+            compact(false);
+        }
+    }
+
+    private void compact(boolean vertexSpace) {
+        final FreeList space = vertexSpace ? vertices : indices;
+        if (space.isCompact()) {
+            return;
+        }
+        final int unit = vertexSpace ? bytesPerVertex : Integer.BYTES;
+        final int oldBuffer = vertexSpace ? vertexBuffer : indexBuffer;
+        final List<Allocation> sorted = new ArrayList<>(allocations);
+        sorted.sort(Comparator.comparingInt(a -> vertexSpace ? a.baseVertex : a.firstIndex));
+
+        // copied into a new buffer, ranges of copying inside of one buffer must not overlap
+        final int buffer = createBuffer((long) space.capacity * unit);
+        glBindBuffer(GL_COPY_READ_BUFFER, oldBuffer);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, buffer);
+        int used = 0;
+        for (Allocation allocation : sorted) {
+            final int offset = vertexSpace ? allocation.baseVertex : allocation.firstIndex;
+            final int size = vertexSpace ? allocation.vertexCount : allocation.indexCount;
+            glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER,
+                    (long) offset * unit, (long) used * unit, (long) size * unit);
+            if (vertexSpace) {
+                allocation.baseVertex = used;
+            } else {
+                allocation.firstIndex = used;
+            }
+            used += size;
+        }
+        glBindBuffer(GL_COPY_READ_BUFFER, 0);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+        glDeleteBuffers(oldBuffer);
+        if (vertexSpace) {
+            vertexBuffer = buffer;
+        } else {
+            indexBuffer = buffer;
+        }
+        space.reset(used);
+        compactionCount++;
+        deleteVertexArrays();
+    }
+
+    /**
+     * Return the ranges of the allocation to the free lists, freeing twice is ignored
+     *
+     * @param allocation allocation of this arena
+     */
+    public void free(Allocation allocation) {
+        if (!allocations.remove(allocation)) {
+            return;
+        }
+        vertices.free(allocation.baseVertex, allocation.vertexCount);
+        indices.free(allocation.firstIndex, allocation.indexCount);
+        allocation.freed = true;
+    }
+
+    /**
+     * Buffers of the arena as {@link OGLBuffers}, valid until the next allocation, compaction or deletion
+     *
+     * @return view of the buffers
+     */
+    private OGLBuffers getView() {
+        if (view == null) {
+            view = new OGLBuffers(vertexBuffer, vertices.capacity, bytesPerVertex, attributes,
+                    indexBuffer, indices.capacity);
+        }
+        return view;
+    }
+
+    /**
+     * Bind a vertex array object of the buffers bound to fixed-function client arrays,
+     * see {@link OGLBuffers#bindFixedFunction()}
+     */
+    public void bindFixedFunction() {
+        if (fixedFunctionVertexArray == 0) {
+            fixedFunctionVertexArray = glGenVertexArrays();
+            glBindVertexArray(fixedFunctionVertexArray);
+            getView().bindFixedFunction();
+            glBindVertexArray(0);
+            getView().unbindFixedFunction();
+            glBindBuffer(GL_ARRAY_BUFFER, 0);
+        }
+        glBindVertexArray(fixedFunctionVertexArray);
+    }
+
+    /**
+     * Bind a vertex array object of the buffers bound to attributes of the shader program,
+     * see {@link OGLBuffers#bind(int)}
+     *
+     * @param shaderProgram shader program
+     */
+    public void bind(int shaderProgram) {
+        Integer vertexArray = programVertexArrays.get(shaderProgram);
+        if (vertexArray == null) {
+            vertexArray = glGenVertexArrays();
+            glBindVertexArray(vertexArray);
+            getView().bind(shaderProgram);
+            glBindVertexArray(0);
+            glBindBuffer(GL_ARRAY_BUFFER, 0);
+            programVertexArrays.put(shaderProgram, vertexArray);
+        }
+        glBindVertexArray(vertexArray);
+    }
+
+    /**
+     * Draw triangles of the allocation, a vertex array object of the arena has to be bound
+     *
+     * @param allocation allocation of this arena
+     * @param first      first index relative to the allocation
+     * @param count      count of indices
+     */
+    public void drawElements(Allocation allocation, int first, int count) {
+        glDrawElementsBaseVertex(GL_TRIANGLES, count, GL_UNSIGNED_INT,
+                (long) (allocation.firstIndex + first) * Integer.BYTES, allocation.baseVertex);
+    }
+
+    private void deleteVertexArrays() {
+        if (fixedFunctionVertexArray != 0) {
+            glDeleteVertexArrays(fixedFunctionVertexArray);
+            fixedFunctionVertexArray = 0;
+        }
+        for (int vertexArray : programVertexArrays.values()) {
+            glDeleteVertexArrays(vertexArray);
+        }
+        programVertexArrays.clear();
+        view = null;
+    }
+
+    /**
+     * Delete the buffers, all allocations are freed. The arena can be used again,
+     * buffers of the current capacity are created on the next allocation.
+     */
+    public void delete() {
+        deleteVertexArrays();
+        if (vertexBuffer != 0) {
+            glDeleteBuffers(vertexBuffer);
+            glDeleteBuffers(indexBuffer);
+            vertexBuffer = 0;
+            indexBuffer = 0;
+        }
+        for (Allocation allocation : allocations) {
+            allocation.freed = true;
+        }
+        allocations.clear();
+        vertices.reset(0);
+        indices.reset(0);
+    }
+
+    public int getAllocationCount() {
+        return allocations.size();
+    }
+
+    public int getVertexCapacity() {
+        return vertices.capacity;
+    }
+
+    public int getUsedVertexCount() {
+        return vertices.capacity - vertices.free;
+    }
+
+    public int getIndexCapacity() {
+        return indices.capacity;
+    }
+
+    public int getUsedIndexCount() {
+        return indices.capacity - indices.free;
+    }
+
+    /**
+     * Size of both buffers
+     *
+     * @return size in bytes
+     */
+    public long getSizeInBytes() {
+        return (long) vertices.capacity * bytesPerVertex + (long) indices.capacity * Integer.BYTES;
+    }
+
+    /**
+     * Size of allocated vertices and indices
+     *
+     * @return size in bytes
+     */
+    public long getUsedBytes() {
+        return (long) getUsedVertexCount() * bytesPerVertex + (long) getUsedIndexCount() * Integer.BYTES;
+    }
+
+    /**
+     * Allocated part of both buffers
+     *
+     * @return utilization from 0 to 1
+     */
+    public double getUtilization() {
+        return getUsedBytes() / (double) getSizeInBytes();
+    }
+
+    /**
+     * Fragmentation of free vertices, 1 - largest free block / all free space
+     *
+     * @return 0 if the free space is one block, close to 1 if it is split into many small blocks
+     */
+    public double getVertexFragmentation() {
+        return vertices.getFragmentation();
+    }
+
+    /**
+     * Fragmentation of free indices, 1 - largest free block / all free space
+     *
+     * @return 0 if the free space is one block, close to 1 if it is split into many small blocks
+     */
+    public double getIndexFragmentation() {
+        return indices.getFragmentation();
+    }
+
+    /**
+     * Count of free blocks in both buffers
+     *
+     * @return count of blocks
+     */
+    public int getFreeBlockCount() {
+        return vertices.blocks.size() + indices.blocks.size();
+    }
+
+    public int getGrowCount() {
+        return growCount;
+    }
+
+    public int getCompactionCount() {
+        return compactionCount;
+    }
+
+    public int getShrinkCount() {
+        return shrinkCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "OGLBufferArena{allocations=%d, vertices=%d/%d, indices=%d/%d, "
+                        + "utilization=%.1f %%, fragmentation=%.1f/%.1f %%, free blocks=%d, grown=%d, compacted=%d, "
+                        + "shrunk=%d}",
+                getAllocationCount(), getUsedVertexCount(), getVertexCapacity(), getUsedIndexCount(), getIndexCapacity(),
+                getUtilization() * 100, getVertexFragmentation() * 100, getIndexFragmentation() * 100,
+                getFreeBlockCount(), growCount, compactionCount, shrinkCount);
+    }
+}
@@ -2,6 +2,7 @@ package lwjglutils;
 
 import org.lwjgl.BufferUtils;
 
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
@@ -15,6 +16,8 @@ public class OGLBuffers {
 		int dimension;
 		boolean normalize = false;
 		int offset = -1;
+		int type = GL_FLOAT;
+		boolean integer = false;
 
 		public Attrib(String name, int dimension) {
 			this.name = name;
@@ -39,13 +42,54 @@ public class OGLBuffers {
 			this.normalize = normalize;
 			this.offset = 4 * offsetInFloats;
 		}
+
+		/**
+		 * Attribute of a non-float component type, e.g. GL_UNSIGNED_SHORT or GL_BYTE
+		 *
+		 * @param name      attribute's name
+		 * @param dimension count of components
+		 * @param type      OpenGL type of a component
+		 * @param normalize map integer components to [0, 1] (unsigned) or [-1, 1] (signed) floats
+		 * @param integer   pass integer components to an integer shader input (ivec, uvec)
+		 *                  by glVertexAttribIPointer, normalize is then ignored
+		 */
+		public Attrib(String name, int dimension, int type, boolean normalize, boolean integer) {
+			this.name = name;
+			this.dimension = dimension;
+			this.type = type;
+			this.normalize = normalize;
+			this.integer = integer;
+		}
+
+		/**
+		 * Size of the attribute in a vertex
+		 *
+		 * @return size in bytes
+		 */
+		public int getSizeInBytes() {
+			switch (type) {
+			case GL_BYTE:
+			case GL_UNSIGNED_BYTE:
+				return dimension;
+			case GL_SHORT:
+			case GL_UNSIGNED_SHORT:
+			case GL_HALF_FLOAT:
+				return 2 * dimension;
+			case GL_DOUBLE:
+				return 8 * dimension;
+			default:
+				return 4 * dimension;
+			}
+		}
 		
 		@Override
 		public String toString() {
 			return String.format(Locale.US, 
 					 "new Attrib( /*name:*/ " + name +
 					 ", /*dimension:*/ "+ dimension + 
+					 ", /*type:*/ " + type +
 					 ", /*normalize:*/ " + normalize +
+					 ", /*integer:*/ " + integer +
 					 ", /*offset:*/ " + offset + ")");
 		}
 	}
@@ -92,6 +136,59 @@ public class OGLBuffers {
 			setIndexBuffer(indexData);
 	}
 
+	public OGLBuffers(ByteBuffer vertexData, int bytesPerVertex, Attrib[] attributes, int[] indexData) {
+		addVertexBuffer(vertexData, bytesPerVertex, attributes);
+		if (indexData != null)
+			setIndexBuffer(indexData);
+	}
+
+	/**
+	 * Buffers uploaded from NIO buffers, direct buffers are passed to OpenGL without copying
+	 *
+	 * @param vertexData      vertex data from position to limit
+	 * @param floatsPerVertex stride in floats
+	 * @param attributes      attributes
+	 * @param indexData       indices from position to limit, can be null
+	 */
+	public OGLBuffers(FloatBuffer vertexData, int floatsPerVertex, Attrib[] attributes, IntBuffer indexData) {
+		addVertexBuffer(vertexData, floatsPerVertex, attributes);
+		if (indexData != null)
+			setIndexBuffer(indexData);
+	}
+
+	/**
+	 * Buffers uploaded from NIO buffers, direct buffers are passed to OpenGL without copying
+	 *
+	 * @param vertexData     vertex data from position to limit
+	 * @param bytesPerVertex stride
+	 * @param attributes     attributes
+	 * @param indexData      indices from position to limit, can be null
+	 */
+	public OGLBuffers(ByteBuffer vertexData, int bytesPerVertex, Attrib[] attributes, IntBuffer indexData) {
+		addVertexBuffer(vertexData, bytesPerVertex, attributes);
+		if (indexData != null)
+			setIndexBuffer(indexData);
+	}
+
+	/**
+	 * View of existing buffer objects, which are owned by someone else (e.g. {@link OGLBufferArena}),
+	 * {@link #delete()} must not be called on it
+	 *
+	 * @param vertexBufferID vertex buffer
+	 * @param vertexCount    count of vertices in the vertex buffer
+	 * @param bytesPerVertex stride
+	 * @param attributes     attributes
+	 * @param indexBufferID  index buffer, can be 0
+	 * @param indexCount     count of indices in the index buffer
+	 */
+	OGLBuffers(int vertexBufferID, int vertexCount, int bytesPerVertex, Attrib[] attributes,
+			int indexBufferID, int indexCount) {
+		this.vertexCount = vertexCount;
+		vertexBuffers.add(new VertexBuffer(vertexBufferID, bytesPerVertex, attributes));
+		this.indexBuffer = indexBufferID;
+		this.indexCount = indexCount;
+	}
+
 	public void addVertexBuffer(float[] data, Attrib[] attributes) {
 		if (attributes == null || attributes.length == 0)
 			return;
@@ -105,31 +202,115 @@ public class OGLBuffers {
 
 	public void addVertexBuffer(float[] data, int floatsPerVertex, Attrib[] attributes) {
 		
-		FloatBuffer buffer = (FloatBuffer) BufferUtils.createFloatBuffer(data.length)
-				.put(data).rewind();
 		int bufferID = glGenBuffers();
 		glBindBuffer(GL_ARRAY_BUFFER, bufferID);
-		glBufferData(GL_ARRAY_BUFFER, buffer, GL_STATIC_DRAW);
+		// the array is read by the driver, no temporary native buffer
+		glBufferData(GL_ARRAY_BUFFER, data, GL_STATIC_DRAW);
+
+		addVertexBuffer(bufferID, data.length, floatsPerVertex, attributes);
+	}
+
+	public void addVertexBuffer(FloatBuffer data, Attrib[] attributes) {
+		if (attributes == null || attributes.length == 0)
+			return;
+
+		int floatsPerVertex = 0;
+		for (int i = 0; i < attributes.length; i++)
+			floatsPerVertex += attributes[i].dimension;
+
+		addVertexBuffer(data, floatsPerVertex, attributes);
+	}
+
+	/**
+	 * Add a vertex buffer of interleaved float attributes. A direct buffer is uploaded as it is,
+	 * a heap buffer by its backing array if it covers the whole array, otherwise it is copied.
+	 *
+	 * @param data            vertex data from position to limit
+	 * @param floatsPerVertex stride in floats
+	 * @param attributes      attributes
+	 */
+	public void addVertexBuffer(FloatBuffer data, int floatsPerVertex, Attrib[] attributes) {
+		int bufferID = glGenBuffers();
+		glBindBuffer(GL_ARRAY_BUFFER, bufferID);
+		if (data.isDirect())
+			glBufferData(GL_ARRAY_BUFFER, data, GL_STATIC_DRAW);
+		else if (data.hasArray() && data.arrayOffset() + data.position() == 0
+				&& data.remaining() == data.array().length)
+			glBufferData(GL_ARRAY_BUFFER, data.array(), GL_STATIC_DRAW);
+		else
+			glBufferData(GL_ARRAY_BUFFER, (FloatBuffer) BufferUtils.createFloatBuffer(data.remaining())
+					.put(data.duplicate()).rewind(), GL_STATIC_DRAW);
+
+		addVertexBuffer(bufferID, data.remaining(), floatsPerVertex, attributes);
+	}
 
-		if (data.length % floatsPerVertex != 0)
+	private void addVertexBuffer(int bufferID, int floatCount, int floatsPerVertex, Attrib[] attributes) {
+		if (floatCount % floatsPerVertex != 0)
 			throw new RuntimeException(
 					"The total number of floats is incongruent with the number of floats per vertex.");
 		if (vertexCount < 0)
-			vertexCount = data.length / floatsPerVertex;
-		else if (vertexCount != data.length / floatsPerVertex)
+			vertexCount = floatCount / floatsPerVertex;
+		else if (vertexCount != floatCount / floatsPerVertex)
 			System.out.println("Warning: GLBuffers.addVertexBuffer: vertex count differs from the first one.");
 
 		vertexBuffers.add(new VertexBuffer(bufferID, floatsPerVertex * 4, attributes));
 	}
 
+	/**
+	 * Add a vertex buffer of interleaved attributes of any type, the attributes' offsets
+	 * (unless set) follow their sizes given by {@link Attrib#getSizeInBytes()}
+	 *
+	 * @param data           vertex data from position to limit
+	 * @param bytesPerVertex stride
+	 * @param attributes     attributes
+	 */
+	public void addVertexBuffer(ByteBuffer data, int bytesPerVertex, Attrib[] attributes) {
+		ByteBuffer buffer = data;
+		if (!data.isDirect()) {
+			buffer = (ByteBuffer) BufferUtils.createByteBuffer(data.remaining())
+					.put(data.duplicate()).rewind();
+		}
+		int bufferID = glGenBuffers();
+		glBindBuffer(GL_ARRAY_BUFFER, bufferID);
+		glBufferData(GL_ARRAY_BUFFER, buffer, GL_STATIC_DRAW);
+
+		if (data.remaining() % bytesPerVertex != 0)
+			throw new RuntimeException(
+					"The total number of bytes is incongruent with the number of bytes per vertex.");
+		if (vertexCount < 0)
+			vertexCount = data.remaining() / bytesPerVertex;
+		else if (vertexCount != data.remaining() / bytesPerVertex)
+			System.out.println("Warning: GLBuffers.addVertexBuffer: vertex count differs from the first one.");
+
+		vertexBuffers.add(new VertexBuffer(bufferID, bytesPerVertex, attributes));
+	}
+
 	public void setIndexBuffer(int[] data) {
 		indexCount = data.length;
-		IntBuffer indexBufferBuffer = (IntBuffer) BufferUtils.createIntBuffer(indexCount)
-				.put(data).rewind();
 		indexBuffer = glGenBuffers();
 		glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indexBuffer);
-		glBufferData(GL_ELEMENT_ARRAY_BUFFER, indexBufferBuffer,
-				GL_STATIC_DRAW);
+		// the array is read by the driver, no temporary native buffer
+		glBufferData(GL_ELEMENT_ARRAY_BUFFER, data, GL_STATIC_DRAW);
+	}
+
+	/**
+	 * Set the index buffer. A direct buffer is uploaded as it is, a heap buffer by its backing
+	 * array if it covers the whole array, otherwise it is copied.
+	 *
+	 * @param data indices from position to limit
+	 */
+	public void setIndexBuffer(IntBuffer data) {
+		indexCount = data.remaining();
+		indexBuffer = glGenBuffers();
+		glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indexBuffer);
+		if (data.isDirect())
+			glBufferData(GL_ELEMENT_ARRAY_BUFFER, data, GL_STATIC_DRAW);
+		else if (data.hasArray() && data.arrayOffset() + data.position() == 0
+				&& data.remaining() == data.array().length)
+			glBufferData(GL_ELEMENT_ARRAY_BUFFER, data.array(), GL_STATIC_DRAW);
+		else
+			glBufferData(GL_ELEMENT_ARRAY_BUFFER, (IntBuffer) BufferUtils.createIntBuffer(indexCount)
+					.put(data.duplicate()).rewind(), GL_STATIC_DRAW);
 	}
 
 	public void bind(int shaderProgram) {
@@ -142,14 +323,18 @@ public class OGLBuffers {
 			int offset = 0;
 			for (int j = 0; j < vb.attributes.length; j++) {
 				int location = glGetAttribLocation(shaderProgram, vb.attributes[j].name);
+				Attrib attrib = vb.attributes[j];
 				if (location >= 0) {// due to optimization GLSL on a graphic card
 					attribArrays.add(location);
 					glEnableVertexAttribArray(location);
-					glVertexAttribPointer(location, vb.attributes[j].dimension, GL_FLOAT,
-							vb.attributes[j].normalize, vb.stride,
-							vb.attributes[j].offset < 0 ? offset : vb.attributes[j].offset);
+					long pointer = attrib.offset < 0 ? offset : attrib.offset;
+					if (attrib.integer)
+						glVertexAttribIPointer(location, attrib.dimension, attrib.type, vb.stride, pointer);
+					else
+						glVertexAttribPointer(location, attrib.dimension, attrib.type,
+								attrib.normalize, vb.stride, pointer);
 				}
-				offset += 4 * vb.attributes[j].dimension;
+				offset += attrib.getSizeInBytes();
 			}
 		}
 
@@ -158,6 +343,92 @@ public class OGLBuffers {
 
 	}
 
+	/**
+	 * Bind vertex buffers to fixed-function client arrays (no shader program).
+	 * Attributes are matched by name: inPosition to the vertex array, inNormal to the
+	 * normal array, inTexCoord to the texture coordinate array and inColor to the color
+	 * array. Other attributes are ignored, as well as normals, which are not 3D (they need
+	 * a shader to be decoded). Fixed-function arrays do not normalize integer components
+	 * except of normals and colors.
+	 */
+	public void bindFixedFunction() {
+		for (VertexBuffer vb : vertexBuffers) {
+			glBindBuffer(GL_ARRAY_BUFFER, vb.id);
+			int offset = 0;
+			for (int j = 0; j < vb.attributes.length; j++) {
+				Attrib attrib = vb.attributes[j];
+				long pointer = attrib.offset < 0 ? offset : attrib.offset;
+				switch (attrib.name) {
+				case "inPosition":
+					glEnableClientState(GL_VERTEX_ARRAY);
+					glVertexPointer(attrib.dimension, attrib.type, vb.stride, pointer);
+					break;
+				case "inNormal":
+					if (attrib.dimension == 3) {
+						glEnableClientState(GL_NORMAL_ARRAY);
+						glNormalPointer(attrib.type, vb.stride, pointer);
+					}
+					break;
+				case "inTexCoord":
+					glEnableClientState(GL_TEXTURE_COORD_ARRAY);
+					glTexCoordPointer(attrib.dimension, attrib.type, vb.stride, pointer);
+					break;
+				case "inColor":
+					glEnableClientState(GL_COLOR_ARRAY);
+					glColorPointer(attrib.dimension, attrib.type, vb.stride, pointer);
+					break;
+				}
+				offset += attrib.getSizeInBytes();
+			}
+		}
+
+		if (indexBuffer != 0)
+			glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indexBuffer);
+	}
+
+	public void unbindFixedFunction() {
+		glDisableClientState(GL_VERTEX_ARRAY);
+		glDisableClientState(GL_NORMAL_ARRAY);
+		glDisableClientState(GL_TEXTURE_COORD_ARRAY);
+		glDisableClientState(GL_COLOR_ARRAY);
+	}
+
+	public int getIndexCount() {
+		return indexCount;
+	}
+
+	public int getVertexCount() {
+		return vertexCount;
+	}
+
+	/**
+	 * Size of data in all vertex buffers and the index buffer
+	 *
+	 * @return size in bytes
+	 */
+	public long getSizeInBytes() {
+		long size = 0;
+		for (VertexBuffer vb : vertexBuffers)
+			size += (long) vb.stride * vertexCount;
+		if (indexCount > 0)
+			size += 4L * indexCount;
+		return size;
+	}
+
+	/**
+	 * Delete all vertex buffers and the index buffer, the object cannot be used afterwards
+	 */
+	public void delete() {
+		for (VertexBuffer vb : vertexBuffers)
+			glDeleteBuffers(vb.id);
+		vertexBuffers.clear();
+		if (indexBuffer != 0)
+			glDeleteBuffers(indexBuffer);
+		indexBuffer = 0;
+		indexCount = -1;
+		vertexCount = -1;
+	}
+
 	public void unbind() {
 		if (attribArrays != null) {
 			for (Integer attrib : attribArrays)
@@ -196,23 +196,23 @@ public class OGLModelOBJ {
 
         OBJLoader loader = new OBJLoader(modelPath);
 
-        float coords4[] = new float[4];
+        float coords3[] = new float[3];
         System.out.println(loader.fv.size() + " " + (loader.fv.get(0)).length);
         if (loader.fv.get(0)[0] > 0) {
-            tmpVerticesBuf = ByteBuffer.allocateDirect(loader.fv.size() * 4
+            tmpVerticesBuf = ByteBuffer.allocateDirect(loader.fv.size() * 3
                     * (loader.fv.get(0)).length * 4)
                     .order(ByteOrder.nativeOrder())
                     .asFloatBuffer();
 
             tmpVerticesBuf.position(0);
 
-            coords4[3] = 1;
+            // w = 1 is supplied by OpenGL for a 3-component attribute
             for (int i = 0; i < loader.fv.size(); i++) {
                 for (int j = 0; j < ((int[]) loader.fv.get(i)).length; j++) {
-                    coords4[0] = (float) loader.vData.get(loader.fv.get(i)[j] - 1)[0]; // x
-                    coords4[1] = (float) loader.vData.get(loader.fv.get(i)[j] - 1)[1]; // y
-                    coords4[2] = (float) loader.vData.get(loader.fv.get(i)[j] - 1)[2]; // z
-                    tmpVerticesBuf.put(coords4);
+                    coords3[0] = (float) loader.vData.get(loader.fv.get(i)[j] - 1)[0]; // x
+                    coords3[1] = (float) loader.vData.get(loader.fv.get(i)[j] - 1)[1]; // y
+                    coords3[2] = (float) loader.vData.get(loader.fv.get(i)[j] - 1)[2]; // z
+                    tmpVerticesBuf.put(coords3);
                 }
 
             }
@@ -251,7 +251,6 @@ public class OGLModelOBJ {
             tmpTexCoordsBuf.position(0);
         }
 
-        float coords3[] = new float[3];
         if (loader.fn.get(0)[0] > 0) {
             tmpNormalsBuf = ByteBuffer.allocateDirect(loader.fn.size() * 3
                     * (loader.fn.get(0)).length * 4)
@@ -280,11 +279,10 @@ public class OGLModelOBJ {
 
         if (verticesBuf != null) {
             OGLBuffers.Attrib[] attributesPos = {
-                    new OGLBuffers.Attrib("inPosition", 4),
+                    new OGLBuffers.Attrib("inPosition", 3),
             };
-            float[] floatArray = new float[verticesBuf.limit()];
-            verticesBuf.get(floatArray);
-            buffers = new OGLBuffers(floatArray, attributesPos, null);
+            // direct buffers are uploaded without copying
+            buffers = new OGLBuffers(verticesBuf, 3, attributesPos, null);
         } else
             return null;
 
@@ -292,18 +290,14 @@ public class OGLModelOBJ {
             OGLBuffers.Attrib[] attributesTexCoord = {
                     new OGLBuffers.Attrib("inTexCoord", 2)
             };
-            float[] floatArray = new float[texCoordsBuf.limit()];
-            texCoordsBuf.get(floatArray);
-            buffers.addVertexBuffer(floatArray, attributesTexCoord);
+            buffers.addVertexBuffer(texCoordsBuf, attributesTexCoord);
         }
 
         if (normalsBuf != null) {
             OGLBuffers.Attrib[] attributesNormal = {
                     new OGLBuffers.Attrib("inNormal", 3)
             };
-            float[] floatArray = new float[normalsBuf.limit()];
-            normalsBuf.get(floatArray);
-            buffers.addVertexBuffer(floatArray, attributesNormal);
+            buffers.addVertexBuffer(normalsBuf, attributesNormal);
         }
 
         return buffers;
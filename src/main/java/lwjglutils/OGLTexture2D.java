@@ -215,7 +215,55 @@ public class OGLTexture2D implements OGLTexture {
                 image.getFormat().getPixelType(), image.getDataBuffer());
     }
 
-    public OGLTexture2D(String fileName) throws IOException {
+    /**
+     * RGBA pixels of an image file decoded in memory, not yet uploaded to OpenGL.
+     * Decoding does not need an OpenGL context, so it can run on any thread.
+     * The pixel data are released by {@link #free()} or by the upload in
+     * {@link OGLTexture2D#OGLTexture2D(DecodedImage)}.
+     */
+    public static class DecodedImage {
+        private final String fileName;
+        private final int width, height;
+        private ByteBuffer data;
+
+        private DecodedImage(String fileName, int width, int height, ByteBuffer data) {
+            this.fileName = fileName;
+            this.width = width;
+            this.height = height;
+            this.data = data;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * Release the pixel data, it can be called repeatedly
+         */
+        public void free() {
+            if (data != null) {
+                stbi_image_free(data);
+                data = null;
+            }
+        }
+    }
+
+    /**
+     * Read and decode an image file without any OpenGL call
+     *
+     * @param fileName classpath resource
+     * @return decoded image
+     * @throws IOException if the file cannot be read or decoded
+     */
+    public static DecodedImage decode(String fileName) throws IOException {
         IntBuffer width = BufferUtils.createIntBuffer(1);
         IntBuffer height = BufferUtils.createIntBuffer(1);
         IntBuffer components = BufferUtils.createIntBuffer(1);
@@ -235,20 +283,32 @@ public class OGLTexture2D implements OGLTexture {
         System.out.println(" ... OK [" + width.get(0) + "x" + height.get(0) + "]");
 
         data.rewind();
+        return new DecodedImage(fileName, width.get(0), height.get(0), data);
+    }
+
+    public OGLTexture2D(String fileName) throws IOException {
+        this(decode(fileName));
+    }
 
-        this.width = width.get(0);
-        this.height = height.get(0);
+    /**
+     * Upload a decoded image, its pixel data are released afterwards
+     *
+     * @param image decoded image
+     */
+    public OGLTexture2D(DecodedImage image) {
+        this.width = image.getWidth();
+        this.height = image.getHeight();
         textureID = glGenTextures();
 
         glBindTexture(GL_TEXTURE_2D, textureID);
         glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA,
                 this.width, this.height, 0,
-                GL_RGBA, GL_UNSIGNED_BYTE, data);
+                GL_RGBA, GL_UNSIGNED_BYTE, image.data);
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
-        stbi_image_free(data);
+        image.free();
     }
 
     public <OGLTexImageType extends OGLTexImage<OGLTexImageType>> void setTextureBuffer(
@@ -343,6 +403,13 @@ public class OGLTexture2D implements OGLTexture {
         bind(shaderProgram, name, 0);
     }
 
+    /**
+     * Delete the texture object, the texture cannot be used afterwards
+     */
+    public void delete() {
+        glDeleteTextures(textureID);
+    }
+
     @Override
     public int getTextureId() {
         return textureID;
@@ -0,0 +1,380 @@
+package lwjglutils;
+
+import static org.lwjgl.opengl.GL33.*;
+
+/**
+ * Class {@code PhongLighting} is a shader pipeline lighting models per pixel by the Blinn-Phong model,
+ * it replaces fixed-function glLight and glMaterial in {@link OBJLoader.RenderMode#SHADED}.
+ * <p>
+ * The shaders are GLSL 330 without any fixed-function built-ins. Lights are kept in one uniform buffer
+ * (binding {@link #LIGHTS_BINDING}), which is uploaded by {@link #updateLights()} once per frame and
+ * only if a light has changed. Every material has its own uniform buffer (binding
+ * {@link #MATERIAL_BINDING}) uploaded when the material changes, so switching materials between draws
+ * only binds a buffer. Lights are specified as by glLight: ambient, diffuse and specular colors and
+ * a position transformed by the current modelview matrix, with the same defaults.
+ * <p>
+ * Transformations are still taken from the fixed-function GL_MODELVIEW and GL_PROJECTION matrices,
+ * once per model tree by {@link #begin()}. Parts of a tree share the matrices, so between
+ * {@link #begin()} and {@link #end()} only the uniform buffer of a material, if it differs from
+ * the previous draw, and its texture are bound. All methods have to be called on the thread
+ * with OpenGL context.
+ *
+ * @author Stanislav Čapek
+ * @version 1.0
+ */
+public class PhongLighting {
+
+    /**
+     * Count of lights
+     */
+    public static final int LIGHT_COUNT = 3;
+    /**
+     * Binding point of the uniform buffer of lights
+     */
+    public static final int LIGHTS_BINDING = 0;
+    /**
+     * Binding point of the uniform buffer of a material
+     */
+    public static final int MATERIAL_BINDING = 1;
+    /**
+     * Floats of a material in its uniform buffer: ambient, diffuse and specular colors and
+     * shininess (padded to 4)
+     */
+    public static final int FLOATS_PER_MATERIAL = 16;
+
+    // std140 layout: scene ambient, then position, ambient, diffuse, specular and attenuation of every light
+    private static final int FLOATS_PER_LIGHT = 20;
+    private static final int POSITION = 0, AMBIENT = 4, DIFFUSE = 8, SPECULAR = 12, ATTENUATION = 16;
+
+    private static final String[] SHADER_VERT_SRC = {
+            "#version 330\n",
+            "in vec3 inPosition;",
+            "in vec2 inTexCoord;",
+            "in vec3 inNormal;",
+            "uniform mat4 modelView;",
+            "uniform mat4 projection;",
+            "uniform mat3 normalMatrix;",
+            "out vec3 eyePosition;",
+            "out vec3 eyeNormal;",
+            "out vec2 texCoord;",
+            "void main() {",
+            "   vec4 position = modelView * vec4(inPosition, 1.0);",
+            "   eyePosition = position.xyz;",
+            "   eyeNormal = normalMatrix * inNormal;",
+            "   texCoord = inTexCoord;",
+            "   gl_Position = projection * position;",
+            "}"
+    };
+
+    private static final String[] SHADER_FRAG_SRC = {
+            "#version 330\n",
+            "struct Light {",
+            "   vec4 position;",
+            "   vec4 ambient;",
+            "   vec4 diffuse;",
+            "   vec4 specular;",
+            "   vec4 attenuation;", // constant, linear, quadratic, enabled
+            "};",
+            "layout(std140) uniform Lights {",
+            "   vec4 sceneAmbient;",
+            "   Light lights[" + LIGHT_COUNT + "];",
+            "} lighting;",
+            "layout(std140) uniform Material {",
+            "   vec4 ambient;",
+            "   vec4 diffuse;",
+            "   vec4 specular;",
+            "   vec4 shininess;",
+            "} material;",
+            "uniform sampler2D diffuseTexture;",
+            "uniform bool textureEnabled;",
+            "in vec3 eyePosition;",
+            "in vec3 eyeNormal;",
+            "in vec2 texCoord;",
+            "out vec4 outColor;",
+            "void main() {",
+            "   vec3 normal = normalize(eyeNormal);",
+            "   vec3 toViewer = normalize(-eyePosition);",
+            "   vec4 color = lighting.sceneAmbient * material.ambient;",
+            "   for (int i = 0; i < " + LIGHT_COUNT + "; i++) {",
+            "       Light light = lighting.lights[i];",
+            "       if (light.attenuation.w == 0.0)",
+            "           continue;",
+            "       vec3 toLight = light.position.xyz - light.position.w * eyePosition;",
+            "       float attenuation = 1.0;",
+            "       if (light.position.w != 0.0) {",
+            "           float d = length(toLight);",
+            "           attenuation = 1.0 / (light.attenuation.x + light.attenuation.y * d",
+            "                   + light.attenuation.z * d * d);",
+            "       }",
+            "       toLight = normalize(toLight);",
+            "       float lambert = max(dot(normal, toLight), 0.0);",
+            "       color += attenuation * light.ambient * material.ambient;",
+            "       color += attenuation * lambert * light.diffuse * material.diffuse;",
+            "       if (lambert > 0.0) {",
+            "           float highlight = max(dot(normal, normalize(toLight + toViewer)), 0.0);",
+            "           color += attenuation * pow(highlight, material.shininess.x) * light.specular * material.specular;",
+            "       }",
+            "   }",
+            "   outColor = vec4(clamp(color.rgb, 0.0, 1.0), material.diffuse.a);",
+            "   if (textureEnabled)",
+            "       outColor *= texture(diffuseTexture, texCoord);",
+            "}"
+    };
+
+    private static final float[] lights = new float[4 + LIGHT_COUNT * FLOATS_PER_LIGHT];
+    private static final float[] modelView = new float[16];
+    private static final float[] projection = new float[16];
+    private static final float[] normalMatrix = new float[9];
+    private static boolean lightsModified = true;
+    private static int lightsBuffer;
+    private static int defaultMaterialBuffer;
+    // state bound since begin(), so it is not bound again for every range
+    private static int boundMaterialBuffer;
+    private static int boundTextureEnabled;
+    private static int program;
+    private static int locModelView, locProjection, locNormalMatrix;
+    private static int locTextureEnabled, locDiffuseTexture;
+
+    static {
+        // defaults of glLightModel and glLight
+        System.arraycopy(new float[]{0.2f, 0.2f, 0.2f, 1}, 0, lights, 0, 4);
+        for (int light = 0; light < LIGHT_COUNT; light++) {
+            final int offset = 4 + light * FLOATS_PER_LIGHT;
+            // only light 0 is white
+            final float color = light == 0 ? 1 : 0;
+            System.arraycopy(new float[]{0, 0, 1, 0}, 0, lights, offset + POSITION, 4);
+            System.arraycopy(new float[]{0, 0, 0, 1}, 0, lights, offset + AMBIENT, 4);
+            System.arraycopy(new float[]{color, color, color, 1}, 0, lights, offset + DIFFUSE, 4);
+            System.arraycopy(new float[]{color, color, color, 1}, 0, lights, offset + SPECULAR, 4);
+            lights[offset + ATTENUATION] = 1;
+        }
+    }
+
+    /**
+     * Private constructor- utility class
+     */
+    private PhongLighting() {
+    }
+
+    /**
+     * Shader program of the pipeline, it is created on the first call
+     *
+     * @return shader program
+     */
+    public static int getProgram() {
+        if (program == 0) {
+            program = ShaderUtils.loadProgram(SHADER_VERT_SRC, SHADER_FRAG_SRC, null, null, null, null);
+            locModelView = glGetUniformLocation(program, "modelView");
+            locProjection = glGetUniformLocation(program, "projection");
+            locNormalMatrix = glGetUniformLocation(program, "normalMatrix");
+            locTextureEnabled = glGetUniformLocation(program, "textureEnabled");
+            locDiffuseTexture = glGetUniformLocation(program, "diffuseTexture");
+            glUniformBlockBinding(program, glGetUniformBlockIndex(program, "Lights"), LIGHTS_BINDING);
+            glUniformBlockBinding(program, glGetUniformBlockIndex(program, "Material"), MATERIAL_BINDING);
+        }
+        return program;
+    }
+
+    /**
+     * Set the ambient light of the scene, as GL_LIGHT_MODEL_AMBIENT
+     *
+     * @param color RGBA color
+     */
+    public static void setSceneAmbient(float[] color) {
+        System.arraycopy(color, 0, lights, 0, 4);
+        lightsModified = true;
+    }
+
+    /**
+     * Set colors of a light, as GL_AMBIENT, GL_DIFFUSE and GL_SPECULAR of glLight
+     *
+     * @param light    index of the light from 0
+     * @param ambient  RGBA color
+     * @param diffuse  RGBA color
+     * @param specular RGBA color
+     */
+    public static void setLight(int light, float[] ambient, float[] diffuse, float[] specular) {
+        final int offset = getLightOffset(light);
+        System.arraycopy(ambient, 0, lights, offset + AMBIENT, 4);
+        System.arraycopy(diffuse, 0, lights, offset + DIFFUSE, 4);
+        System.arraycopy(specular, 0, lights, offset + SPECULAR, 4);
+        lightsModified = true;
+    }
+
+    /**
+     * Set the position of a light, as GL_POSITION of glLight it is transformed by the current
+     * modelview matrix into eye coordinates
+     *
+     * @param light    index of the light from 0
+     * @param position homogeneous position, w = 0 for a directional light
+     */
+    public static void setLightPosition(int light, float[] position) {
+        final int offset = getLightOffset(light);
+        glGetFloatv(GL_MODELVIEW_MATRIX, modelView);
+        for (int row = 0; row < 4; row++) {
+            float sum = 0;
+            for (int k = 0; k < 4; k++) {
+                sum += modelView[k * 4 + row] * position[k];
+            }
+            lights[offset + POSITION + row] = sum;
+        }
+        lightsModified = true;
+    }
+
+    /**
+     * Set the attenuation of a positional light, as GL_CONSTANT_ATTENUATION, GL_LINEAR_ATTENUATION
+     * and GL_QUADRATIC_ATTENUATION of glLight
+     *
+     * @param light     index of the light from 0
+     * @param constant  constant factor, 1 by default
+     * @param linear    linear factor, 0 by default
+     * @param quadratic quadratic factor, 0 by default
+     */
+    public static void setLightAttenuation(int light, float constant, float linear, float quadratic) {
+        final int offset = getLightOffset(light);
+        lights[offset + ATTENUATION] = constant;
+        lights[offset + ATTENUATION + 1] = linear;
+        lights[offset + ATTENUATION + 2] = quadratic;
+        lightsModified = true;
+    }
+
+    /**
+     * Switch a light on or off, all lights are off by default
+     *
+     * @param light   index of the light from 0
+     * @param enabled is on
+     */
+    public static void setLightEnabled(int light, boolean enabled) {
+        final int offset = getLightOffset(light);
+        final float value = enabled ? 1 : 0;
+        if (lights[offset + ATTENUATION + 3] != value) {
+            lights[offset + ATTENUATION + 3] = value;
+            lightsModified = true;
+        }
+    }
+
+    public static boolean isLightEnabled(int light) {
+        return lights[getLightOffset(light) + ATTENUATION + 3] != 0;
+    }
+
+    private static int getLightOffset(int light) {
+        if (light < 0 || light >= LIGHT_COUNT) {
+            throw new IndexOutOfBoundsException("Light " + light + " of " + LIGHT_COUNT);
+        }
+        return 4 + light * FLOATS_PER_LIGHT;
+    }
+
+    /**
+     * Upload lights into their uniform buffer if they have changed since the last upload,
+     * it is meant to be called once per frame after lights are set
+     */
+    public static void updateLights() {
+        if (lightsBuffer == 0) {
+            lightsBuffer = glGenBuffers();
+            lightsModified = true;
+        }
+        if (lightsModified) {
+            glBindBuffer(GL_UNIFORM_BUFFER, lightsBuffer);
+            glBufferData(GL_UNIFORM_BUFFER, lights, GL_DYNAMIC_DRAW);
+            glBindBuffer(GL_UNIFORM_BUFFER, 0);
+            lightsModified = false;
+        }
+    }
+
+    /**
+     * Upload a material into a uniform buffer
+     *
+     * @param buffer    uniform buffer
+     * @param ambient   RGBA color
+     * @param diffuse   RGBA color
+     * @param specular  RGBA color
+     * @param shininess specular exponent
+     */
+    static void uploadMaterial(int buffer, float[] ambient, float[] diffuse, float[] specular, float shininess) {
+        final float[] data = new float[FLOATS_PER_MATERIAL];
+        System.arraycopy(ambient, 0, data, 0, 4);
+        System.arraycopy(diffuse, 0, data, 4, 4);
+        System.arraycopy(specular, 0, data, 8, 4);
+        data[12] = shininess;
+        glBindBuffer(GL_UNIFORM_BUFFER, buffer);
+        glBufferData(GL_UNIFORM_BUFFER, data, GL_STATIC_DRAW);
+        glBindBuffer(GL_UNIFORM_BUFFER, 0);
+    }
+
+    /**
+     * Use the program with transformations of the current fixed-function matrices and bind lights,
+     * it is called once per drawn model tree
+     */
+    static void begin() {
+        glUseProgram(getProgram());
+        updateLights();
+        glBindBufferBase(GL_UNIFORM_BUFFER, LIGHTS_BINDING, lightsBuffer);
+
+        glGetFloatv(GL_MODELVIEW_MATRIX, modelView);
+        glGetFloatv(GL_PROJECTION_MATRIX, projection);
+        // inverse transpose of the upper 3x3 matrix (rows a b c, d e f, g h i) is its matrix
+        // of cofactors divided by the determinant
+        final float a = modelView[0], b = modelView[4], c = modelView[8];
+        final float d = modelView[1], e = modelView[5], f = modelView[9];
+        final float g = modelView[2], h = modelView[6], i = modelView[10];
+        final float[] cofactors = {
+                e * i - f * h, f * g - d * i, d * h - e * g,
+                c * h - b * i, a * i - c * g, b * g - a * h,
+                b * f - c * e, c * d - a * f, a * e - b * d
+        };
+        final float determinant = a * cofactors[0] + b * cofactors[1] + c * cofactors[2];
+        // cofactors are row-wise, uniforms column-major
+        for (int row = 0; row < 3; row++) {
+            for (int column = 0; column < 3; column++) {
+                normalMatrix[column * 3 + row] = cofactors[row * 3 + column] / determinant;
+            }
+        }
+        glUniformMatrix4fv(locModelView, false, modelView);
+        glUniformMatrix4fv(locProjection, false, projection);
+        glUniformMatrix3fv(locNormalMatrix, false, normalMatrix);
+        glUniform1i(locDiffuseTexture, 0);
+        boundMaterialBuffer = 0;
+        boundTextureEnabled = -1;
+    }
+
+    /**
+     * Bind the uniform buffer of a material and its diffuse texture
+     *
+     * @param material      material or null for defaults of glMaterial
+     * @param textureEnable allow the diffuse texture
+     */
+    static void bindMaterial(OBJLoader.Material material, boolean textureEnable) {
+        final int buffer;
+        if (material == null) {
+            if (defaultMaterialBuffer == 0) {
+                defaultMaterialBuffer = glGenBuffers();
+                uploadMaterial(defaultMaterialBuffer, new float[]{0.2f, 0.2f, 0.2f, 1},
+                        new float[]{0.8f, 0.8f, 0.8f, 1}, new float[]{0, 0, 0, 1}, 0);
+            }
+            buffer = defaultMaterialBuffer;
+        } else {
+            buffer = material.getUniformBuffer();
+        }
+        if (buffer != boundMaterialBuffer) {
+            glBindBufferBase(GL_UNIFORM_BUFFER, MATERIAL_BINDING, buffer);
+            boundMaterialBuffer = buffer;
+        }
+        final OGLTexture2D texture = textureEnable && material != null ? material.getDiffuseTexture() : null;
+        if (texture != null) {
+            // textures may be uploaded between draws, so the binding is not cached
+            texture.bind();
+        }
+        final int textureEnabled = texture != null ? 1 : 0;
+        if (textureEnabled != boundTextureEnabled) {
+            glUniform1i(locTextureEnabled, textureEnabled);
+            boundTextureEnabled = textureEnabled;
+        }
+    }
+
+    /**
+     * Stop using the program
+     */
+    static void end() {
+        glUseProgram(0);
+    }
+}
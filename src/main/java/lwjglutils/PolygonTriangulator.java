@@ -0,0 +1,163 @@
+package lwjglutils;
+
+/**
+ * Splits polygon faces into triangles. Convex polygons are split as a fan from the first corner,
+ * concave polygons by ear clipping in the plane of the polygon (the plane is given by Newell's normal).
+ * Degenerate polygons (missing positions, zero area) are split as a fan.
+ * <p>
+ * An instance keeps its working arrays between calls, so it is not thread safe.
+ *
+ * @author Stanislav Čapek
+ * @version 1.0
+ * @see OBJGeometry#triangulate()
+ */
+class PolygonTriangulator {
+    private float[] xs = new float[16];
+    private float[] ys = new float[16];
+    private int[] prev = new int[16];
+    private int[] next = new int[16];
+
+    /**
+     * Triangulate one face. Corners of triangles are written as local indices (0 to size - 1)
+     * with the orientation of the face.
+     *
+     * @param positions position triplets
+     * @param corners   corner triplets (position, texture coordinate, normal)
+     * @param first     first corner of the face
+     * @param size      count of corners of the face
+     * @param out       local corner indices, at least (size - 2) * 3 long
+     * @return count of triangles
+     */
+    int triangulate(float[] positions, int[] corners, int first, int size, int[] out) {
+        if (size < 3) {
+            return 0;
+        }
+        if (size == 3 || !project(positions, corners, first, size) || isConvex(size)) {
+            return fan(size, out);
+        }
+        return clipEars(size, out);
+    }
+
+    private static int fan(int size, int[] out) {
+        int index = 0;
+        for (int i = 1; i < size - 1; i++) {
+            out[index++] = 0;
+            out[index++] = i;
+            out[index++] = i + 1;
+        }
+        return size - 2;
+    }
+
+    /**
+     * Project the polygon to 2D, so it is counter-clockwise
+     *
+     * @return false for a degenerate polygon
+     */
+    private boolean project(float[] positions, int[] corners, int first, int size) {
+        if (xs.length < size) {
+            final int capacity = Integer.highestOneBit(size) << 1;
+            xs = new float[capacity];
+            ys = new float[capacity];
+            prev = new int[capacity];
+            next = new int[capacity];
+        }
+
+        // Newell's normal
+        double nx = 0, ny = 0, nz = 0;
+        for (int i = 0; i < size; i++) {
+            final int p = corners[(first + i) * 3];
+            final int q = corners[(first + (i + 1) % size) * 3];
+            if (p < 0 || q < 0) {
+                return false;
+            }
+            final float px = positions[p * 3], py = positions[p * 3 + 1], pz = positions[p * 3 + 2];
+            final float qx = positions[q * 3], qy = positions[q * 3 + 1], qz = positions[q * 3 + 2];
+            nx += (py - qy) * (pz + qz);
+            ny += (pz - qz) * (px + qx);
+            nz += (px - qx) * (py + qy);
+        }
+        final double ax = Math.abs(nx), ay = Math.abs(ny), az = Math.abs(nz);
+        if (ax + ay + az == 0) {
+            return false;
+        }
+
+        // drop the dominant axis, flip the other one if the normal points to the negative side
+        for (int i = 0; i < size; i++) {
+            final int p = corners[(first + i) * 3] * 3;
+            if (az >= ax && az >= ay) {
+                xs[i] = positions[p];
+                ys[i] = nz > 0 ? positions[p + 1] : -positions[p + 1];
+            } else if (ax >= ay) {
+                xs[i] = positions[p + 1];
+                ys[i] = nx > 0 ? positions[p + 2] : -positions[p + 2];
+            } else {
+                xs[i] = positions[p + 2];
+                ys[i] = ny > 0 ? positions[p] : -positions[p];
+            }
+        }
+        return true;
+    }
+
+    private boolean isConvex(int size) {
+        for (int i = 0; i < size; i++) {
+            if (cross((i + size - 1) % size, i, (i + 1) % size) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int clipEars(int size, int[] out) {
+        for (int i = 0; i < size; i++) {
+            prev[i] = (i + size - 1) % size;
+            next[i] = (i + 1) % size;
+        }
+        int index = 0;
+        int remaining = size;
+        int current = 0;
+        int tested = 0;
+        while (remaining > 3) {
+            final int a = prev[current];
+            final int c = next[current];
+            if (isEar(a, current, c) || tested >= remaining) {
+                // without any ear (self-intersecting polygon) the vertex is clipped anyway
+                out[index++] = a;
+                out[index++] = current;
+                out[index++] = c;
+                next[a] = c;
+                prev[c] = a;
+                remaining--;
+                tested = 0;
+                current = c;
+            } else {
+                current = c;
+                tested++;
+            }
+        }
+        out[index++] = prev[current];
+        out[index++] = current;
+        out[index++] = next[current];
+        return size - 2;
+    }
+
+    private boolean isEar(int a, int b, int c) {
+        if (cross(a, b, c) <= 0) {
+            return false;
+        }
+        for (int p = next[c]; p != a; p = next[p]) {
+            if (contains(a, b, c, p)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean contains(int a, int b, int c, int p) {
+        return cross(a, b, p) >= 0 && cross(b, c, p) >= 0 && cross(c, a, p) >= 0;
+    }
+
+    private double cross(int a, int b, int c) {
+        return ((double) xs[b] - xs[a]) * ((double) ys[c] - ys[a])
+                - ((double) ys[b] - ys[a]) * ((double) xs[c] - xs[a]);
+    }
+}
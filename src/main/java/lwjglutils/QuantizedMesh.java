@@ -0,0 +1,370 @@
+package lwjglutils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.lwjgl.opengl.GL33.*;
+
+/**
+ * Class {@code QuantizedMesh} is a compressed copy of {@link IndexedMesh} for the GPU.
+ * <p>
+ * A vertex takes {@link #BYTES_PER_VERTEX} bytes instead of 32:
+ * <ul>
+ *     <li>position: 3 x unsigned normalized 16-bit integer relative to the mesh's bounding box
+ *     (the error is at most half of the box's size / 65535 per axis),</li>
+ *     <li>normal: 2 x signed normalized byte, the unit vector is projected to an octahedron,
+ *     which is unfolded to a square,</li>
+ *     <li>texture coordinate: 2 x unsigned normalized 16-bit integer relative to the bounding
+ *     rectangle of the mesh's coordinates (so repeated textures outside [0, 1] are kept).</li>
+ * </ul>
+ * OpenGL maps normalized components to floats when they are fetched, the rest of the dequantization
+ * (offset and scale of the boxes, unfolding of normals) is done in the vertex stage by the shader
+ * of {@link #getProgram()}. The shader emulates fixed-function transformation and lighting
+ * (up to 3 lights, materials by glMaterial) and the GL_MODULATE texture environment,
+ * so it can replace the fixed-function pipeline. Indices and draw ranges are shared with the source mesh.
+ *
+ * @author Stanislav Čapek
+ * @version 1.0
+ * @see OBJLoader.RenderMode#QUANTIZED
+ */
+public class QuantizedMesh {
+
+    /**
+     * Size of one vertex: position 6 B, normal 2 B, texture coordinate 4 B
+     */
+    public static final int BYTES_PER_VERTEX = 12;
+    private static final int UNORM16_MAX = 0xFFFF;
+    private static final int SNORM8_MAX = 127;
+
+    /**
+     * GLSL 120 functions emulating fixed-function lighting of lights 0 - 2 (switched by the uniform
+     * lightEnabled) with a given material or with the front material set by glMaterial,
+     * the result is clamped and has the diffuse alpha
+     */
+    static final String[] LIGHTING_SRC = {
+            "uniform float lightEnabled[3];",
+            "vec4 lighting(vec4 eyePosition, vec3 normal, vec4 sceneColor,",
+            "       vec4 ambient, vec4 diffuse, vec4 specular, float shininess) {",
+            "   vec4 color = sceneColor;",
+            "   for (int i = 0; i < 3; i++) {",
+            "       if (lightEnabled[i] == 0.0)",
+            "           continue;",
+            "       vec3 toLight = gl_LightSource[i].position.xyz;",
+            "       float attenuation = 1.0;",
+            "       if (gl_LightSource[i].position.w != 0.0) {",
+            "           toLight -= eyePosition.xyz;",
+            "           float d = length(toLight);",
+            "           attenuation = 1.0 / (gl_LightSource[i].constantAttenuation",
+            "                   + gl_LightSource[i].linearAttenuation * d",
+            "                   + gl_LightSource[i].quadraticAttenuation * d * d);",
+            "       }",
+            "       toLight = normalize(toLight);",
+            "       float lambert = max(dot(normal, toLight), 0.0);",
+            "       color += attenuation * gl_LightSource[i].ambient * ambient;",
+            "       color += attenuation * lambert * gl_LightSource[i].diffuse * diffuse;",
+            "       if (lambert > 0.0) {",
+            "           float highlight = max(dot(normal, normalize(toLight + vec3(0.0, 0.0, 1.0))), 0.0);",
+            "           color += attenuation * pow(highlight, shininess) * gl_LightSource[i].specular * specular;",
+            "       }",
+            "   }",
+            "   return vec4(clamp(color.rgb, 0.0, 1.0), diffuse.a);",
+            "}",
+            "vec4 lighting(vec4 eyePosition, vec3 normal) {",
+            "   return lighting(eyePosition, normal, gl_FrontLightModelProduct.sceneColor, gl_FrontMaterial.ambient,",
+            "           gl_FrontMaterial.diffuse, gl_FrontMaterial.specular, gl_FrontMaterial.shininess);",
+            "}"
+    };
+
+    /**
+     * GLSL 120 fragment shader applying the GL_MODULATE texture environment (switched by the uniform
+     * textureEnabled) to the interpolated color
+     */
+    static final String[] SHADER_FRAG_SRC = {
+            "#version 120\n",
+            "uniform sampler2D diffuseTexture;",
+            "uniform bool textureEnabled;",
+            "void main() {",
+            "   gl_FragColor = gl_Color;",
+            "   if (textureEnabled)",
+            "       gl_FragColor *= texture2D(diffuseTexture, gl_TexCoord[0].st);",
+            "}"
+    };
+
+    private static final String[] SHADER_VERT_SRC = concat(new String[]{
+            "#version 120\n",
+            "attribute vec3 inPosition;",
+            "attribute vec2 inNormal;",
+            "attribute vec2 inTexCoord;",
+            "uniform vec3 positionOffset;",
+            "uniform vec3 positionScale;",
+            "uniform vec2 texCoordOffset;",
+            "uniform vec2 texCoordScale;",
+            "vec3 decodeNormal(vec2 e) {",
+            "   vec3 n = vec3(e, 1.0 - abs(e.x) - abs(e.y));",
+            "   if (n.z < 0.0)",
+            "       n.xy = (1.0 - abs(n.yx)) * vec2(n.x >= 0.0 ? 1.0 : -1.0, n.y >= 0.0 ? 1.0 : -1.0);",
+            "   return normalize(n);",
+            "}"
+    }, LIGHTING_SRC, new String[]{
+            "void main() {",
+            "   vec4 position = vec4(positionOffset + inPosition * positionScale, 1.0);",
+            "   vec4 eyePosition = gl_ModelViewMatrix * position;",
+            "   vec3 normal = normalize(gl_NormalMatrix * decodeNormal(inNormal));",
+            "   gl_FrontColor = lighting(eyePosition, normal);",
+            "   gl_TexCoord[0] = vec4(texCoordOffset + inTexCoord * texCoordScale, 0.0, 1.0);",
+            "   gl_Position = gl_ProjectionMatrix * eyePosition;",
+            "}"
+    });
+
+    private static int program;
+    private static int locPositionOffset, locPositionScale, locTexCoordOffset, locTexCoordScale;
+    private static int locLightEnabled, locTextureEnabled, locDiffuseTexture;
+
+    private final ByteBuffer vertices;
+    private final IntBuffer indices;
+    private final List<IndexedMesh.Range> ranges;
+    private final float[] positionOffset;
+    private final float[] positionScale;
+    private final float[] texCoordOffset;
+    private final float[] texCoordScale;
+
+    private QuantizedMesh(ByteBuffer vertices, IntBuffer indices, List<IndexedMesh.Range> ranges,
+                          float[] positionOffset, float[] positionScale,
+                          float[] texCoordOffset, float[] texCoordScale) {
+        this.vertices = vertices;
+        this.indices = indices;
+        this.ranges = ranges;
+        this.positionOffset = positionOffset;
+        this.positionScale = positionScale;
+        this.texCoordOffset = texCoordOffset;
+        this.texCoordScale = texCoordScale;
+    }
+
+    /**
+     * Quantize vertices of the mesh
+     *
+     * @param mesh source mesh
+     * @return new quantized mesh
+     */
+    public static QuantizedMesh fromMesh(IndexedMesh mesh) {
+        final FloatBuffer source = mesh.getVertexBuffer();
+        final int vertexCount = mesh.getVertexCount();
+        final int stride = IndexedMesh.FLOATS_PER_VERTEX;
+
+        // bounding box of positions (0 - 2) and texture coordinates (3 - 4)
+        final float[] min = new float[5];
+        final float[] max = new float[5];
+        for (int component = 0; component < 5; component++) {
+            min[component] = vertexCount == 0 ? 0 : Float.POSITIVE_INFINITY;
+            max[component] = vertexCount == 0 ? 0 : Float.NEGATIVE_INFINITY;
+        }
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            for (int component = 0; component < 5; component++) {
+                final float value = source.get(vertex * stride + component);
+                min[component] = Math.min(min[component], value);
+                max[component] = Math.max(max[component], value);
+            }
+        }
+        final float[] scale = new float[5];
+        for (int component = 0; component < 5; component++) {
+            scale[component] = max[component] - min[component];
+        }
+
+        final ByteBuffer vertices = ByteBuffer.allocateDirect(vertexCount * BYTES_PER_VERTEX)
+                .order(ByteOrder.nativeOrder());
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            final int v = vertex * stride;
+            for (int component = 0; component < 3; component++) {
+                vertices.putShort(toUnorm16(source.get(v + component), min[component], scale[component]));
+            }
+            putOctahedral(vertices, source.get(v + 5), source.get(v + 6), source.get(v + 7));
+            for (int component = 3; component < 5; component++) {
+                vertices.putShort(toUnorm16(source.get(v + component), min[component], scale[component]));
+            }
+        }
+        vertices.flip();
+
+        return new QuantizedMesh(vertices, mesh.getIndexBuffer(), mesh.getRanges(),
+                new float[]{min[0], min[1], min[2]}, new float[]{scale[0], scale[1], scale[2]},
+                new float[]{min[3], min[4]}, new float[]{scale[3], scale[4]});
+    }
+
+    private static short toUnorm16(float value, float min, float scale) {
+        if (scale == 0) {
+            return 0;
+        }
+        return (short) Math.round(Math.min(Math.max((value - min) / scale, 0), 1) * UNORM16_MAX);
+    }
+
+    /**
+     * Write the octahedral encoding of a normal as 2 signed bytes, a zero normal is encoded as (0, 0, 1)
+     */
+    private static void putOctahedral(ByteBuffer buffer, float x, float y, float z) {
+        final float length = Math.abs(x) + Math.abs(y) + Math.abs(z);
+        float u = 0;
+        float v = 0;
+        if (length > 0) {
+            u = x / length;
+            v = y / length;
+            if (z < 0) {
+                final float foldedU = (1 - Math.abs(v)) * (u >= 0 ? 1 : -1);
+                final float foldedV = (1 - Math.abs(u)) * (v >= 0 ? 1 : -1);
+                u = foldedU;
+                v = foldedV;
+            }
+        }
+        buffer.put((byte) Math.round(u * SNORM8_MAX));
+        buffer.put((byte) Math.round(v * SNORM8_MAX));
+    }
+
+    /**
+     * Vertex attributes of the quantized layout
+     *
+     * @return attributes inPosition, inNormal and inTexCoord
+     */
+    public static OGLBuffers.Attrib[] getAttributes() {
+        return new OGLBuffers.Attrib[]{
+                new OGLBuffers.Attrib("inPosition", 3, GL_UNSIGNED_SHORT, true, false),
+                new OGLBuffers.Attrib("inNormal", 2, GL_BYTE, true, false),
+                new OGLBuffers.Attrib("inTexCoord", 2, GL_UNSIGNED_SHORT, true, false)
+        };
+    }
+
+    /**
+     * Upload the mesh into new OpenGL buffers
+     *
+     * @return new buffers
+     */
+    public OGLBuffers toOGLBuffers() {
+        return new OGLBuffers(getVertexBuffer(), BYTES_PER_VERTEX, getAttributes(), getIndexBuffer());
+    }
+
+    /**
+     * Shader program dequantizing vertices, it is created on the first call.
+     * Has to be called on the thread with OpenGL context.
+     *
+     * @return shader program
+     */
+    public static int getProgram() {
+        if (program == 0) {
+            program = ShaderUtils.loadProgram(SHADER_VERT_SRC, SHADER_FRAG_SRC, null, null, null, null);
+            locPositionOffset = glGetUniformLocation(program, "positionOffset");
+            locPositionScale = glGetUniformLocation(program, "positionScale");
+            locTexCoordOffset = glGetUniformLocation(program, "texCoordOffset");
+            locTexCoordScale = glGetUniformLocation(program, "texCoordScale");
+            locLightEnabled = glGetUniformLocation(program, "lightEnabled");
+            locTextureEnabled = glGetUniformLocation(program, "textureEnabled");
+            locDiffuseTexture = glGetUniformLocation(program, "diffuseTexture");
+        }
+        return program;
+    }
+
+    /**
+     * Set uniforms of {@link #getProgram()}, which has to be in use: the boxes of this mesh and
+     * the state of lights 0 - 2 and of GL_TEXTURE_2D (the texture is taken from unit 0)
+     */
+    public void setUniforms() {
+        glUniform3f(locPositionOffset, positionOffset[0], positionOffset[1], positionOffset[2]);
+        glUniform3f(locPositionScale, positionScale[0], positionScale[1], positionScale[2]);
+        glUniform2f(locTexCoordOffset, texCoordOffset[0], texCoordOffset[1]);
+        glUniform2f(locTexCoordScale, texCoordScale[0], texCoordScale[1]);
+        setFixedFunctionUniforms(locLightEnabled, locTextureEnabled, locDiffuseTexture);
+    }
+
+    /**
+     * Set uniforms of {@link #LIGHTING_SRC} and {@link #SHADER_FRAG_SRC} by the fixed-function state
+     * of lights 0 - 2 and of GL_TEXTURE_2D (the texture is taken from unit 0)
+     *
+     * @param locLightEnabled    location of lightEnabled
+     * @param locTextureEnabled  location of textureEnabled
+     * @param locDiffuseTexture location of diffuseTexture
+     */
+    static void setFixedFunctionUniforms(int locLightEnabled, int locTextureEnabled, int locDiffuseTexture) {
+        final boolean lighting = glIsEnabled(GL_LIGHTING);
+        glUniform1fv(locLightEnabled, new float[]{
+                lighting && glIsEnabled(GL_LIGHT0) ? 1 : 0,
+                lighting && glIsEnabled(GL_LIGHT1) ? 1 : 0,
+                lighting && glIsEnabled(GL_LIGHT2) ? 1 : 0
+        });
+        glUniform1i(locTextureEnabled, glIsEnabled(GL_TEXTURE_2D) ? 1 : 0);
+        glUniform1i(locDiffuseTexture, 0);
+    }
+
+    /**
+     * Join parts of shader sources
+     *
+     * @param parts lines of parts
+     * @return lines
+     */
+    static String[] concat(String[]... parts) {
+        return Arrays.stream(parts).flatMap(Arrays::stream).toArray(String[]::new);
+    }
+
+    /**
+     * Quantized vertices, a new view of the data (position 0, limit at the end)
+     *
+     * @return buffer
+     */
+    public ByteBuffer getVertexBuffer() {
+        return vertices.duplicate().clear().order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Indices, a new view of the data (position 0, limit at the end)
+     *
+     * @return buffer
+     */
+    public IntBuffer getIndexBuffer() {
+        return indices.duplicate().clear();
+    }
+
+    /**
+     * Draw ranges in the order of the index buffer
+     *
+     * @return unmodifiable list of ranges
+     */
+    public List<IndexedMesh.Range> getRanges() {
+        return ranges;
+    }
+
+    public int getVertexCount() {
+        return vertices.limit() / BYTES_PER_VERTEX;
+    }
+
+    public int getIndexCount() {
+        return indices.limit();
+    }
+
+    /**
+     * Size of vertex and index buffers of this mesh
+     *
+     * @return size in bytes
+     */
+    public long getSizeInBytes() {
+        return (long) getVertexCount() * BYTES_PER_VERTEX + (long) getIndexCount() * Integer.BYTES;
+    }
+
+    /**
+     * Size of vertex and index buffers of the source float mesh
+     *
+     * @return size in bytes
+     */
+    public long getSourceSizeInBytes() {
+        return (long) getVertexCount() * IndexedMesh.FLOATS_PER_VERTEX * Float.BYTES
+                + (long) getIndexCount() * Integer.BYTES;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "QuantizedMesh{vertices=%d, bytes per vertex %d -> %d, GPU bytes %d -> %d (%.0f %%)}",
+                getVertexCount(), IndexedMesh.FLOATS_PER_VERTEX * Float.BYTES, BYTES_PER_VERTEX,
+                getSourceSizeInBytes(), getSizeInBytes(),
+                getSourceSizeInBytes() == 0 ? 100.0 : 100.0 * getSizeInBytes() / getSourceSizeInBytes());
+    }
+}
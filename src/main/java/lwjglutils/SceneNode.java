@@ -0,0 +1,234 @@
+package lwjglutils;
+
+import transforms.Mat4;
+import transforms.Mat4Identity;
+import transforms.Mat4Scale;
+import transforms.Mat4Transl;
+import transforms.Quat;
+import transforms.Vec3D;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL33.*;
+
+/**
+ * Class {@code SceneNode} is a node of a scene graph with a local transformation (scale, rotation
+ * and translation applied in this order) and an optional {@link OBJLoader.Model}.
+ * <p>
+ * World matrices (local * parent's world, row vectors as in the transforms package) are cached.
+ * Changing a node's transformation marks the node dirty and its ancestors as having a dirty
+ * descendant, so {@link #update()} recomputes only dirty nodes with their subtrees and skips
+ * all clean branches. The marking stops at the first ancestor already marked, so both marking
+ * and updating take time proportional to the changed nodes, not to the size of the scene.
+ * <p>
+ * {@link #draw(Frustum)} multiplies the current OpenGL modelview matrix by the cached world matrices
+ * and culls models by the frustum transformed into every node's space.
+ *
+ * @author Stanislav Čapek
+ * @version 1.0
+ */
+public class SceneNode {
+
+    private Vec3D translation = new Vec3D();
+    private Quat rotation = new Quat(1, 0, 0, 0);
+    private Vec3D scale = new Vec3D(1, 1, 1);
+    private OBJLoader.Model model;
+    private SceneNode parent;
+    private final List<SceneNode> children = new ArrayList<>();
+    private Mat4 local;
+    private Mat4 world = new Mat4Identity();
+    private float[] worldArray = world.floatArray();
+    private boolean dirty = true;
+    private boolean childDirty;
+
+    /**
+     * Constructor of an empty node with identity transformation
+     */
+    public SceneNode() {
+    }
+
+    /**
+     * Constructor of a node with identity transformation
+     *
+     * @param model drawn model, can be null
+     */
+    public SceneNode(OBJLoader.Model model) {
+        this.model = model;
+    }
+
+    public Vec3D getTranslation() {
+        return translation;
+    }
+
+    public void setTranslation(Vec3D translation) {
+        this.translation = translation;
+        invalidate();
+    }
+
+    public Quat getRotation() {
+        return rotation;
+    }
+
+    /**
+     * Set the rotation
+     *
+     * @param rotation rotation, it is normalized
+     */
+    public void setRotation(Quat rotation) {
+        this.rotation = rotation.normalized();
+        invalidate();
+    }
+
+    public Vec3D getScale() {
+        return scale;
+    }
+
+    public void setScale(Vec3D scale) {
+        this.scale = scale;
+        invalidate();
+    }
+
+    public OBJLoader.Model getModel() {
+        return model;
+    }
+
+    public void setModel(OBJLoader.Model model) {
+        this.model = model;
+    }
+
+    /**
+     * Return the parent, which the node was added to as a child
+     *
+     * @return parent or null
+     */
+    public SceneNode getParent() {
+        return parent;
+    }
+
+    /**
+     * Return children of the node
+     *
+     * @return unmodifiable list of children
+     */
+    public List<SceneNode> getChildren() {
+        return Collections.unmodifiableList(children);
+    }
+
+    /**
+     * Add a child, it is removed from its previous parent
+     *
+     * @param child a child
+     */
+    public void addChild(SceneNode child) {
+        if (child.parent != null) {
+            child.parent.removeChild(child);
+        }
+        child.parent = this;
+        children.add(child);
+        child.invalidate();
+    }
+
+    /**
+     * Remove a child
+     *
+     * @param child a child to remove
+     * @return success
+     */
+    public boolean removeChild(SceneNode child) {
+        if (!children.remove(child)) {
+            return false;
+        }
+        child.parent = null;
+        child.invalidate();
+        return true;
+    }
+
+    /**
+     * Return the local matrix scale * rotation * translation, cached until the transformation changes
+     *
+     * @return local matrix
+     */
+    public Mat4 getLocalMatrix() {
+        if (local == null) {
+            local = new Mat4Scale(scale).mul(rotation.toRotationMatrix()).mul(new Mat4Transl(translation));
+        }
+        return local;
+    }
+
+    /**
+     * Return the world matrix computed by the last {@link #update()}
+     *
+     * @return world matrix
+     */
+    public Mat4 getWorldMatrix() {
+        return world;
+    }
+
+    /**
+     * Check if the world matrix of the node or of a descendant has to be recomputed
+     *
+     * @return is dirty
+     */
+    public boolean isDirty() {
+        return dirty || childDirty;
+    }
+
+    /**
+     * Mark the node dirty and its ancestors as having a dirty descendant
+     */
+    private void invalidate() {
+        local = null;
+        dirty = true;
+        for (SceneNode node = parent; node != null && !node.childDirty; node = node.parent) {
+            node.childDirty = true;
+        }
+    }
+
+    /**
+     * Recompute world matrices of dirty nodes of the subtree and of all their descendants,
+     * the parent's world matrix has to be up to date
+     *
+     * @return count of recomputed matrices
+     */
+    public int update() {
+        return update(parent == null ? null : parent.world, false);
+    }
+
+    private int update(Mat4 parentWorld, boolean parentChanged) {
+        int count = 0;
+        final boolean changed = dirty || parentChanged;
+        if (changed) {
+            world = parentWorld == null ? getLocalMatrix() : getLocalMatrix().mul(parentWorld);
+            worldArray = world.floatArray();
+            dirty = false;
+            count++;
+        }
+        if (changed || childDirty) {
+            for (SceneNode child : children) {
+                count += child.update(world, changed);
+            }
+        }
+        childDirty = false;
+        return count;
+    }
+
+    /**
+     * Draw models of the subtree by their cached world matrices, which are multiplied to the current
+     * modelview matrix. Has to be called on the thread with OpenGL context after {@link #update()}.
+     *
+     * @param frustum view frustum in world coordinates (the space of the current modelview matrix)
+     */
+    public void draw(Frustum frustum) {
+        if (model != null) {
+            glPushMatrix();
+            glMultMatrixf(worldArray);
+            model.draw(frustum.transform(world));
+            glPopMatrix();
+        }
+        for (SceneNode child : children) {
+            child.draw(frustum);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package lwjglutils;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from a (position, texture coordinate, normal) index triplet
+ * to a unique vertex index. Keys and values are stored in primitive arrays, the table
+ * uses linear probing.
+ *
+ * @author Stanislav Čapek
+ * @version 1.0
+ * @see IndexedMesh
+ */
+class VertexIndexMap {
+    private static final int EMPTY = -1;
+
+    /**
+     * Vertex index per slot or {@link #EMPTY}
+     */
+    private int[] table;
+    /**
+     * Triplets of keys, ordered by vertex index
+     */
+    private int[] keys;
+    private int size;
+    private int mask;
+
+    /**
+     * Constructor
+     *
+     * @param expected expected count of unique vertices
+     */
+    VertexIndexMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) << 1;
+        table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        mask = capacity - 1;
+        keys = new int[Math.max(expected, 8) * 3];
+    }
+
+    /**
+     * Return the vertex index of the triplet. An unknown triplet gets the next free index.
+     *
+     * @param position position index
+     * @param texCoord texture coordinate index
+     * @param normal   normal index
+     * @return vertex index
+     */
+    int getOrAdd(int position, int texCoord, int normal) {
+        int slot = hash(position, texCoord, normal) & mask;
+        while (true) {
+            final int vertex = table[slot];
+            if (vertex == EMPTY) {
+                break;
+            }
+            final int key = vertex * 3;
+            if (keys[key] == position && keys[key + 1] == texCoord && keys[key + 2] == normal) {
+                return vertex;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        final int vertex = size++;
+        if (vertex * 3 + 3 > keys.length) {
+            keys = Arrays.copyOf(keys, keys.length * 2);
+        }
+        keys[vertex * 3] = position;
+        keys[vertex * 3 + 1] = texCoord;
+        keys[vertex * 3 + 2] = normal;
+        table[slot] = vertex;
+        if (size * 2 > table.length) {
+            rehash();
+        }
+        return vertex;
+    }
+
+    /**
+     * Count of unique vertices
+     *
+     * @return size
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Key triplets of all vertices ordered by the vertex index. The array can be longer than the data.
+     *
+     * @return backing array
+     */
+    int[] keys() {
+        return keys;
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        Arrays.fill(table, EMPTY);
+        mask = table.length - 1;
+        for (int vertex = 0; vertex < size; vertex++) {
+            int slot = hash(keys[vertex * 3], keys[vertex * 3 + 1], keys[vertex * 3 + 2]) & mask;
+            while (table[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = vertex;
+        }
+    }
+
+    private static int hash(int position, int texCoord, int normal) {
+        int h = position * 0x9E3779B1;
+        h = (h ^ texCoord) * 0x85EBCA6B;
+        h = (h ^ normal) * 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    }
+}
@@ -2,11 +2,24 @@ package modelviewer;
 
 import global.AbstractRenderer;
 import global.GLCamera;
+import lwjglutils.BoundingVolume;
+import lwjglutils.Frustum;
+import lwjglutils.ModelInstances;
 import lwjglutils.OBJLoader;
+import lwjglutils.OBJLoadingService;
+import lwjglutils.OBJResidencyManager;
+import lwjglutils.OBJTextureCache;
+import lwjglutils.OGLBufferArena;
+import lwjglutils.PhongLighting;
+import lwjglutils.SceneNode;
 import org.lwjgl.glfw.GLFWCursorPosCallback;
 import org.lwjgl.glfw.GLFWKeyCallback;
 import org.lwjgl.glfw.GLFWMouseButtonCallback;
 import org.lwjgl.glfw.GLFWScrollCallback;
+import transforms.Col;
+import transforms.Mat4;
+import transforms.Mat4Transl;
+import transforms.Quat;
 import transforms.Vec3D;
 
 import java.util.ArrayList;
@@ -24,6 +37,15 @@ import static org.lwjgl.opengl.GL33.*;
  * @since 2020-01-20
  */
 public class Renderer extends AbstractRenderer {
+    /**
+     * Time per frame for uploading of loaded models to OpenGL
+     */
+    private static final long UPLOAD_BUDGET_NANOS = 4_000_000;
+    /**
+     * OpenGL memory for models in MB, can be set by the system property modelviewer.budgetMB
+     */
+    private static final long MEMORY_BUDGET_MB = Long.getLong("modelviewer.budgetMB", 256);
+
     private float dx, dy, ox, oy;
     private float zenit, azimut;
 
@@ -33,13 +55,28 @@ public class Renderer extends AbstractRenderer {
 
     private boolean per = true, move = false;
     private GLCamera camera;
-    private List<OBJLoader.Model> models = new ArrayList<>();
+    private OBJLoadingService loadingService;
+    private OBJResidencyManager models;
     private boolean isLight0 = true;
     private boolean isLight1 = true;
     private boolean isLight2 = true;
     private boolean isTextured = true;
+    private boolean isLod = true;
+    private OBJLoader.RenderMode renderMode = OBJLoader.RenderMode.RETAINED;
     private int actual = 0;
     private boolean mouseLocked = false;
+    private final SceneNode scene = new SceneNode();
+    private final SceneNode modelNode = new SceneNode();
+    private int updatedNodes;
+    private static final String[] STRESS_MODES = {"off", "instanced", "loop"};
+    private static final int MAX_STRESS_COUNT = 1 << 16;
+    private int stressMode = 0;
+    private int stressCount = 64;
+    private final ModelInstances stressInstances = new ModelInstances();
+    private final List<Mat4> stressTransforms = new ArrayList<>();
+    private OBJLoader.Model stressModel;
+    private long lastFrameNanos;
+    private double frameMillis;
 
     long fps;
     long oldmils;
@@ -84,9 +121,31 @@ public class Renderer extends AbstractRenderer {
                         case GLFW_KEY_T:
                             isTextured = !isTextured;
                             break;
+                        case GLFW_KEY_L:
+                            isLod = !isLod;
+                            OBJLoader.Model.setLodPixelError(isLod ? 1 : 0);
+                            break;
+                        case GLFW_KEY_R:
+                            final OBJLoader.RenderMode[] modes = OBJLoader.RenderMode.values();
+                            renderMode = modes[(renderMode.ordinal() + 1) % modes.length];
+                            break;
                         case GLFW_KEY_SPACE:
                             actual = ++actual % models.size();
                             break;
+                        case GLFW_KEY_C:
+                            OBJLoader.Model.getArena().compact();
+                            break;
+                        case GLFW_KEY_I:
+                            stressMode = (stressMode + 1) % STRESS_MODES.length;
+                            break;
+                        case GLFW_KEY_EQUAL:
+                        case GLFW_KEY_KP_ADD:
+                            stressCount = Math.min(stressCount * 2, MAX_STRESS_COUNT);
+                            break;
+                        case GLFW_KEY_MINUS:
+                        case GLFW_KEY_KP_SUBTRACT:
+                            stressCount = Math.max(stressCount / 2, 1);
+                            break;
 
                     }
                 }
@@ -190,10 +249,11 @@ public class Renderer extends AbstractRenderer {
         glMatrixMode(GL_MODELVIEW);
         glLoadIdentity();
 
-        // Loading external models
+        // Loading external models in background
         System.out.println("Loading objects...");
+        loadingService = new OBJLoadingService();
+        models = new OBJResidencyManager(loadingService, MEMORY_BUDGET_MB << 20);
         loadModels();
-        System.out.println("#" + models.size() + " objects loaded");
 
         // nastavení textur
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
@@ -211,24 +271,20 @@ public class Renderer extends AbstractRenderer {
         camera.setFirstPerson(true);
 
         settingLightsAndMaterials();
+
+        // the scene's root is rotated by the animation
+        scene.addChild(modelNode);
     }
 
     private void loadModels() {
-        // loading models with custom OBJLoader
-        final OBJLoader.Model cubeTex = OBJLoader.loadModel("models/cubeTex/cubeTex.obj");
-        final OBJLoader.Model monkey = OBJLoader.loadModel("models/monkey/monkey.obj");
-        final OBJLoader.Model station = OBJLoader.loadModel("models/station/station.obj");
-        final OBJLoader.Model rex = OBJLoader.loadModel("models/rex/rex.obj");
-        final OBJLoader.Model reaper1 = OBJLoader.loadModel("models/reaper/reaper_1.obj");
-        final OBJLoader.Model reaper2 = OBJLoader.loadModel("models/reaper/reaper_2.obj");
-        models.add(cubeTex);
-        models.add(monkey);
-        models.add(station);
-        models.add(rex);
+        // models are loaded with custom OBJLoader when they are selected for the first time
+        models.add("models/cubeTex/cubeTex.obj");
+        models.add("models/monkey/monkey.obj");
+        models.add("models/station/station.obj");
+        models.add("models/rex/rex.obj");
 
         // joining two models
-        reaper2.addPart(reaper1);
-        models.add(reaper2);
+        models.add("models/reaper/reaper_2.obj", "models/reaper/reaper_1.obj");
     }
 
     private void settingLightsAndMaterials() {
@@ -267,6 +323,8 @@ public class Renderer extends AbstractRenderer {
         glLightfv(light, GL_AMBIENT, light_amb);
         glLightfv(light, GL_DIFFUSE, light_dif);
         glLightfv(light, GL_SPECULAR, light_spec);
+        // the same rig for the shader pipeline
+        PhongLighting.setLight(light - GL_LIGHT0, light_amb, light_dif, light_spec);
 
     }
 
@@ -293,6 +351,8 @@ public class Renderer extends AbstractRenderer {
         fps = 1000 / (mils - oldmils);
         oldmils = mils;
 
+        models.update(UPLOAD_BUDGET_NANOS);
+
         glViewport(0, 0, width, height);
         glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
         glEnable(GL_DEPTH_TEST);
@@ -312,21 +372,29 @@ public class Renderer extends AbstractRenderer {
 
         if (move) {
             uhel++;
+            scene.setRotation(Quat.fromEulerAngle(Math.toRadians(uhel), 0, 1, 0));
         }
 
         glMatrixMode(GL_MODELVIEW);
         glLoadIdentity();
 
-        glEnable(GL_LIGHTING);
-
-        if (isLight0) {
-            glEnable(GL_LIGHT0);
-        }
-        if (isLight1) {
-            glEnable(GL_LIGHT1);
-        }
-        if (isLight2) {
-            glEnable(GL_LIGHT2);
+        // the shader pipeline does not use fixed-function lights
+        final boolean shaded = renderMode == OBJLoader.RenderMode.SHADED;
+        if (shaded) {
+            PhongLighting.setLightEnabled(0, isLight0);
+            PhongLighting.setLightEnabled(1, isLight1);
+            PhongLighting.setLightEnabled(2, isLight2);
+        } else {
+            glEnable(GL_LIGHTING);
+            if (isLight0) {
+                glEnable(GL_LIGHT0);
+            }
+            if (isLight1) {
+                glEnable(GL_LIGHT1);
+            }
+            if (isLight2) {
+                glEnable(GL_LIGHT2);
+            }
         }
 
         glPushMatrix();
@@ -334,22 +402,38 @@ public class Renderer extends AbstractRenderer {
         float[] keyPos = new float[]{2, 8, 10, 0};
         float[] backPos = new float[]{-5, 8, -1, 1};
         float[] fillPos = new float[]{10, 5, -1, 1};
-        glLightfv(GL_LIGHT0, GL_POSITION, keyPos);
-        glLightfv(GL_LIGHT1, GL_POSITION, backPos);
-        glLightfv(GL_LIGHT2, GL_POSITION, fillPos);
-
-        glDisable(GL_LIGHTING);
-        drawAxis();
-        glEnable(GL_LIGHTING);
-
-        glRotatef(uhel, 0, 1, 0);
+        if (shaded) {
+            PhongLighting.setLightPosition(0, keyPos);
+            PhongLighting.setLightPosition(1, backPos);
+            PhongLighting.setLightPosition(2, fillPos);
+            PhongLighting.updateLights();
+            drawAxis();
+        } else {
+            glLightfv(GL_LIGHT0, GL_POSITION, keyPos);
+            glLightfv(GL_LIGHT1, GL_POSITION, backPos);
+            glLightfv(GL_LIGHT2, GL_POSITION, fillPos);
+
+            glDisable(GL_LIGHTING);
+            drawAxis();
+            glEnable(GL_LIGHTING);
+        }
 
-        // rendering actual model
+        // rendering actual model by the scene graph, parts outside of the view are culled
         final OBJLoader.Model model = models.get(actual);
-        model.setTextureEnable(isTextured);
-        model.draw();
+        models.preload((actual + 1) % models.size());
+        final Frustum frustum = Frustum.fromOpenGL();
+        if (model != null) {
+            model.setTextureEnable(isTextured);
+            model.setRenderMode(renderMode);
+        }
+        modelNode.setModel(model);
+        updatedNodes = scene.update();
+        if (stressMode == 0 || model == null) {
+            scene.draw(frustum);
+        } else {
+            drawStressScene(model);
+        }
 
-        glCallList(1);
         glPopMatrix();
 
         glDisable(GL_LIGHT2);
@@ -360,15 +444,48 @@ public class Renderer extends AbstractRenderer {
         text += per ? ", [P]ersp " : ", [p]ersp ";
         text += move ? ", Ani[M] " : ", Ani[m] ";
         text += isTextured ? "[T]exture, " : "[t]exture, ";
+        text += isLod ? "[L]od" : "[l]od";
+        text += model != null ? " " + (model.getLevel() + 1) + "/" + model.getLevelCount() + ", " : ", ";
+        text += "[R]ender " + renderMode.name().toLowerCase() + ", ";
         text += "Space to switch model: " + (actual + 1);
+        if (!loadingService.isIdle()) {
+            text += String.format(" - loading %d/%d %3.0f %%", loadingService.getReadyCount(),
+                    loadingService.getSubmittedCount(), loadingService.getProgress() * 100);
+        }
+        text += String.format(", resident %d/%d models %.1f/%d MB", models.getResidentCount(), models.size(),
+                models.getResidentBytes() / (double) (1 << 20), MEMORY_BUDGET_MB);
 
         String textInfo = "position " + camera.getPosition().toString();
         textInfo += String.format(" azimuth %3.1f, zenith %3.1f", azimut, zenit);
+        textInfo += String.format(", textures %d (hits %d, misses %d, saved %.1f MB)",
+                OBJTextureCache.getTextureCount(), OBJTextureCache.getHitCount(),
+                OBJTextureCache.getMissCount(), OBJTextureCache.getBytesSaved() / (double) (1 << 20));
+        if (renderMode == OBJLoader.RenderMode.ARENA) {
+            final OGLBufferArena arena = OBJLoader.Model.getArena();
+            textInfo += String.format(", arena %d models %.1f/%.1f MB, fragmentation %.0f/%.0f %% [C]ompact",
+                    arena.getAllocationCount(), arena.getUsedBytes() / (double) (1 << 20),
+                    arena.getSizeInBytes() / (double) (1 << 20),
+                    arena.getVertexFragmentation() * 100, arena.getIndexFragmentation() * 100);
+        }
 
         lightInfo += "[1] " + (isLight0 ? "on " : "off ");
         lightInfo += "[2] " + (isLight1 ? "on " : "off ");
         lightInfo += "[3] " + (isLight2 ? "on " : "off ");
         lightInfo += "FPS: " + fps;
+        final long now = System.nanoTime();
+        if (lastFrameNanos != 0) {
+            // smoothed time between frames
+            frameMillis += ((now - lastFrameNanos) / 1e6 - frameMillis) * 0.1;
+        }
+        lastFrameNanos = now;
+        lightInfo += String.format(", frame %.2f ms", frameMillis);
+        text += ", [I]nstances " + STRESS_MODES[stressMode];
+        if (stressMode != 0) {
+            text += String.format(" %d [+/-]", stressCount);
+        }
+        lightInfo += String.format(", drawn %d nodes %d triangles, culled %d nodes %d triangles, updated %d",
+                frustum.getDrawnNodes(), frustum.getDrawnTriangles(),
+                frustum.getCulledNodes(), frustum.getCulledTriangles(), updatedNodes);
 
         //create and draw text
         textRenderer.clear();
@@ -379,4 +496,44 @@ public class Renderer extends AbstractRenderer {
         textRenderer.draw();
     }
 
+    /**
+     * Draw copies of the model in a grid, all by one instanced draw per range or one by one
+     * for comparison, the copies are laid out again when the model or their count changes
+     *
+     * @param model drawn model
+     */
+    private void drawStressScene(OBJLoader.Model model) {
+        if (model != stressModel || stressCount != stressTransforms.size()) {
+            stressModel = model;
+            stressTransforms.clear();
+            stressInstances.clear();
+            final BoundingVolume bounds = model.getBounds();
+            final double spacing = Math.max(bounds.getRadius(), 0.01) * 2.5;
+            final int side = (int) Math.ceil(Math.sqrt(stressCount));
+            for (int i = 0; i < stressCount; i++) {
+                final Mat4 transform = new Mat4Transl((i % side - (side - 1) / 2.0) * spacing, 0,
+                        (i / side - (side - 1) / 2.0) * spacing);
+                final double hue = 2 * Math.PI * i / stressCount;
+                stressTransforms.add(transform);
+                stressInstances.add(transform, new Col(0.5 + 0.5 * Math.cos(hue),
+                        0.5 + 0.5 * Math.cos(hue - 2 * Math.PI / 3), 0.5 + 0.5 * Math.cos(hue + 2 * Math.PI / 3), 1.0));
+            }
+        }
+        if (stressMode == 1) {
+            model.drawInstanced(stressInstances);
+            return;
+        }
+        for (Mat4 transform : stressTransforms) {
+            glPushMatrix();
+            glMultMatrixf(transform.floatArray());
+            model.draw();
+            glPopMatrix();
+        }
+    }
+
+    @Override
+    public void dispose() {
+        loadingService.shutdown();
+    }
+
 }
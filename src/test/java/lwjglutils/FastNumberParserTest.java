@@ -0,0 +1,198 @@
+package lwjglutils;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Compares {@link FastNumberParser} with {@link Float#parseFloat(String)} and
+ * {@link Integer#parseInt(String)} bit for bit, through both the byte and the character entry points.
+ *
+ * @author Stanislav Čapek
+ * @version 1.0
+ */
+class FastNumberParserTest {
+
+    private static final long SEED = 0x0b1L;
+
+    @Test
+    void bitPatternSweep() {
+        // stride is odd, so every exponent and both signs are visited
+        for (long bits = 0; bits <= 0xFFFF_FFFFL; bits += 7_001) {
+            final float value = Float.intBitsToFloat((int) bits);
+            assertFloat(Float.toString(value));
+            if (!Float.isNaN(value) && !Float.isInfinite(value)) {
+                assertFloat(new BigDecimal(value).toString());
+            }
+        }
+    }
+
+    @Test
+    void randomDecimals() {
+        final Random random = new Random(SEED);
+        for (int i = 0; i < 1_000_000; i++) {
+            final StringBuilder sb = new StringBuilder();
+            if (random.nextInt(4) == 0) {
+                sb.append(random.nextBoolean() ? '-' : '+');
+            }
+            final int digits = 1 + random.nextInt(20);
+            final int point = random.nextInt(digits + 2) - 1;
+            for (int d = 0; d < digits; d++) {
+                if (d == point) {
+                    sb.append('.');
+                }
+                sb.append((char) ('0' + random.nextInt(10)));
+            }
+            if (point == digits) {
+                sb.append('.');
+            }
+            if (random.nextInt(3) == 0) {
+                sb.append(random.nextBoolean() ? 'e' : 'E');
+                final int sign = random.nextInt(3);
+                sb.append(sign == 0 ? "" : sign == 1 ? "-" : "+");
+                sb.append(random.nextInt(60));
+            }
+            assertFloat(sb.toString());
+        }
+    }
+
+    @Test
+    void objLikeDecimals() {
+        final Random random = new Random(SEED);
+        for (int i = 0; i < 500_000; i++) {
+            assertFloat(String.format(Locale.ROOT, "%.6f", (random.nextDouble() - 0.5) * 200));
+            assertFloat(String.format(Locale.ROOT, "%.4e", (random.nextDouble() - 0.5) * 1e6));
+        }
+    }
+
+    @Test
+    void floatMidpoints() {
+        final Random random = new Random(SEED);
+        for (int i = 0; i < 300_000; i++) {
+            final float value = Float.intBitsToFloat(random.nextInt() & 0x7F7F_FFFF);
+            if (value < Float.MIN_NORMAL) {
+                continue;
+            }
+            final double midpoint = ((double) value + Math.nextUp(value)) / 2;
+            final BigDecimal exact = new BigDecimal(midpoint);
+            assertFloat(exact.toString());
+            assertFloat(Double.toString(midpoint));
+            assertFloat(Double.toString(Math.nextUp(midpoint)));
+            assertFloat(Double.toString(Math.nextDown(midpoint)));
+            // short forms that land on or near the midpoint in double
+            for (int precision = 8; precision <= 18; precision += 2) {
+                assertFloat(exact.round(new MathContext(precision)).toString());
+            }
+        }
+    }
+
+    @Test
+    void aroundTwoToTheTwentyFour() {
+        for (long exponent = 24; exponent <= 40; exponent++) {
+            final long base = 1L << exponent;
+            for (long n = base - 64; n <= base + 64; n++) {
+                assertFloat(Long.toString(n));
+                assertFloat(n + ".5");
+                assertFloat(n + ".0");
+                assertFloat("-" + n);
+                assertFloat(n + "e-3");
+                assertFloat("0." + n);
+            }
+        }
+    }
+
+    @Test
+    void specialForms() {
+        final String[] inputs = {
+                "0", "-0", "+0", "0.0", "-0.0", ".5", "5.", "-.5", "0e0", "1e0", "1E+2", "1e-2",
+                "000000000000000000000000001", "0.000000000000000000000000000001",
+                "123456789012345678901234567890", "1e38", "3.4028235e38", "3.4028236e38", "1e39",
+                "1.17549435e-38", "1.4e-45", "7e-46", "1e-46", "1e-400", "1e400", "1e100000000",
+                "NaN", "-NaN", "Infinity", "-Infinity", "+Infinity", "0x1p3", "0x1.8p-2",
+                "1f", "1d", "1.5F", " 1", "1 "
+        };
+        for (String input : inputs) {
+            assertFloat(input);
+        }
+    }
+
+    @Test
+    void invalidInput() {
+        final String[] inputs = {
+                "", "-", "+", ".", "-.", "e", "e5", ".e5", "1e", "1e+", "1e-", "1.2.3", "1..2", "--1",
+                "+-1", "abc", "1a", "1e5x", "0x", "Inf", "nan", "1,5", "1e5.5"
+        };
+        for (String input : inputs) {
+            assertFloat(input);
+        }
+    }
+
+    @Test
+    void ints() {
+        final String[] inputs = {
+                "0", "-0", "+0", "1", "-1", "42", "2147483647", "-2147483648", "2147483648",
+                "-2147483649", "99999999999999999999", "0000123", "", "-", "+", "1.0", "1a", " 1", "--1"
+        };
+        for (String input : inputs) {
+            assertInt(input);
+        }
+        final Random random = new Random(SEED);
+        for (int i = 0; i < 100_000; i++) {
+            assertInt(Integer.toString(random.nextInt()));
+        }
+    }
+
+    /**
+     * Parse the text from a padded byte array and from a character sequence
+     */
+    private static void assertFloat(String text) {
+        final byte[] bytes = padded(text);
+        final int to = bytes.length - 2;
+        Float expected;
+        try {
+            expected = Float.parseFloat(text);
+        } catch (NumberFormatException e) {
+            final String message = e.getMessage();
+            assertEquals(message, assertThrows(NumberFormatException.class,
+                    () -> FastNumberParser.parseFloat(bytes, 2, to), text).getMessage(), text);
+            assertEquals(message, assertThrows(NumberFormatException.class,
+                    () -> FastNumberParser.parseFloat("##" + text + "##", 2, to), text).getMessage(), text);
+            assertEquals(message, assertThrows(NumberFormatException.class,
+                    () -> FastNumberParser.parseFloat(text), text).getMessage(), text);
+            return;
+        }
+        final int bits = Float.floatToRawIntBits(expected);
+        assertEquals(bits, Float.floatToRawIntBits(FastNumberParser.parseFloat(bytes, 2, to)), text);
+        assertEquals(bits, Float.floatToRawIntBits(FastNumberParser.parseFloat("##" + text + "##", 2, to)), text);
+        assertEquals(bits, Float.floatToRawIntBits(FastNumberParser.parseFloat(text)), text);
+    }
+
+    private static void assertInt(String text) {
+        final byte[] bytes = padded(text);
+        final int to = bytes.length - 2;
+        Integer expected;
+        try {
+            expected = Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            assertThrows(NumberFormatException.class, () -> FastNumberParser.parseInt(bytes, 2, to), text);
+            assertThrows(NumberFormatException.class, () -> FastNumberParser.parseInt(text), text);
+            return;
+        }
+        assertEquals(expected, FastNumberParser.parseInt(bytes, 2, to), text);
+        assertEquals(expected, FastNumberParser.parseInt(text), text);
+    }
+
+    /**
+     * ASCII bytes of the text surrounded by two digits on each side, which must not be read
+     */
+    private static byte[] padded(String text) {
+        return ("99" + text + "99").getBytes(StandardCharsets.ISO_8859_1);
+    }
+}